@@ -7,17 +7,27 @@ import de.otto.jlineup.browser.Browser;
 import de.otto.jlineup.browser.BrowserUtils;
 import de.otto.jlineup.config.Config;
 import de.otto.jlineup.config.Parameters;
+import de.otto.jlineup.file.BaselineCache;
 import de.otto.jlineup.file.FileService;
 import de.otto.jlineup.image.ImageService;
+import de.otto.jlineup.metrics.JLineupMetrics;
+import de.otto.jlineup.metrics.JLineupTrace;
+import de.otto.jlineup.metrics.PrometheusEndpoint;
 import de.otto.jlineup.report.*;
 
+import javax.imageio.ImageIO;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public class Main {
 
+    //file of the trace that's written when JLineup exits, null until a run is traced
+    private static volatile String lastTraceFile;
+
     public static void main(String[] args) throws Exception {
 
         final Parameters parameters = new Parameters();
@@ -38,9 +48,17 @@ public class Main {
             setLogLevelToDebug();
         }
 
+        //images are written to and read from files only, so ImageIO doesn't need to buffer them in temp files
+        ImageIO.setUseCache(false);
+
         FileService fileService = new FileService(parameters);
         ImageService imageService = new ImageService();
 
+        if (parameters.isExtractScreenshots()) {
+            System.out.printf("Extracted %d screenshots from the screenshot archive.%n", fileService.extractScreenshotArchive());
+            return;
+        }
+
         //Make sure the working dir exists
         if (parameters.isBefore()) {
             fileService.createWorkingDirectoryIfNotExists();
@@ -84,39 +102,85 @@ public class Main {
         }
 
         //Only create screenshots and report dirs if config was found
+        final BaselineCache baselineCache = new BaselineCache(parameters, config);
+        boolean baselineRestored = false;
         if (parameters.isBefore()) {
             fileService.createOrClearReportDirectory();
             fileService.createOrClearScreenshotsDirectory();
+            if (baselineCache.isEnabled()) {
+                baselineRestored = restoreBaseline(fileService, baselineCache, parameters.getBaselineVersion());
+            }
         }
 
         System.out.printf("Running JLineup [%s] with step '%s'.%n%n", getVersion(), parameters.getStep());
 
-        if (!parameters.isJustCompare()) {
+        if (parameters.isMetrics()) {
+            startMetrics(parameters);
+        }
+        if (parameters.getTraceFile() != null) {
+            startTrace(parameters.getTraceFile());
+        }
+
+        //In the after step, screenshots are compared while the browser takes the remaining ones
+        final ScreenshotsComparator screenshotsComparator = new ScreenshotsComparator(parameters, config, fileService, imageService);
+        final RunHistory runHistory = new RunHistory(parameters);
+
+        if (!parameters.isJustCompare() && !parameters.isReport() && !baselineRestored) {
             BrowserUtils browserUtils = new BrowserUtils();
-            try (Browser browser = new Browser(parameters, config, fileService, browserUtils)) {
+            try (Browser browser = new Browser(parameters, config, fileService, browserUtils, parameters.isAfter() ? screenshotsComparator : null,
+                    runHistory.isEnabled() ? runHistory.longestContextsFirst() : null)) {
                 browser.takeScreenshots();
             } catch (Exception e) {
                 System.err.println("JLineup Exception: " + e);
                 System.exit(1);
             }
+            //in the after step, comparisons still write difference images, the archive is finished after the report
+            if (parameters.isBefore()) {
+                fileService.finishScreenshotArchive();
+            }
+            if (parameters.isBefore() && baselineCache.isEnabled()) {
+                storeBaseline(fileService, baselineCache);
+            }
+            if (parameters.isBefore() && runHistory.isEnabled()) {
+                recordRun(runHistory, parameters, config, fileService, null);
+            }
         }
 
-        if (parameters.isAfter() || parameters.isJustCompare()) {
-            ScreenshotsComparator screenshotsComparator = new ScreenshotsComparator(parameters, config, fileService, imageService);
+        if (parameters.isAfter() || parameters.isJustCompare() || parameters.isReport()) {
             final Map<String, List<ScreenshotComparisonResult>> comparisonResults = screenshotsComparator.compare();
 
             final ReportGenerator reportGenerator = new ReportGenerator();
             final Report report = reportGenerator.generateReport(comparisonResults);
 
+            if (parameters.isAfter() && runHistory.isEnabled()) {
+                recordRun(runHistory, parameters, config, fileService, comparisonResults);
+            }
+
+            if (parameters.isGate()) {
+                //the reports are created later with '--step report'
+                new GateResults(fileService).write(comparisonResults);
+                fileService.finishScreenshotArchive();
+                System.out.println("Max difference of a single screenshot:\n" + report.summary.differenceMax + " (" + Math.round(report.summary.differenceMax * 100d) + " %)");
+                if (!useLegacyReportFormat(config)) {
+                    exitIfMaxDiffIsExceeded(config, report);
+                }
+                System.out.printf("JLineup run finished for step '%s'%n", parameters.getStep());
+                return;
+            }
+
             JSONReportWriter jsonReportWriter;
             if (useLegacyReportFormat(config)) {
-                jsonReportWriter = new JSONReportWriter_V1(fileService);
+                jsonReportWriter = new JSONReportWriter_V1(fileService, parameters.isCompactJsonReport());
             } else {
-                jsonReportWriter = new JSONReportWriter_V2(fileService);
+                jsonReportWriter = new JSONReportWriter_V2(fileService, parameters.isCompactJsonReport());
             }
             jsonReportWriter.writeComparisonReportAsJson(report);
-            final HTMLReportWriter htmlReportWriter = new HTMLReportWriter(fileService);
+            final HTMLReportWriter htmlReportWriter = new HTMLReportWriter(fileService, !parameters.isThumbnailsDisabled(), parameters.getCompareThreads());
             htmlReportWriter.writeReport(report);
+            if (fileService.hasScreenshotArchive()) {
+                System.out.println("The screenshots are in the screenshot archive, run JLineup with --extract-screenshots to show them in the HTML report.");
+            }
+            fileService.finishScreenshotArchive();
 
             final Set<Map.Entry<String, UrlReport>> entries = report.screenshotComparisonsForUrl.entrySet();
             for (Map.Entry<String, UrlReport> entry : entries) {
@@ -129,19 +193,93 @@ public class Main {
             System.out.println("Max difference of a single screenshot:\n" + report.summary.differenceMax + " (" + Math.round(report.summary.differenceMax * 100d) + " %)");
 
             if (!useLegacyReportFormat(config)) {
-                for (Map.Entry<String, UrlReport> entry : entries) {
-                    //Exit with exit code 1 if at least one url report has a bigger difference than configured
-                    if (config.urls != null && entry.getValue().summary.differenceMax > config.urls.get(entry.getKey()).maxDiff) {
-                        System.out.println("JLineup finished. There was a difference between before and after. Return code is 1.");
-                        System.exit(1);
-                    }
-                }
+                exitIfMaxDiffIsExceeded(config, report);
             }
         }
 
         System.out.printf("JLineup run finished for step '%s'%n", parameters.getStep());
     }
 
+    //The MBean is registered and the endpoint runs until JLineup exits
+    private static void startMetrics(Parameters parameters) {
+        final JLineupMetrics metrics = JLineupMetrics.get();
+        metrics.reset();
+        metrics.registerMBean();
+        if (parameters.getMetricsPort() > 0) {
+            try {
+                final PrometheusEndpoint endpoint = new PrometheusEndpoint(parameters.getMetricsHost(), parameters.getMetricsPort(), metrics);
+                System.out.printf("Metrics are served at http://%s:%d%s%n", endpoint.getHost(), endpoint.getPort(), PrometheusEndpoint.PATH);
+            } catch (IOException e) {
+                System.err.println("Could not start metrics endpoint: " + e);
+            }
+        }
+    }
+
+    //The trace is written when JLineup exits, also if it exits with an error or is killed
+    //The hook is added only once per JVM and writes the trace of the last run to its file
+    private static synchronized void startTrace(String traceFile) {
+        final JLineupTrace trace = JLineupTrace.get();
+        trace.enable();
+        if (lastTraceFile == null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                final String file = lastTraceFile;
+                try {
+                    trace.writeTo(Paths.get(file));
+                    System.out.printf("Trace of the run was written to %s%n", file);
+                } catch (IOException e) {
+                    System.err.println("Could not write trace: " + e);
+                }
+            }, "TraceWriter"));
+        }
+        lastTraceFile = traceFile;
+    }
+
+    //Exit with exit code 1 if at least one url report has a bigger difference than configured
+    private static void exitIfMaxDiffIsExceeded(Config config, Report report) {
+        for (Map.Entry<String, UrlReport> entry : report.screenshotComparisonsForUrl.entrySet()) {
+            if (config.urls != null && entry.getValue().summary.differenceMax > config.urls.get(entry.getKey()).maxDiff) {
+                System.out.println("JLineup finished. There was a difference between before and after. Return code is 1.");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static boolean restoreBaseline(FileService fileService, BaselineCache baselineCache, String version) {
+        try {
+            if (fileService.restoreScreenshotsFromBaselineCache(baselineCache)) {
+                System.out.printf("Using cached screenshots of version '%s', no screenshots are taken.%n", version);
+                return true;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read cached screenshots, taking new ones: " + e);
+            fileService.createOrClearScreenshotsDirectory();
+        }
+        return false;
+    }
+
+    private static void storeBaseline(FileService fileService, BaselineCache baselineCache) {
+        try {
+            fileService.storeScreenshotsInBaselineCache(baselineCache);
+        } catch (IOException e) {
+            System.err.println("Could not store screenshots in baseline cache: " + e);
+        }
+    }
+
+    //The history is only written after screenshots were taken, so their timings belong to this run
+    private static void recordRun(RunHistory runHistory, Parameters parameters, Config config, FileService fileService,
+                                  Map<String, List<ScreenshotComparisonResult>> comparisonResults) {
+        try {
+            final List<String> trends = runHistory.record(parameters, config, fileService, parameters.getStep().name(), comparisonResults);
+            if (!trends.isEmpty()) {
+                System.out.println("Changes compared to earlier runs:");
+                trends.forEach(trend -> System.out.println("  " + trend));
+                System.out.println("");
+            }
+        } catch (IOException e) {
+            System.err.println("Could not update run history: " + e);
+        }
+    }
+
     private static void setLogLevelToDebug() {
         ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory.getLogger(ch.qos.logback.classic.Logger.ROOT_LOGGER_NAME);
         root.setLevel(Level.DEBUG);
@@ -39,9 +39,19 @@ public class Util {
     }
 
     public static ExecutorService createThreadPool(int threads, String baseName) {
+        return createThreadPool(threads, baseName, false);
+    }
+
+    //Daemon threads don't keep the jvm alive, so the pool never has to be shut down
+    public static ExecutorService createDaemonThreadPool(int threads, String baseName) {
+        return createThreadPool(threads, baseName, true);
+    }
+
+    private static ExecutorService createThreadPool(int threads, String baseName, boolean daemon) {
         final ThreadFactory factory = target -> {
             String name = String.format("%s-%d", baseName, threadCounter.getAndIncrement());
             final Thread thread = new Thread(target, name);
+            thread.setDaemon(daemon);
             LOG.debug("Created new worker thread.");
             thread.setUncaughtExceptionHandler((t, e) -> LOG.error("Exception", e));
             return thread;
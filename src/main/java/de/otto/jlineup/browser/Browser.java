@@ -6,7 +6,10 @@ import de.otto.jlineup.config.Config;
 import de.otto.jlineup.config.Cookie;
 import de.otto.jlineup.config.Parameters;
 import de.otto.jlineup.file.FileService;
+import de.otto.jlineup.file.ScreenshotTimings;
 import de.otto.jlineup.image.ImageService;
+import de.otto.jlineup.metrics.JLineupMetrics;
+import de.otto.jlineup.metrics.JLineupTrace;
 import org.openqa.selenium.Dimension;
 import org.openqa.selenium.*;
 import org.openqa.selenium.Point;
@@ -20,6 +23,7 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
@@ -29,6 +33,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import static de.otto.jlineup.browser.BrowserUtils.buildUrl;
 import static de.otto.jlineup.file.FileService.AFTER;
 import static de.otto.jlineup.file.FileService.BEFORE;
+import static de.otto.jlineup.file.ScreenshotTimings.*;
 
 public class Browser implements AutoCloseable {
 
@@ -82,28 +87,50 @@ public class Browser implements AutoCloseable {
     final private FileService fileService;
     final private BrowserUtils browserUtils;
     /* Every thread has it's own WebDriver and cache warmup marks, this is manually managed through concurrent maps */
+    private final ScreenshotListener screenshotListener;
+    //order in which the contexts are started, null keeps the order of the config
+    private final Comparator<ScreenshotContext> contextOrder;
     private ExecutorService threadPool;
+    private final JLineupMetrics metrics = JLineupMetrics.get();
+    private final JLineupTrace trace = JLineupTrace.get();
 
     private ConcurrentHashMap<String, WebDriver> webDrivers = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, Set<String>> cacheWarmupMarksMap = new ConcurrentHashMap<>();
 
     public Browser(Parameters parameters, Config config, FileService fileService, BrowserUtils browserUtils) {
+        this(parameters, config, fileService, browserUtils, null);
+    }
+
+    public Browser(Parameters parameters, Config config, FileService fileService, BrowserUtils browserUtils, ScreenshotListener screenshotListener) {
+        this(parameters, config, fileService, browserUtils, screenshotListener, null);
+    }
+
+    public Browser(Parameters parameters, Config config, FileService fileService, BrowserUtils browserUtils, ScreenshotListener screenshotListener,
+                   Comparator<ScreenshotContext> contextOrder) {
         this.parameters = parameters;
         this.config = config;
         this.fileService = fileService;
         this.browserUtils = browserUtils;
+        this.screenshotListener = screenshotListener;
+        this.contextOrder = contextOrder;
         this.threadPool = Util.createThreadPool(config.threads, "BrowserThread");
     }
 
     @Override
     public void close() throws Exception {
-        webDrivers.values().forEach(WebDriver::quit);
+        webDrivers.values().forEach(driver -> {
+            driver.quit();
+            metrics.webDriverQuit();
+        });
         webDrivers.clear();
     }
 
     public void takeScreenshots() throws IOException, InterruptedException, ExecutionException {
         boolean before = !parameters.isAfter();
         List<ScreenshotContext> screenshotContextList = BrowserUtils.buildScreenshotContextListFromConfigAndState(parameters, config, before);
+        if (contextOrder != null) {
+            screenshotContextList.sort(contextOrder);
+        }
         if (screenshotContextList.size() > 0) {
             takeScreenshots(screenshotContextList);
         }
@@ -114,7 +141,10 @@ public class Browser implements AutoCloseable {
         List<Future> screenshotResults = new ArrayList<>();
 
         for (final ScreenshotContext screenshotContext : screenshotContextList) {
+            metrics.contextQueued();
             final Future<?> takeScreenshotsResult = threadPool.submit(() -> {
+                metrics.contextStarted();
+                final long contextStart = System.nanoTime();
                 try {
                     takeScreenshotsForContext(screenshotContext);
                 } catch (InterruptedException | IOException e) {
@@ -127,11 +157,17 @@ public class Browser implements AutoCloseable {
                     other.printStackTrace();
                     threadPool.shutdownNow();
                     throw other;
+                } finally {
+                    metrics.contextFinished();
+                    trace.span("context", JLineupTrace.CATEGORY_CONTEXT, contextStart,
+                            buildUrl(screenshotContext.url, screenshotContext.urlSubPath, screenshotContext.urlConfig.envMapping) + " at " + screenshotContext.windowWidth + "px");
                 }
             });
             screenshotResults.add(takeScreenshotsResult);
             //submit screenshots to the browser with a slight delay, so not all instances open up in complete sync
+            final long sleepStart = System.nanoTime();
             Thread.sleep(THREADPOOL_SUBMIT_SHUFFLE_TIME_IN_MS);
+            trace.span("submitDelay", JLineupTrace.CATEGORY_IDLE, sleepStart);
         }
         threadPool.shutdown();
         threadPool.awaitTermination(15, TimeUnit.MINUTES);
@@ -146,7 +182,12 @@ public class Browser implements AutoCloseable {
 
     private void takeScreenshotsForContext(final ScreenshotContext screenshotContext) throws InterruptedException, IOException, WebDriverException {
 
+        //timings of everything until the next screenshot is written
+        ScreenshotTimings timings = new ScreenshotTimings();
+        long phaseStart = System.nanoTime();
         final WebDriver localDriver = getWebDriver();
+        timings.addSince(DRIVER_LEASE, phaseStart);
+        metrics.driverWaitedSince(phaseStart);
 
         if(printVersion.getAndSet(false)) {
             System.out.println(
@@ -172,26 +213,33 @@ public class Browser implements AutoCloseable {
             //get root page from url to be able to set cookies afterwards
             //if you set cookies before getting the page once, it will fail
             LOG.info(String.format("Getting root url: %s to set cookies, local and session storage", rootUrl));
+            phaseStart = System.nanoTime();
             localDriver.get(rootUrl);
 
             //set cookies and local storage
             setCookies(screenshotContext);
             setLocalStorage(screenshotContext);
             setSessionStorage(screenshotContext);
+            timings.addSince(NAVIGATION, phaseStart);
         }
 
+        phaseStart = System.nanoTime();
         checkBrowserCacheWarmup(screenshotContext, url, localDriver);
+        timings.addSince(CACHE_WARMUP, phaseStart);
 
         //now get the real page
         LOG.info(String.format("Browsing to %s with window size %dx%d", url, screenshotContext.windowWidth, config.windowHeight));
 
         //Selenium's get() method blocks until the browser/page fires an onload event (files and images referenced in the html have been loaded,
         //but there might be JS calls that load more stuff dynamically afterwards).
+        phaseStart = System.nanoTime();
         localDriver.get(url);
+        timings.addSince(NAVIGATION, phaseStart);
 
         Long pageHeight = getPageHeight();
         final Long viewportHeight = getViewportHeight();
 
+        phaseStart = System.nanoTime();
         if (screenshotContext.urlConfig.waitAfterPageLoad > 0) {
             try {
                 LOG.debug(String.format("Waiting for %d seconds (wait-after-page-load)", screenshotContext.urlConfig.waitAfterPageLoad));
@@ -205,6 +253,7 @@ public class Browser implements AutoCloseable {
             LOG.debug(String.format("Waiting for %s seconds (global wait-after-page-load)", config.globalWaitAfterPageLoad));
             Thread.sleep(Math.round(config.globalWaitAfterPageLoad * 1000));
         }
+        timings.addSince(WAIT_AFTER_PAGE_LOAD, phaseStart);
 
         LOG.debug("Page height before scrolling: {}", pageHeight);
         LOG.debug("Viewport height of browser window: {}", viewportHeight);
@@ -217,30 +266,47 @@ public class Browser implements AutoCloseable {
         //Wait for fonts
         if (screenshotContext.urlConfig.waitForFontsTime > 0) {
             if(config.browser != Type.PHANTOMJS){
+                phaseStart = System.nanoTime();
                 WebDriverWait wait = new WebDriverWait(getWebDriver(), screenshotContext.urlConfig.waitForFontsTime);
                 wait.until(fontsLoaded);
+                timings.addSince(WAIT_FOR_FONTS, phaseStart);
             } else {
                 System.out.println("WARNING: 'wait-for-fonts-time' is ignored because PhantomJS doesn't support this feature.");
             }
         }
 
         for (int yPosition = 0; yPosition < pageHeight && yPosition <= screenshotContext.urlConfig.maxScrollHeight; yPosition += viewportHeight) {
+            final long screenshotStart = System.nanoTime();
+            phaseStart = screenshotStart;
             BufferedImage currentScreenshot = takeScreenshot();
+            timings.addSince(CAPTURE, phaseStart);
+            phaseStart = System.nanoTime();
             currentScreenshot = waitForNoAnimation(screenshotContext, currentScreenshot);
-            fileService.writeScreenshot(currentScreenshot, screenshotContext.url,
-                    screenshotContext.urlSubPath, screenshotContext.windowWidth, yPosition, screenshotContext.before ? BEFORE : AFTER);
+            timings.addSince(WAIT_FOR_NO_ANIMATION, phaseStart);
+            final String screenshotPath = fileService.writeScreenshot(currentScreenshot, screenshotContext.url,
+                    screenshotContext.urlSubPath, screenshotContext.windowWidth, yPosition, screenshotContext.before ? BEFORE : AFTER, timings);
+            timings = new ScreenshotTimings();
+            metrics.screenshotTaken();
+            if (screenshotListener != null) {
+                screenshotListener.screenshotWritten(screenshotContext, yPosition, Paths.get(screenshotPath).getFileName().toString());
+            }
+            trace.span("screenshot", JLineupTrace.CATEGORY_CONTEXT, screenshotStart, "y=" + yPosition);
             //PhantomJS (until now) always makes full page screenshots, so no scrolling and multi-screenshooting
             //This is subject to change because W3C standard wants viewport screenshots
             if (config.browser == Type.PHANTOMJS) {
                 break;
             }
             LOG.debug("topOfViewport: {}, pageHeight: {}", yPosition, pageHeight);
+            final long scrollStart = System.nanoTime();
             scrollBy(viewportHeight.intValue());
+            trace.span("scroll", JLineupTrace.CATEGORY_PHASE, scrollStart);
             LOG.debug("Scroll by {} done", viewportHeight.intValue());
 
             if (screenshotContext.urlConfig.waitAfterScroll > 0) {
                 LOG.debug("Waiting for {} seconds (wait after scroll).", screenshotContext.urlConfig.waitAfterScroll);
+                phaseStart = System.nanoTime();
                 TimeUnit.SECONDS.sleep(screenshotContext.urlConfig.waitAfterScroll);
+                timings.addSince(WAIT_AFTER_SCROLL, phaseStart);
             }
 
             //Refresh to check if page grows during scrolling
@@ -268,6 +334,7 @@ public class Browser implements AutoCloseable {
     private WebDriver initializeWebDriver() {
         final WebDriver driver = browserUtils.getWebDriverByConfig(config);
         driver.manage().timeouts().implicitlyWait(60, TimeUnit.SECONDS);
+        metrics.webDriverStarted();
         return driver;
     }
 
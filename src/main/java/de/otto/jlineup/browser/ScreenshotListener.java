@@ -0,0 +1,9 @@
+package de.otto.jlineup.browser;
+
+import java.io.IOException;
+
+//Gets notified about every screenshot the browser has written, e.g. to compare it while the browser continues
+@FunctionalInterface
+public interface ScreenshotListener {
+    void screenshotWritten(ScreenshotContext screenshotContext, int yPosition, String fileName) throws IOException;
+}
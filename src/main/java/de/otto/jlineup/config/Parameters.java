@@ -2,6 +2,8 @@ package de.otto.jlineup.config;
 
 import com.beust.jcommander.DynamicParameter;
 import com.beust.jcommander.Parameter;
+import de.otto.jlineup.image.PngFilter;
+import de.otto.jlineup.metrics.PrometheusEndpoint;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -14,7 +16,7 @@ public class Parameters {
     @Parameter(names = {"-?", "--help"}, help = true, description = "Shows this help")
     private boolean help = false;
 
-    @Parameter(names = {"-s", "--step"}, description = "JLineup step - 'before' just takes screenshots, 'after' takes screenshots and compares them with the 'before'-screenshots in the screenshots directory. 'compare' just compares existing screenshots, it's also included in 'after'.")
+    @Parameter(names = {"-s", "--step"}, description = "JLineup step - 'before' just takes screenshots, 'after' takes screenshots and compares them with the 'before'-screenshots in the screenshots directory. 'compare' just compares existing screenshots, it's also included in 'after'. 'report' creates the reports of an earlier run with --gate.")
     private Step step = before;
 
     @Parameter(names = {"--config", "-c"}, description = "Config file")
@@ -41,6 +43,72 @@ public class Parameters {
     @Parameter(names = {"--version", "-v"}, description = "Prints version information.")
     private boolean version = false;
 
+    @Parameter(names = {"--screenshot-format"}, description = "Storage format of screenshots - 'png' or 'raw'. Raw screenshots are uncompressed, so they are written and compared much faster, but need more disk space. Pngs are only created for the images in the report.")
+    private ScreenshotFormat screenshotFormat = ScreenshotFormat.png;
+
+    @Parameter(names = {"--deduplicate-screenshots"}, description = "Stores every distinct screenshot only once, in the 'objects' folder of the screenshots directory. Equal screenshots share one file.")
+    private boolean deduplicateScreenshots = false;
+
+    @Parameter(names = {"--archive-screenshots"}, description = "Store screenshots and difference images in a single uncompressed tar archive in the screenshots directory instead of thousands of single files.")
+    private boolean archiveScreenshots = false;
+
+    @Parameter(names = {"--extract-screenshots"}, description = "Extract the screenshot archive into the screenshots directory, so the HTML report shows the screenshots, and exit. Raw screenshots are extracted as png.")
+    private boolean extractScreenshots = false;
+
+    @Parameter(names = {"--png-compression-level"}, description = "Deflate level (0-9) of written pngs. Lower levels are faster, but produce bigger files.")
+    private int pngCompressionLevel = 6;
+
+    @Parameter(names = {"--png-filter"}, description = "Filter type of written pngs - 'none', 'sub', 'up', 'average', 'paeth' or 'adaptive', which picks the best filter per row. 'none' is fastest, but makes the biggest pngs.")
+    private PngFilter pngFilter = PngFilter.adaptive;
+
+    @Parameter(names = {"--png-deflate-threads"}, description = "Number of threads that compress a single png in parallel.")
+    private int pngDeflateThreads = 1;
+
+    @Parameter(names = {"--compare-threads"}, description = "Number of screenshots that are compared in parallel. Defaults to the number of processors.")
+    private int compareThreads = 0;
+
+    @Parameter(names = {"--compare-memory-budget"}, description = "Memory in MB that parallel comparisons may use together. Defaults to half of the maximum heap size.")
+    private int compareMemoryBudget = 0;
+
+    @Parameter(names = {"--baseline-cache-dir"}, description = "Directory outside of the working directory where screenshots of the 'before' step are kept for later runs. Used together with --baseline-version.")
+    private String baselineCacheDirectory = null;
+
+    @Parameter(names = {"--baseline-version"}, description = "Version of the tested environment in the 'before' step, e.g. a build number. If the baseline cache has screenshots of this version taken with the same config, they are used instead of taking new ones.")
+    private String baselineVersion = null;
+
+    @Parameter(names = {"--baseline-cache-size"}, description = "Maximum size of the baseline cache in MB. The least recently used baselines are removed first.")
+    private int baselineCacheSize = 2048;
+
+    @Parameter(names = {"--comparison-cache-dir"}, description = "Directory where comparison results and difference images are kept, so the same pair of screenshots isn't compared again in later runs.")
+    private String comparisonCacheDirectory = null;
+
+    @Parameter(names = {"--comparison-cache-size"}, description = "Maximum size of the comparison cache in MB. The least recently used results are removed first.")
+    private int comparisonCacheSize = 1024;
+
+    @Parameter(names = {"--compact-json-report"}, description = "Write report.json without line breaks and indentation.")
+    private boolean compactJsonReport = false;
+
+    @Parameter(names = {"--no-thumbnails"}, description = "Show the screenshots themselves in the HTML report instead of downscaled thumbnails that link to them.")
+    private boolean thumbnailsDisabled = false;
+
+    @Parameter(names = {"--gate"}, description = "Only compare the screenshots and set the exit code. Comparing stops at the first difference above a max-diff, no difference images and reports are written. Use '--step report' to create them later.")
+    private boolean gate = false;
+
+    @Parameter(names = {"--run-history"}, description = "File outside of the working directory where durations, page heights, screenshot counts and differences of every run are appended. Changes compared to earlier runs are reported and the contexts that took longest are started first.")
+    private String runHistoryFile = null;
+
+    @Parameter(names = {"--metrics"}, description = "Publish live metrics of the run as MBean 'de.otto.jlineup:type=JLineupMetrics'.")
+    private boolean metrics = false;
+
+    @Parameter(names = {"--metrics-port"}, description = "Port where live metrics are served in the Prometheus text format at /metrics. Implies --metrics.")
+    private int metricsPort = 0;
+
+    @Parameter(names = {"--metrics-host"}, description = "Address the metrics endpoint of --metrics-port listens on. Defaults to the loopback address, so only the local machine can read the metrics. Use 0.0.0.0 to serve them to other hosts.")
+    private String metricsHost = PrometheusEndpoint.DEFAULT_HOST;
+
+    @Parameter(names = {"--trace"}, description = "File where a timeline of the run is written in the trace event format of Chrome. It can be opened in chrome://tracing or ui.perfetto.dev.")
+    private String traceFile = null;
+
     @DynamicParameter(names = {"--replace-in-url", "-R"}, description = "The given keys are replaced with the corresponding values in all urls that are tested.")
     private Map<String, String> urlReplacements = new HashMap<>();
 
@@ -65,13 +133,17 @@ public class Parameters {
     }
 
     public boolean isBefore() {
-        return step != after && step != compare;
+        return step == before;
     }
 
     public boolean isJustCompare() {
         return step == compare;
     }
 
+    public boolean isReport() {
+        return step == report;
+    }
+
     public boolean isHelp() {
         return help;
     }
@@ -80,6 +152,95 @@ public class Parameters {
         return step;
     }
 
+    public ScreenshotFormat getScreenshotFormat() {
+        return screenshotFormat;
+    }
+
+    public boolean isDeduplicateScreenshots() {
+        return deduplicateScreenshots;
+    }
+
+    public boolean isArchiveScreenshots() {
+        return archiveScreenshots;
+    }
+
+    public boolean isExtractScreenshots() {
+        return extractScreenshots;
+    }
+
+    public int getPngCompressionLevel() {
+        return pngCompressionLevel;
+    }
+
+    public PngFilter getPngFilter() {
+        return pngFilter;
+    }
+
+    public int getPngDeflateThreads() {
+        return pngDeflateThreads;
+    }
+
+    public int getCompareThreads() {
+        return compareThreads > 0 ? compareThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    //in bytes
+    public long getCompareMemoryBudget() {
+        return compareMemoryBudget > 0 ? compareMemoryBudget * 1024L * 1024L : Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    public String getBaselineCacheDirectory() {
+        return baselineCacheDirectory;
+    }
+
+    public String getBaselineVersion() {
+        return baselineVersion;
+    }
+
+    public int getBaselineCacheSize() {
+        return baselineCacheSize;
+    }
+
+    public String getComparisonCacheDirectory() {
+        return comparisonCacheDirectory;
+    }
+
+    public int getComparisonCacheSize() {
+        return comparisonCacheSize;
+    }
+
+    public boolean isCompactJsonReport() {
+        return compactJsonReport;
+    }
+
+    public boolean isThumbnailsDisabled() {
+        return thumbnailsDisabled;
+    }
+
+    public boolean isGate() {
+        return gate;
+    }
+
+    public String getRunHistoryFile() {
+        return runHistoryFile;
+    }
+
+    public boolean isMetrics() {
+        return metrics || metricsPort > 0;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public String getMetricsHost() {
+        return metricsHost;
+    }
+
+    public String getTraceFile() {
+        return traceFile;
+    }
+
     public Map<String, String> getUrlReplacements() {
         return urlReplacements;
     }
@@ -109,6 +270,28 @@ public class Parameters {
                 ", printConfig=" + printConfig +
                 ", debug=" + debug +
                 ", version=" + version +
+                ", screenshotFormat=" + screenshotFormat +
+                ", deduplicateScreenshots=" + deduplicateScreenshots +
+                ", archiveScreenshots=" + archiveScreenshots +
+                ", extractScreenshots=" + extractScreenshots +
+                ", pngCompressionLevel=" + pngCompressionLevel +
+                ", pngFilter=" + pngFilter +
+                ", pngDeflateThreads=" + pngDeflateThreads +
+                ", compareThreads=" + compareThreads +
+                ", compareMemoryBudget=" + compareMemoryBudget +
+                ", baselineCacheDirectory='" + baselineCacheDirectory + '\'' +
+                ", baselineVersion='" + baselineVersion + '\'' +
+                ", baselineCacheSize=" + baselineCacheSize +
+                ", comparisonCacheDirectory='" + comparisonCacheDirectory + '\'' +
+                ", comparisonCacheSize=" + comparisonCacheSize +
+                ", compactJsonReport=" + compactJsonReport +
+                ", thumbnailsDisabled=" + thumbnailsDisabled +
+                ", gate=" + gate +
+                ", runHistoryFile='" + runHistoryFile + '\'' +
+                ", metrics=" + metrics +
+                ", metricsPort=" + metricsPort +
+                ", metricsHost='" + metricsHost + '\'' +
+                ", traceFile='" + traceFile + '\'' +
                 ", urlReplacements=" + urlReplacements +
                 '}';
     }
@@ -128,12 +311,34 @@ public class Parameters {
                 Objects.equals(screenshotDirectory, that.screenshotDirectory) &&
                 Objects.equals(reportDirectory, that.reportDirectory) &&
                 Objects.equals(url, that.url) &&
+                screenshotFormat == that.screenshotFormat &&
+                deduplicateScreenshots == that.deduplicateScreenshots &&
+                archiveScreenshots == that.archiveScreenshots &&
+                extractScreenshots == that.extractScreenshots &&
+                pngCompressionLevel == that.pngCompressionLevel &&
+                pngFilter == that.pngFilter &&
+                pngDeflateThreads == that.pngDeflateThreads &&
+                compareThreads == that.compareThreads &&
+                compareMemoryBudget == that.compareMemoryBudget &&
+                Objects.equals(baselineCacheDirectory, that.baselineCacheDirectory) &&
+                Objects.equals(baselineVersion, that.baselineVersion) &&
+                baselineCacheSize == that.baselineCacheSize &&
+                Objects.equals(comparisonCacheDirectory, that.comparisonCacheDirectory) &&
+                comparisonCacheSize == that.comparisonCacheSize &&
+                compactJsonReport == that.compactJsonReport &&
+                thumbnailsDisabled == that.thumbnailsDisabled &&
+                gate == that.gate &&
+                Objects.equals(runHistoryFile, that.runHistoryFile) &&
+                metrics == that.metrics &&
+                metricsPort == that.metricsPort &&
+                Objects.equals(metricsHost, that.metricsHost) &&
+                Objects.equals(traceFile, that.traceFile) &&
                 Objects.equals(urlReplacements, that.urlReplacements);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(help, step, configFile, workingDirectory, screenshotDirectory, reportDirectory, url, printConfig, debug, version, urlReplacements);
+        return Objects.hash(help, step, configFile, workingDirectory, screenshotDirectory, reportDirectory, url, printConfig, debug, version, screenshotFormat, deduplicateScreenshots, archiveScreenshots, extractScreenshots, pngCompressionLevel, pngFilter, pngDeflateThreads, compareThreads, compareMemoryBudget, baselineCacheDirectory, baselineVersion, baselineCacheSize, comparisonCacheDirectory, comparisonCacheSize, compactJsonReport, thumbnailsDisabled, gate, runHistoryFile, metrics, metricsPort, metricsHost, traceFile, urlReplacements);
     }
 
     public boolean isVersion() {
@@ -0,0 +1,6 @@
+package de.otto.jlineup.config;
+
+public enum ScreenshotFormat {
+    png,
+    raw
+}
@@ -3,5 +3,6 @@ package de.otto.jlineup.config;
 public enum Step {
     before,
     after,
-    compare
+    compare,
+    report
 }
@@ -0,0 +1,54 @@
+package de.otto.jlineup.file;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import de.otto.jlineup.config.Config;
+import de.otto.jlineup.config.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.TreeMap;
+
+/*
+ * Screenshots of 'before' steps, kept outside of the working directory for later runs against the same version.
+ * A baseline is found by the version given by the user and a fingerprint of everything in the config and the
+ * parameters that changes the screenshots.
+ */
+public class BaselineCache {
+
+    private final LruDirectoryCache cache;
+    private final String key;
+
+    public BaselineCache(Parameters parameters, Config config) {
+        if (parameters.getBaselineCacheDirectory() != null && parameters.getBaselineVersion() != null) {
+            this.cache = new LruDirectoryCache(Paths.get(parameters.getBaselineCacheDirectory()), parameters.getBaselineCacheSize() * 1024L * 1024L);
+            this.key = parameters.getBaselineVersion() + "/" + fingerprint(parameters, config);
+        } else {
+            this.cache = null;
+            this.key = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    //The directory with the cached screenshots or null if there is no baseline for this version and config
+    Path get() throws IOException {
+        return cache.get(key);
+    }
+
+    void put(Path screenshotDirectory) throws IOException {
+        cache.put(key, screenshotDirectory);
+    }
+
+    static String fingerprint(Parameters parameters, Config config) {
+        final String screenshotSettings = new Gson().toJson(config)
+                + new TreeMap<>(parameters.getUrlReplacements())
+                + parameters.getScreenshotFormat()
+                + parameters.isDeduplicateScreenshots();
+        return Hashing.sha1().hashString(screenshotSettings, Charsets.UTF_8).toString();
+    }
+}
@@ -2,10 +2,27 @@ package de.otto.jlineup.file;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import de.otto.jlineup.config.Parameters;
-
+import de.otto.jlineup.config.ScreenshotFormat;
+import de.otto.jlineup.image.ImageRowReader;
+import de.otto.jlineup.image.ImageService;
+import de.otto.jlineup.image.PngEncoding;
+import de.otto.jlineup.image.PngHeader;
+import de.otto.jlineup.image.PngRowReader;
+import de.otto.jlineup.image.PngRowWriter;
+import de.otto.jlineup.image.RawImage;
+import de.otto.jlineup.image.RawImageRowReader;
+import de.otto.jlineup.image.Thumbnail;
+import de.otto.jlineup.image.TileHashes;
+import de.otto.jlineup.metrics.JLineupMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOException;
 import javax.imageio.ImageIO;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.file.*;
@@ -13,15 +30,30 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class FileService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(FileService.class);
+
     public static final String BEFORE = "before";
     public static final String AFTER = "after";
     public static final String DIVIDER = "_";
     public static final String PNG_EXTENSION = ".png";
+    public static final String TILE_HASHES_EXTENSION = ".tiles";
+    public static final String RAW_EXTENSION = ".raw";
+    public static final String OBJECTS_DIRECTORY = "objects";
+    public static final String THUMBNAILS_DIRECTORY = "thumbnails";
+    public static final String JPEG_EXTENSION = ".jpg";
+    public static final String GATE_RESULTS_FILE_NAME = "gate-results.json";
 
     private final Parameters parameters;
+    private final JLineupMetrics metrics = JLineupMetrics.get();
+
+    private ScreenshotManifest screenshotManifest;
+    private ScreenshotDirectoryIndex screenshotDirectoryIndex;
+    private ScreenshotArchive screenshotArchive;
+    private WorkspaceTrash workspaceTrash;
 
     public FileService(Parameters parameters) {
         this.parameters = parameters;
@@ -73,22 +105,79 @@ public class FileService {
     }
 
     public void createOrClearScreenshotsDirectory() {
+        closeScreenshotArchive();
         createOrClearDirectoryBelowWorkingDir(parameters.getWorkingDirectory(), parameters.getScreenshotDirectory());
+        synchronized (this) {
+            screenshotDirectoryIndex = null;
+            screenshotManifest = null;
+        }
     }
 
+    //Fills the cleared screenshots directory with the screenshots of a cached baseline, returns false if there is none.
+    //Another process may evict the baseline while it's copied. Every file is copied completely or not at all, so the
+    //baseline is only used if all screenshots of its manifest arrived
+    public boolean restoreScreenshotsFromBaselineCache(BaselineCache baselineCache) throws IOException {
+        final Path baseline = baselineCache.get();
+        if (baseline == null) {
+            return false;
+        }
+        createOrClearScreenshotsDirectory();
+        boolean complete;
+        try {
+            LruDirectoryCache.copyDirectory(baseline, getScreenshotDirectory());
+            complete = hasAllScreenshotsOfManifest();
+        } catch (NoSuchFileException e) {
+            complete = false;
+        }
+        if (!complete) {
+            LOG.warn("Cached baseline '{}' was evicted while it was restored, taking new screenshots", baseline);
+            createOrClearScreenshotsDirectory();
+        }
+        return complete;
+    }
+
+    private boolean hasAllScreenshotsOfManifest() throws IOException {
+        if (!Files.exists(getScreenshotManifest().getManifestFile())) {
+            return false;
+        }
+        for (String fileName : getScreenshotManifest().getFileNames()) {
+            final String storedName = getStoredScreenshotName(fileName);
+            if (!storedFileExists(storedName) && !storedFileExists(toRawFileName(storedName))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void storeScreenshotsInBaselineCache(BaselineCache baselineCache) throws IOException {
+        baselineCache.put(getScreenshotDirectory());
+    }
+
+    //The old directory is moved to the trash and deleted in the background, only if that's not possible it's cleared right away
     private void createOrClearDirectoryBelowWorkingDir(String workingDirectory, String subDirectory) {
         try {
             final String subDirectoryPath = workingDirectory + "/" + subDirectory;
-            createDirIfNotExists(subDirectoryPath);
-            clearDirectory(subDirectoryPath);
+            if (getWorkspaceTrash().moveToTrash(Paths.get(subDirectoryPath))) {
+                createDirIfNotExists(subDirectoryPath);
+            } else {
+                createDirIfNotExists(subDirectoryPath);
+                clearDirectory(subDirectoryPath);
+            }
         } catch (IOException e) {
             System.err.println("Could not create or open " + subDirectory + " directory.");
             System.exit(1);
         }
     }
 
-    @VisibleForTesting
-    String generateScreenshotFileName(String url, String urlSubPath, int width, int yPosition, String type) {
+    private synchronized WorkspaceTrash getWorkspaceTrash() {
+        final Path trashDirectory = Paths.get(parameters.getWorkingDirectory()).resolve(WorkspaceTrash.TRASH_DIRECTORY).toAbsolutePath().normalize();
+        if (workspaceTrash == null || !workspaceTrash.getTrashDirectory().equals(trashDirectory)) {
+            workspaceTrash = new WorkspaceTrash(Paths.get(parameters.getWorkingDirectory()));
+        }
+        return workspaceTrash;
+    }
+
+    public String generateScreenshotFileName(String url, String urlSubPath, int width, int yPosition, String type) {
 
         String fileName = generateScreenshotFileNamePrefix(url, urlSubPath)
                 + String.format("%04d", width)
@@ -134,12 +223,265 @@ public class FileService {
                 + fileName;
     }
 
+    //Screenshots are addressed by their png file name, even if they are stored in raw format or in the object store
     public BufferedImage readScreenshot(String fileName) throws IOException {
-        return ImageIO.read(new File(getScreenshotPath(fileName)));
+        final String storedName = getStoredScreenshotName(fileName);
+        if (storedFileExists(toRawFileName(storedName))) {
+            try (RawImageRowReader reader = openRawImageRowReader(toRawFileName(storedName))) {
+                return RawImage.read(reader);
+            }
+        }
+        if (!storedFileExists(storedName)) {
+            throw new IIOException("Can't read input file!");
+        }
+        try (InputStream in = new BufferedInputStream(openStoredFile(storedName))) {
+            return ImageIO.read(in);
+        }
+    }
+
+    public boolean isRawScreenshot(String fileName) {
+        try {
+            return storedFileExists(toRawFileName(getStoredScreenshotName(fileName)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public ImageRowReader openScreenshotRowReader(String fileName) throws IOException {
+        final String storedName = getStoredScreenshotName(fileName);
+        if (storedFileExists(toRawFileName(storedName))) {
+            return openRawImageRowReader(toRawFileName(storedName));
+        }
+        return new PngRowReader(openStoredFile(storedName));
+    }
+
+    //Dimensions of a screenshot from its header without decoding it or null if it can't be read
+    public Dimension readScreenshotSize(String fileName) {
+        try {
+            final String storedName = getStoredScreenshotName(fileName);
+            if (storedFileExists(toRawFileName(storedName))) {
+                try (RawImageRowReader reader = openRawImageRowReader(toRawFileName(storedName))) {
+                    return new Dimension(reader.getWidth(), reader.getHeight());
+                }
+            }
+            try (InputStream in = new BufferedInputStream(openStoredFile(storedName))) {
+                final PngHeader header = PngHeader.read(in);
+                return new Dimension(header.width, header.height);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    //Screenshots in the object store are stored under the name in their manifest entry
+    private String getStoredScreenshotName(String fileName) throws IOException {
+        final ScreenshotManifestEntry screenshot = getScreenshotManifest().get(fileName);
+        return screenshot != null && screenshot.storedAs != null ? screenshot.storedAs : fileName;
     }
 
-    private void writeScreenshot(String fileName, BufferedImage image) throws IOException {
-        ImageIO.write(image, "png", new File(fileName));
+    //Files below the screenshots directory are either in the screenshot archive or in a file of their own
+    private boolean storedFileExists(String name) throws IOException {
+        final ScreenshotArchive archive = getScreenshotArchive();
+        return (archive != null && archive.contains(name)) || Files.exists(Paths.get(getScreenshotPath(name)));
+    }
+
+    private InputStream openStoredFile(String name) throws IOException {
+        final ScreenshotArchive archive = getScreenshotArchive();
+        if (archive != null) {
+            final InputStream entry = archive.openEntry(name);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return Files.newInputStream(Paths.get(getScreenshotPath(name)));
+    }
+
+    //Raw images in the archive are read at their position in the archive file
+    private RawImageRowReader openRawImageRowReader(String name) throws IOException {
+        final ScreenshotArchive archive = getScreenshotArchive();
+        if (archive != null) {
+            final long offset = archive.getOffset(name);
+            if (offset >= 0) {
+                return new RawImageRowReader(archive.getArchiveFile(), offset);
+            }
+        }
+        return new RawImageRowReader(Paths.get(getScreenshotPath(name)));
+    }
+
+    //The archive is written with --archive-screenshots only, but it's read whenever there is one
+    private synchronized ScreenshotArchive getScreenshotArchive() {
+        final Path archiveFile = getScreenshotDirectory().resolve(ScreenshotArchive.ARCHIVE_FILE_NAME);
+        if (screenshotArchive == null || !screenshotArchive.getArchiveFile().equals(archiveFile)) {
+            if (!parameters.isArchiveScreenshots() && !Files.exists(archiveFile)) {
+                return null;
+            }
+            screenshotArchive = new ScreenshotArchive(archiveFile);
+        }
+        return screenshotArchive;
+    }
+
+    private boolean isInScreenshotArchive(String name) throws IOException {
+        final ScreenshotArchive archive = getScreenshotArchive();
+        return archive != null && archive.contains(name);
+    }
+
+    public boolean hasScreenshotArchive() {
+        return getScreenshotArchive() != null;
+    }
+
+    //With --archive-screenshots, the file is written straight into a new entry of the screenshot archive that's added when
+    //the stream is closed, otherwise into a file of its own. The size reserves the archive entry, -1 if it's unknown
+    private OutputStream createStoredFile(String name, long size) throws IOException {
+        if (parameters.isArchiveScreenshots()) {
+            return getScreenshotArchive().createEntry(name, size);
+        }
+        return Files.newOutputStream(Paths.get(getScreenshotPath(name)));
+    }
+
+    //Every entry is added to the archive as soon as its writer is done, so this only closes the archive. It has to be called
+    //after all screenshots and difference images are written, i.e. after the comparison and the report in the 'after' step
+    public void finishScreenshotArchive() {
+        closeScreenshotArchive();
+    }
+
+    private synchronized void closeScreenshotArchive() {
+        if (screenshotArchive != null) {
+            try {
+                screenshotArchive.close();
+            } catch (IOException e) {
+                System.err.println("Could not close screenshot archive: " + e);
+            }
+            screenshotArchive = null;
+        }
+    }
+
+    private static String toRawFileName(String fileName) {
+        return fileName.endsWith(PNG_EXTENSION) ? fileName.substring(0, fileName.length() - PNG_EXTENSION.length()) + RAW_EXTENSION : fileName;
+    }
+
+    private static String toPngFileName(String fileName) {
+        return fileName.endsWith(RAW_EXTENSION) ? fileName.substring(0, fileName.length() - RAW_EXTENSION.length()) + PNG_EXTENSION : fileName;
+    }
+
+    //The report links to plain png files, screenshots in raw format get their png only when they are shown in the report.
+    //Screenshots in the archive stay there, the report shows them after the archive is extracted with --extract-screenshots.
+    public void materializeScreenshotForReport(String pathRelativeToReportDir) throws IOException {
+        final Path pngPath = getReportDirectory().resolve(pathRelativeToReportDir).toAbsolutePath().normalize();
+        final String name = toNameInScreenshotDirectory(pathRelativeToReportDir);
+        final String rawName = toRawFileName(name);
+        if (Files.exists(pngPath) || isInScreenshotArchive(name) || isInScreenshotArchive(rawName) || !storedFileExists(rawName)) {
+            return;
+        }
+        writePngOfRawImage(rawName, pngPath);
+    }
+
+    //Extracts the screenshot archive into the screenshots directory, so the HTML report shows the screenshots. Raw images
+    //are extracted as png, tile hashes are left out. Returns the number of extracted images.
+    public int extractScreenshotArchive() throws IOException {
+        final ScreenshotArchive archive = getScreenshotArchive();
+        if (archive == null) {
+            return 0;
+        }
+        int extracted = 0;
+        try {
+            for (String name : archive.getEntryNames()) {
+                if (name.endsWith(TILE_HASHES_EXTENSION)) {
+                    continue;
+                }
+                final Path target = Paths.get(getScreenshotPath(toPngFileName(name)));
+                Files.createDirectories(target.getParent());
+                if (name.endsWith(RAW_EXTENSION)) {
+                    writePngOfRawImage(name, target);
+                } else {
+                    try (InputStream in = archive.openEntry(name)) {
+                        Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                extracted++;
+            }
+        } finally {
+            closeScreenshotArchive();
+        }
+        return extracted;
+    }
+
+    private void writePngOfRawImage(String rawName, Path pngPath) throws IOException {
+        try (RawImageRowReader reader = openRawImageRowReader(rawName);
+             PngRowWriter writer = new PngRowWriter(Files.newOutputStream(pngPath), reader.getWidth(), reader.getHeight(), true, getPngEncoding())) {
+            final int rowsPerBand = 64;
+            final int[] band = new int[reader.getWidth() * rowsPerBand];
+            for (int y = 0; y < reader.getHeight(); y += rowsPerBand) {
+                final int rowCount = Math.min(rowsPerBand, reader.getHeight() - y);
+                reader.readRows(band, rowCount);
+                writer.writeRows(band, rowCount);
+            }
+        }
+    }
+
+    //Writes a jpeg of the screenshot that's scaled to the given width and returns its path relative to the report directory.
+    //Returns null if the screenshot isn't wider than that or can't be read row by row, the report shows the screenshot itself then.
+    public String writeThumbnailForReport(String pathRelativeToReportDir, int thumbnailWidth) {
+        final String name = toNameInScreenshotDirectory(pathRelativeToReportDir);
+        final String thumbnailPath = THUMBNAILS_DIRECTORY + "/" + (name.endsWith(PNG_EXTENSION) ? name.substring(0, name.length() - PNG_EXTENSION.length()) : name) + JPEG_EXTENSION;
+        try {
+            final String rawName = toRawFileName(name);
+            try (ImageRowReader reader = storedFileExists(rawName) ? openRawImageRowReader(rawName) : new PngRowReader(openStoredFile(name))) {
+                if (reader.getWidth() <= thumbnailWidth) {
+                    return null;
+                }
+                final BufferedImage thumbnail = Thumbnail.scaleToWidth(reader, thumbnailWidth);
+                final Path thumbnailFile = getReportDirectory().resolve(thumbnailPath);
+                Files.createDirectories(thumbnailFile.getParent());
+                ImageIO.write(thumbnail, "jpg", thumbnailFile.toFile());
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not write thumbnail of '{}', the report shows the screenshot itself: {}", name, e.toString());
+            return null;
+        }
+        return thumbnailPath;
+    }
+
+    private String toNameInScreenshotDirectory(String pathRelativeToReportDir) {
+        final Path path = getReportDirectory().resolve(pathRelativeToReportDir).toAbsolutePath().normalize();
+        return getScreenshotDirectory().toAbsolutePath().normalize().relativize(path).toString();
+    }
+
+    //The png is added to the archive when the writer is closed, an aborted png isn't archived
+    public PngRowWriter openScreenshotPngWriter(String url, String urlSubPath, int windowWidth, int yPosition, String step, int width, int height) throws IOException {
+        final String fileName = generateScreenshotFileName(url, urlSubPath, windowWidth, yPosition, step);
+        final OutputStream out = createStoredFile(fileName, -1);
+        return new PngRowWriter(out, width, height, false, getPngEncoding()) {
+            @Override
+            public void abort() {
+                if (out instanceof ScreenshotArchive.EntryOutputStream) {
+                    try {
+                        ((ScreenshotArchive.EntryOutputStream) out).discard();
+                    } catch (IOException e) {
+                        //the image is broken anyway
+                    }
+                }
+                super.abort();
+            }
+        };
+    }
+
+    //A png that can't be completed is never closed, so it's never added to the archive
+    private void writePng(BufferedImage image, OutputStream outputStream) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int rowsPerBand = Math.max(1, Math.min(height, (1 << 20) / Math.max(1, width)));
+        final int[] band = new int[width * rowsPerBand];
+        try (PngRowWriter writer = new PngRowWriter(outputStream, width, height, image.getColorModel().hasAlpha(), getPngEncoding())) {
+            for (int y = 0; y < height; y += rowsPerBand) {
+                final int rowCount = Math.min(rowsPerBand, height - y);
+                image.getRGB(0, y, width, rowCount, band, 0, width);
+                writer.writeRows(band, rowCount);
+            }
+        }
+    }
+
+    private PngEncoding getPngEncoding() {
+        return new PngEncoding(parameters.getPngCompressionLevel(), parameters.getPngFilter(), parameters.getPngDeflateThreads());
     }
 
     @VisibleForTesting
@@ -159,18 +501,167 @@ public class FileService {
 
     public String writeScreenshot(BufferedImage image, String url,
                                   String urlSubPath, int windowWidth, int yPosition, String step) throws IOException {
+        return writeScreenshot(image, url, urlSubPath, windowWidth, yPosition, step, new ScreenshotTimings());
+    }
+
+    //Encoding streams right into the file or archive entry, so 'encode' includes writing it and 'write' is indexing it
+    public String writeScreenshot(BufferedImage image, String url,
+                                  String urlSubPath, int windowWidth, int yPosition, String step, ScreenshotTimings timings) throws IOException {
         final String screenshotPath =
                 getScreenshotPath(url,
                         urlSubPath, windowWidth,
                         yPosition, step);
-        writeScreenshot(screenshotPath, image);
+        final String fileName = Paths.get(screenshotPath).getFileName().toString();
+        final boolean beforeOrAfter = BEFORE.equals(step) || AFTER.equals(step);
+        final long capturedAt = System.currentTimeMillis();
+        final long encodeStart = System.nanoTime();
+        //tile hashes are only needed to compare before and after, the pixel hash is computed in the same pass
+        final Hasher pixelHasher = beforeOrAfter ? ImageService.newPixelHasher(image) : null;
+        final TileHashes tileHashes = beforeOrAfter ? TileHashes.of(image, pixelHasher) : null;
+        final String hash = beforeOrAfter ? pixelHasher.hash().toString() : null;
+        final boolean raw = beforeOrAfter && parameters.getScreenshotFormat() == ScreenshotFormat.raw;
+        String storedAs = null;
+        metrics.encodeStarted();
+        try {
+            if (beforeOrAfter && parameters.isDeduplicateScreenshots()) {
+                storedAs = OBJECTS_DIRECTORY + "/" + hash + PNG_EXTENSION;
+                if (!storedFileExists(raw ? toRawFileName(storedAs) : storedAs)) {
+                    writeScreenshotObject(image, tileHashes, storedAs, raw);
+                }
+            } else {
+                writeScreenshot(image, tileHashes, fileName, raw, this::createStoredFile);
+            }
+        } finally {
+            metrics.encodeFinished();
+        }
+        timings.addSince(ScreenshotTimings.ENCODE, encodeStart);
+        final long writeStart = System.nanoTime();
+        getScreenshotDirectoryIndex().add(fileName);
+        timings.addSince(ScreenshotTimings.WRITE, writeStart);
+        final long writeMillis = System.currentTimeMillis() - capturedAt;
+        if (beforeOrAfter) {
+            getScreenshotManifest().add(new ScreenshotManifestEntry(fileName, url, urlSubPath, windowWidth, yPosition, step,
+                    image.getWidth(), image.getHeight(), hash, capturedAt, writeMillis, storedAs, timings.toMap()));
+        }
         return screenshotPath;
     }
 
+    //Copies a screenshot that was written in this or an earlier step, i.e. a difference image, to a file outside of the screenshots directory
+    public void copyScreenshotTo(String fileName, Path target) throws IOException {
+        try (InputStream in = openStoredFile(getStoredScreenshotName(fileName))) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    //Puts a copy of an image that was created earlier, i.e. a cached difference image, into the screenshots directory or archive
+    public void copyScreenshot(Path source, String fileName) throws IOException {
+        try (OutputStream out = createStoredFile(fileName, Files.size(source))) {
+            Files.copy(source, out);
+        }
+        getScreenshotDirectoryIndex().add(fileName);
+    }
+
+    //The tile hashes are written before the image, so every stored before or after image has its tile hashes
+    private void writeScreenshot(BufferedImage image, TileHashes tileHashes, String name, boolean raw, StoredFileFactory files) throws IOException {
+        if (tileHashes != null) {
+            try (OutputStream out = files.create(name + TILE_HASHES_EXTENSION, tileHashes.getSerializedSize())) {
+                tileHashes.writeTo(out);
+            }
+        }
+        if (raw) {
+            try (OutputStream out = files.create(toRawFileName(name), RawImage.sizeOf(image.getWidth(), image.getHeight()))) {
+                RawImage.write(image, out);
+            }
+        } else {
+            writePng(image, files.create(name, -1));
+        }
+    }
+
+    //Every image is stored only once in the object store. Another thread may write the same image at the same time.
+    //Archive entries are only added when they're complete, so they are written in place. Files are written to a
+    //temporary directory and moved to their place when they're complete.
+    private void writeScreenshotObject(BufferedImage image, TileHashes tileHashes, String objectName, boolean raw) throws IOException {
+        if (parameters.isArchiveScreenshots()) {
+            writeScreenshot(image, tileHashes, objectName, raw, this::createStoredFile);
+            return;
+        }
+        final Path object = Paths.get(getScreenshotPath(raw ? toRawFileName(objectName) : objectName));
+        if (Files.exists(object)) {
+            return;
+        }
+        Files.createDirectories(object.getParent());
+        final Path temporaryDirectory = Files.createTempDirectory(object.getParent(), "writing");
+        try {
+            writeScreenshot(image, tileHashes, objectName, raw, (name, size) -> Files.newOutputStream(temporaryDirectory.resolve(Paths.get(name).getFileName())));
+            Files.move(temporaryDirectory.resolve(Paths.get(objectName + TILE_HASHES_EXTENSION).getFileName()), Paths.get(getScreenshotPath(objectName + TILE_HASHES_EXTENSION)), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporaryDirectory.resolve(object.getFileName()), object, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            clearDirectory(temporaryDirectory.toString());
+            Files.delete(temporaryDirectory);
+        }
+    }
+
+    //Tile hashes that were computed when the screenshot was taken or null if there are none
+    public TileHashes readTileHashes(String fileName) throws IOException {
+        final String tileHashesName = getStoredScreenshotName(fileName) + TILE_HASHES_EXTENSION;
+        if (!storedFileExists(tileHashesName)) {
+            return null;
+        }
+        try (InputStream in = new BufferedInputStream(openStoredFile(tileHashesName))) {
+            return TileHashes.readFrom(in);
+        }
+    }
+
+    //Pixel hash that was computed when the screenshot was taken or null if there is none
+    public String getScreenshotHash(String fileName) throws IOException {
+        final ScreenshotManifestEntry screenshot = getScreenshotManifest().get(fileName);
+        return screenshot != null ? screenshot.hash : null;
+    }
+
+    private synchronized ScreenshotManifest getScreenshotManifest() {
+        final Path manifestFile = getScreenshotDirectory().resolve(ScreenshotManifest.MANIFEST_FILE_NAME);
+        if (screenshotManifest == null || !screenshotManifest.getManifestFile().equals(manifestFile)) {
+            screenshotManifest = new ScreenshotManifest(manifestFile);
+        }
+        return screenshotManifest;
+    }
+
     public List<String> getFilenamesForStep(String path, String url, String step) throws IOException {
-        final String matcherPattern = "glob:**" + generateScreenshotFileNamePrefix(url, path) + "*_*_" + step + ".png";
-        Path screenshotDirectory = getScreenshotDirectory();
-        return getFileNamesMatchingPattern(screenshotDirectory, matcherPattern);
+        return getScreenshotsForStep(path, url, step).stream()
+                .map(screenshot -> screenshot.fileName)
+                .collect(Collectors.toList());
+    }
+
+    //Screenshots of the given step sorted by file name, with the metadata from the manifest if there is any
+    public List<ScreenshotManifestEntry> getScreenshotsForStep(String path, String url, String step) throws IOException {
+        final List<ScreenshotManifestEntry> screenshots = new ArrayList<>();
+        for (ScreenshotManifestEntry screenshot : getScreenshotDirectoryIndex().getScreenshots(generateScreenshotFileNamePrefix(url, path), step)) {
+            screenshots.add(withManifestEntry(screenshot, url, path));
+        }
+        return screenshots;
+    }
+
+    //The screenshot with the given coordinates or null if there is none
+    public ScreenshotManifestEntry getScreenshot(String url, String urlSubPath, int windowWidth, int yPosition, String step) throws IOException {
+        final String fileName = generateScreenshotFileName(url, urlSubPath, windowWidth, yPosition, step);
+        final ScreenshotManifestEntry screenshot = getScreenshotDirectoryIndex().getScreenshot(generateScreenshotFileNamePrefix(url, urlSubPath), step, fileName);
+        return screenshot != null ? withManifestEntry(screenshot, url, urlSubPath) : null;
+    }
+
+    private ScreenshotManifestEntry withManifestEntry(ScreenshotManifestEntry screenshot, String url, String urlSubPath) throws IOException {
+        final ScreenshotManifestEntry manifestEntry = getScreenshotManifest().get(screenshot.fileName);
+        if (manifestEntry != null) {
+            return manifestEntry;
+        }
+        return ScreenshotManifestEntry.withoutMetadata(screenshot.fileName, url, urlSubPath, screenshot.windowWidth, screenshot.yPosition, screenshot.step);
+    }
+
+    private synchronized ScreenshotDirectoryIndex getScreenshotDirectoryIndex() {
+        final Path screenshotDirectory = getScreenshotDirectory();
+        if (screenshotDirectoryIndex == null || !screenshotDirectoryIndex.getDirectory().equals(screenshotDirectory)) {
+            screenshotDirectoryIndex = new ScreenshotDirectoryIndex(screenshotDirectory, getScreenshotManifest(), getScreenshotArchive());
+        }
+        return screenshotDirectoryIndex;
     }
 
     public String getRelativePathFromReportDirToScreenshotsDir() {
@@ -180,16 +671,30 @@ public class FileService {
         return relative.toString() + "/";
     }
 
-    public void writeJsonReport(String reportJson) throws FileNotFoundException {
-        try (PrintStream out = new PrintStream(new FileOutputStream(getReportDirectory().toString() + "/report.json"))) {
-            out.print(reportJson);
-        }
+    public Writer openGateResultsWriter() throws IOException {
+        return Files.newBufferedWriter(getReportDirectory().resolve(GATE_RESULTS_FILE_NAME), Charsets.UTF_8);
     }
 
-    public void writeHtmlReport(String htmlReport) throws FileNotFoundException {
-        try (PrintStream out = new PrintStream(new FileOutputStream(getReportDirectory().toString() + "/report.html"))) {
-            out.print(htmlReport);
-        }
+    //null if there was no run with --gate
+    public Reader openGateResultsReader() throws IOException {
+        final Path gateResults = getReportDirectory().resolve(GATE_RESULTS_FILE_NAME);
+        return Files.exists(gateResults) ? Files.newBufferedReader(gateResults, Charsets.UTF_8) : null;
+    }
+
+    public Writer openJsonReportWriter() throws IOException {
+        return Files.newBufferedWriter(getReportDirectory().resolve("report.json"), Charsets.UTF_8);
+    }
+
+    //The report pages are rendered right into their files, so they're never held in memory as a whole.
+    //All pages are in the report directory, so the relative paths to the screenshots are the same for every page.
+    public Writer openHtmlReportWriter(String fileName) throws IOException {
+        return Files.newBufferedWriter(getReportDirectory().resolve(fileName), Charsets.UTF_8);
+    }
+
+    //Output of a file below the screenshots directory, the size is -1 if it's unknown
+    @FunctionalInterface
+    private interface StoredFileFactory {
+        OutputStream create(String name, long size) throws IOException;
     }
 }
 
@@ -0,0 +1,164 @@
+package de.otto.jlineup.file;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * A directory of cache entries, every entry is a directory itself. Entries are stored complete or not at all and
+ * are evicted least recently used first when the cache grows beyond its maximum size. Several JLineup processes
+ * may use the same cache directory at the same time.
+ */
+public class LruDirectoryCache {
+
+    private static final String TEMPORARY_PREFIX = ".storing-";
+
+    private final Path cacheDirectory;
+    private final long maxSizeInBytes;
+
+    //size of the cache as far as this instance knows, so not every put needs to look at all entries
+    private long knownSizeInBytes = -1;
+
+    public LruDirectoryCache(Path cacheDirectory, long maxSizeInBytes) {
+        this.cacheDirectory = cacheDirectory;
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    //The directory of the entry or null if there is none, the entry counts as used
+    public Path get(String key) throws IOException {
+        final Path entry = cacheDirectory.resolve(entryName(key));
+        if (!Files.isDirectory(entry)) {
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            //evicted by another process in the meantime
+            return null;
+        }
+        return entry;
+    }
+
+    //Stores a copy of the files in the given directory (subdirectories included) under the given key
+    public void put(String key, Path sourceDirectory) throws IOException {
+        put(key, target -> copyDirectory(sourceDirectory, target));
+    }
+
+    //Stores the files that the given writer creates in the directory it gets under the given key
+    public void put(String key, EntryWriter entryWriter) throws IOException {
+        Files.createDirectories(cacheDirectory);
+        final Path temporaryEntry = Files.createTempDirectory(cacheDirectory, TEMPORARY_PREFIX);
+        final long entrySize;
+        try {
+            entryWriter.write(temporaryEntry);
+            entrySize = sizeOf(temporaryEntry);
+            try {
+                Files.move(temporaryEntry, cacheDirectory.resolve(entryName(key)), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                //the same entry was stored by someone else, the existing one is kept
+                return;
+            }
+        } finally {
+            if (Files.exists(temporaryEntry)) {
+                deleteDirectory(temporaryEntry);
+            }
+        }
+        evictIfTooBig(entrySize);
+    }
+
+    private synchronized void evictIfTooBig(long addedSizeInBytes) throws IOException {
+        if (knownSizeInBytes < 0) {
+            knownSizeInBytes = sizeOf(cacheDirectory);
+        } else {
+            knownSizeInBytes += addedSizeInBytes;
+        }
+        if (knownSizeInBytes > maxSizeInBytes) {
+            knownSizeInBytes = evict();
+        }
+    }
+
+    //Returns the size of the remaining entries
+    private long evict() throws IOException {
+        final List<Path> entries;
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            entries = files.filter(Files::isDirectory)
+                    .filter(entry -> !entry.getFileName().toString().startsWith(TEMPORARY_PREFIX))
+                    .collect(Collectors.toList());
+        }
+        final Map<Path, Long> lastUsed = new HashMap<>();
+        final Map<Path, Long> sizes = new HashMap<>();
+        long size = 0;
+        for (Path entry : entries) {
+            try {
+                lastUsed.put(entry, Files.getLastModifiedTime(entry).toMillis());
+                sizes.put(entry, sizeOf(entry));
+                size += sizes.get(entry);
+            } catch (NoSuchFileException e) {
+                //evicted by another process in the meantime
+            }
+        }
+        entries.removeIf(entry -> !sizes.containsKey(entry));
+        entries.sort(Comparator.comparing(lastUsed::get));
+
+        //the most recently used entry is kept, even if it's bigger than the whole cache
+        for (int i = 0; i < entries.size() - 1 && size > maxSizeInBytes; i++) {
+            deleteDirectory(entries.get(i));
+            size -= sizes.get(entries.get(i));
+        }
+        return size;
+    }
+
+    private static String entryName(String key) {
+        return Hashing.sha1().hashString(key, Charsets.UTF_8).toString();
+    }
+
+    static long sizeOf(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static void copyDirectory(Path source, Path target) throws IOException {
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                final Path targetFile = target.resolve(source.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(targetFile);
+                } else {
+                    Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryWriter {
+        void write(Path entryDirectory) throws IOException;
+    }
+}
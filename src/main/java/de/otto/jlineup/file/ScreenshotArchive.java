@@ -0,0 +1,477 @@
+package de.otto.jlineup.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.*;
+
+/*
+ * Uncompressed tar archive of the screenshots, so a whole run is a single file instead of thousands of small ones.
+ * Entries are written straight into the archive, names longer than the 100 bytes of a ustar header get a pax header.
+ * Entries are read directly from their position in the archive, so the archive is never unpacked.
+ * The archive ends with the end-of-archive blocks after every added entry, so it can be read with any tar tool at any time.
+ * Entries that are still being written have a header type that isn't indexed as a file, so an entry that was cut off
+ * by an aborted run is never read. Closing waits for entries that are still being read or written, the file is closed
+ * when the last of them is closed.
+ */
+class ScreenshotArchive implements Closeable {
+
+    static final String ARCHIVE_FILE_NAME = "screenshots.tar";
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final long MAX_ENTRY_SIZE = 077777777777L;
+    private static final char FILE_TYPE = '0';
+    private static final char INCOMPLETE_FILE_TYPE = '7';
+    private static final byte[] END_OF_ARCHIVE = new byte[2 * BLOCK_SIZE];
+
+    private final Path archiveFile;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private FileChannel channel;
+    private long end;
+    private int openEntries = 0;
+    private boolean closeRequested = false;
+
+    ScreenshotArchive(Path archiveFile) {
+        this.archiveFile = archiveFile;
+    }
+
+    Path getArchiveFile() {
+        return archiveFile;
+    }
+
+    synchronized boolean contains(String name) throws IOException {
+        open();
+        return entries.containsKey(name);
+    }
+
+    synchronized Set<String> getEntryNames() throws IOException {
+        open();
+        return new HashSet<>(entries.keySet());
+    }
+
+    //Position of the entry's data in the archive file or -1 if there is no such entry
+    synchronized long getOffset(String name) throws IOException {
+        open();
+        final Entry entry = entries.get(name);
+        return entry != null ? entry.offset : -1;
+    }
+
+    //The data of the entry or null if there is no such entry
+    synchronized InputStream openEntry(String name) throws IOException {
+        open();
+        final Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        openEntries++;
+        return new EntryInputStream(channel, entry, this::entryClosed);
+    }
+
+    //Stream for a new entry that's added when the stream is closed, a later entry replaces an earlier one with the same name.
+    //With a known size, the entry's place is reserved at the end of the archive and the stream writes right into it, so
+    //several entries can be written at the same time. With an unknown size (-1), the data is kept in memory until the
+    //stream is closed and appended then.
+    synchronized EntryOutputStream createEntry(String name, long size) throws IOException {
+        final EntryOutputStream entry = new EntryOutputStream(name);
+        if (size >= 0) {
+            entry.reserve(size);
+        }
+        return entry;
+    }
+
+    private synchronized Reservation reserve(String name, long size) throws IOException {
+        open();
+        if (size > MAX_ENTRY_SIZE) {
+            throw new IOException(name + " is too big for the screenshot archive");
+        }
+        long position = end;
+        final byte[] nameBytes = name.getBytes(UTF_8);
+        if (nameBytes.length > NAME_LENGTH || nameBytes.length != name.length()) {
+            final byte[] paxRecord = paxRecord("path", name);
+            position = write(position, header("PaxHeaders/" + truncate(name), paxRecord.length, 'x'));
+            position = write(position, pad(paxRecord));
+        }
+        final long headerPosition = position;
+        position = write(position, header(truncate(name), size, INCOMPLETE_FILE_TYPE));
+        final long offset = position;
+        position = write(offset + size, new byte[padding(size)]);
+        write(position, END_OF_ARCHIVE);
+        end = position;
+        openEntries++;
+        return new Reservation(channel, headerPosition, offset, size);
+    }
+
+    private synchronized void complete(String name, Reservation reservation) throws IOException {
+        try {
+            write(reservation.headerPosition, header(truncate(name), reservation.size, FILE_TYPE));
+            entries.put(name, new Entry(reservation.offset, reservation.size));
+        } finally {
+            entryClosed();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (openEntries > 0) {
+            closeRequested = true;
+            return;
+        }
+        closeChannel();
+    }
+
+    private synchronized void entryClosed() throws IOException {
+        openEntries--;
+        if (openEntries == 0 && closeRequested) {
+            closeChannel();
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        closeRequested = false;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    //Indexes the entries of an existing archive, the next file is added in place of the end-of-archive blocks.
+    //An entry that was cut off by an aborted run is overwritten.
+    private void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        channel = FileChannel.open(archiveFile, CREATE, READ, WRITE);
+        entries.clear();
+        long position = 0;
+        String paxName = null;
+        final ByteBuffer header = ByteBuffer.allocate(BLOCK_SIZE);
+        while (position + BLOCK_SIZE <= channel.size()) {
+            header.clear();
+            readFully(position, header);
+            final byte[] block = header.array();
+            if (isZero(block)) {
+                break;
+            }
+            final String sizeField = field(block, 124, 12).trim();
+            final long size = sizeField.isEmpty() ? 0 : Long.parseLong(sizeField, 8);
+            final long offset = position + BLOCK_SIZE;
+            if (offset + size > channel.size()) {
+                break;
+            }
+            final char type = (char) block[156];
+            if (type == 'x') {
+                final ByteBuffer record = ByteBuffer.allocate((int) size);
+                readFully(offset, record);
+                paxName = parsePaxPath(record.array());
+            } else {
+                if (type == FILE_TYPE || type == 0) {
+                    final String prefix = field(block, 345, 155);
+                    final String name = paxName != null ? paxName : (prefix.isEmpty() ? "" : prefix + "/") + field(block, 0, NAME_LENGTH);
+                    entries.put(name, new Entry(offset, size));
+                }
+                paxName = null;
+            }
+            position = offset + size + padding(size);
+        }
+        end = position;
+    }
+
+    private long write(long position, byte[] bytes) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    private void readFully(long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + archiveFile);
+            }
+            position += read;
+        }
+    }
+
+    private static byte[] header(String name, long size, char type) {
+        final byte[] header = new byte[BLOCK_SIZE];
+        put(header, 0, name.getBytes(UTF_8));
+        put(header, 100, octal(0644, 8));
+        put(header, 108, octal(0, 8));
+        put(header, 116, octal(0, 8));
+        put(header, 124, octal(size, 12));
+        put(header, 136, octal(System.currentTimeMillis() / 1000, 12));
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = (byte) type;
+        put(header, 257, "ustar\0".getBytes(US_ASCII));
+        put(header, 263, "00".getBytes(US_ASCII));
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        put(header, 148, octal(checksum, 7));
+        return header;
+    }
+
+    //"<length> <key>=<value>\n", where the length includes its own digits
+    private static byte[] paxRecord(String key, String value) {
+        final int length = (" " + key + "=" + value + "\n").getBytes(UTF_8).length;
+        int recordLength = length + Integer.toString(length).length();
+        if (Integer.toString(recordLength).length() > Integer.toString(length).length()) {
+            recordLength++;
+        }
+        return (recordLength + " " + key + "=" + value + "\n").getBytes(UTF_8);
+    }
+
+    private static String parsePaxPath(byte[] records) {
+        String path = null;
+        int position = 0;
+        while (position < records.length) {
+            final int space = indexOf(records, (byte) ' ', position);
+            if (space < 0) {
+                break;
+            }
+            final int length = Integer.parseInt(new String(records, position, space - position, US_ASCII));
+            final String record = new String(records, space + 1, length - (space - position) - 2, UTF_8);
+            if (record.startsWith("path=")) {
+                path = record.substring("path=".length());
+            }
+            position += length;
+        }
+        return path;
+    }
+
+    //A name that fits into a ustar header, the full name is in the pax header
+    private static String truncate(String name) {
+        final StringBuilder truncated = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            if (c > 127 || truncated.length() == NAME_LENGTH - "PaxHeaders/".length()) {
+                break;
+            }
+            truncated.append(c);
+        }
+        return truncated.toString();
+    }
+
+    private static byte[] octal(long value, int length) {
+        final String digits = String.format("%0" + (length - 1) + "o", value);
+        final byte[] field = new byte[length];
+        put(field, 0, digits.getBytes(US_ASCII));
+        return field;
+    }
+
+    private static void put(byte[] target, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, target, position, bytes.length);
+    }
+
+    private static String field(byte[] block, int position, int length) {
+        int fieldEnd = position;
+        while (fieldEnd < position + length && block[fieldEnd] != 0) {
+            fieldEnd++;
+        }
+        return new String(block, position, fieldEnd - position, UTF_8);
+    }
+
+    private static byte[] pad(byte[] data) {
+        return Arrays.copyOf(data, data.length + padding(data.length));
+    }
+
+    private static int padding(long size) {
+        return (int) ((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class Entry {
+        final long offset;
+        final long size;
+
+        Entry(long offset, long size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private static class Reservation {
+        final FileChannel channel;
+        final long headerPosition;
+        final long offset;
+        final long size;
+
+        Reservation(FileChannel channel, long headerPosition, long offset, long size) {
+            this.channel = channel;
+            this.headerPosition = headerPosition;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    //Writes with absolute positions into the reserved place, so several entries can be written at the same time
+    class EntryOutputStream extends OutputStream {
+
+        private final String name;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private Reservation reservation;
+        private long written = 0;
+        private boolean closed = false;
+
+        private EntryOutputStream(String name) {
+            this.name = name;
+        }
+
+        private void reserve(long size) throws IOException {
+            reservation = ScreenshotArchive.this.reserve(name, size);
+            buffer = null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Entry " + name + " is closed");
+            }
+            if (buffer != null) {
+                buffer.write(b, off, len);
+                return;
+            }
+            if (written + len > reservation.size) {
+                throw new IOException("Entry " + name + " is bigger than " + reservation.size + " bytes");
+            }
+            final ByteBuffer data = ByteBuffer.wrap(b, off, len);
+            while (data.hasRemaining()) {
+                written += reservation.channel.write(data, reservation.offset + written);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            try {
+                if (buffer != null) {
+                    final ByteArrayOutputStream data = buffer;
+                    reserve(data.size());
+                    data.writeTo(this);
+                }
+            } catch (IOException e) {
+                discard();
+                throw e;
+            }
+            closed = true;
+            if (written != reservation.size) {
+                entryClosed();
+                throw new IOException("Entry " + name + " is incomplete, " + written + " of " + reservation.size + " bytes were written");
+            }
+            complete(name, reservation);
+        }
+
+        //Closes the stream without adding the entry, e.g. after an error
+        void discard() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            buffer = null;
+            if (reservation != null) {
+                entryClosed();
+            }
+        }
+    }
+
+    //Reads with absolute positions, so several entries can be read at the same time while entries are written
+    private static class EntryInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private final EntryCloser closer;
+        private long position;
+        private boolean closed = false;
+
+        EntryInputStream(FileChannel channel, Entry entry, EntryCloser closer) {
+            this.channel = channel;
+            this.position = entry.offset;
+            this.end = entry.offset + entry.size;
+            this.closer = closer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            final int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (read < 0) {
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            final long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                closer.entryClosed();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface EntryCloser {
+        void entryClosed() throws IOException;
+    }
+}
@@ -0,0 +1,94 @@
+package de.otto.jlineup.file;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static de.otto.jlineup.file.FileService.DIVIDER;
+import static de.otto.jlineup.file.FileService.PNG_EXTENSION;
+
+/*
+ * In-memory index of the screenshots in the screenshots directory. The directory is listed once,
+ * afterwards the index is kept up to date by the screenshots that are written. Screenshots are
+ * indexed by file name prefix and step and are addressed by their png file name, even if they are stored in raw format.
+ * Window width and vertical position are taken from the file name, url and path are unknown.
+ * Screenshots in the object store have no file of their own, they are indexed by their manifest entries.
+ * Screenshots in the screenshot archive are indexed by the names of their entries.
+ */
+class ScreenshotDirectoryIndex {
+
+    //<prefix><width>_<yPosition>_<step>.<extension>, the prefix ends with the divider
+    private static final Pattern SCREENSHOT_FILE_NAME_PATTERN = Pattern.compile("^(.*_)([0-9]+)_([0-9]+)_([^_]+)\\.(png|raw)$");
+
+    private final Path directory;
+    private final ScreenshotManifest manifest;
+    private final ScreenshotArchive archive;
+    private Map<String, TreeMap<String, ScreenshotManifestEntry>> screenshotsByPrefixAndStep;
+
+    ScreenshotDirectoryIndex(Path directory, ScreenshotManifest manifest, ScreenshotArchive archive) {
+        this.directory = directory;
+        this.manifest = manifest;
+        this.archive = archive;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    //Sorted by file name
+    synchronized List<ScreenshotManifestEntry> getScreenshots(String prefix, String step) throws IOException {
+        load();
+        final TreeMap<String, ScreenshotManifestEntry> screenshots = screenshotsByPrefixAndStep.get(prefix + step);
+        return screenshots != null ? new ArrayList<>(screenshots.values()) : new ArrayList<>();
+    }
+
+    synchronized ScreenshotManifestEntry getScreenshot(String prefix, String step, String fileName) throws IOException {
+        load();
+        final TreeMap<String, ScreenshotManifestEntry> screenshots = screenshotsByPrefixAndStep.get(prefix + step);
+        return screenshots != null ? screenshots.get(fileName) : null;
+    }
+
+    synchronized void add(String fileName) {
+        //if the directory wasn't listed yet, the file is found when it is
+        if (screenshotsByPrefixAndStep != null) {
+            index(fileName);
+        }
+    }
+
+    private void load() throws IOException {
+        if (screenshotsByPrefixAndStep != null) {
+            return;
+        }
+        screenshotsByPrefixAndStep = new HashMap<>();
+        manifest.getFileNames().forEach(this::index);
+        if (archive != null) {
+            archive.getEntryNames().forEach(this::index);
+        }
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(directory)) {
+            dirStream.forEach(filePath -> index(filePath.getFileName().toString()));
+        }
+    }
+
+    private void index(String fileName) {
+        final Matcher matcher = SCREENSHOT_FILE_NAME_PATTERN.matcher(fileName);
+        if (!matcher.matches()) {
+            return;
+        }
+        final String prefix = matcher.group(1);
+        final String step = matcher.group(4);
+        final String pngFileName = prefix + matcher.group(2) + DIVIDER + matcher.group(3) + DIVIDER + step + PNG_EXTENSION;
+        screenshotsByPrefixAndStep.computeIfAbsent(prefix + step, key -> new TreeMap<>()).put(pngFileName,
+                ScreenshotManifestEntry.withoutMetadata(pngFileName, null, null, Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)), step));
+    }
+}
@@ -0,0 +1,75 @@
+package de.otto.jlineup.file;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.util.Collections.singletonList;
+
+/*
+ * Append-only manifest of the screenshots in the screenshots directory, one json object per line.
+ * The 'before' and the 'after' step run in different processes, so the file is read once and then
+ * written through on every new entry. A later entry for the same file name replaces the earlier one.
+ */
+class ScreenshotManifest {
+
+    static final String MANIFEST_FILE_NAME = "screenshot-manifest.jsonl";
+
+    private static final Gson GSON = new Gson();
+
+    private final Path manifestFile;
+    private Map<String, ScreenshotManifestEntry> entries;
+
+    ScreenshotManifest(Path manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    Path getManifestFile() {
+        return manifestFile;
+    }
+
+    synchronized ScreenshotManifestEntry get(String fileName) throws IOException {
+        load();
+        return entries.get(fileName);
+    }
+
+    synchronized Set<String> getFileNames() throws IOException {
+        load();
+        return new HashSet<>(entries.keySet());
+    }
+
+    synchronized void add(ScreenshotManifestEntry entry) throws IOException {
+        load();
+        Files.write(manifestFile, singletonList(GSON.toJson(entry)), UTF_8, CREATE, APPEND);
+        entries.put(entry.fileName, entry);
+    }
+
+    private void load() throws IOException {
+        if (entries != null) {
+            return;
+        }
+        entries = new HashMap<>();
+        if (Files.exists(manifestFile)) {
+            for (String line : Files.readAllLines(manifestFile, UTF_8)) {
+                try {
+                    final ScreenshotManifestEntry entry = GSON.fromJson(line, ScreenshotManifestEntry.class);
+                    if (entry != null && entry.fileName != null) {
+                        entries.put(entry.fileName, entry);
+                    }
+                } catch (JsonParseException e) {
+                    //a line that was cut off by an aborted run, the screenshot is treated like one without entry
+                }
+            }
+        }
+    }
+}
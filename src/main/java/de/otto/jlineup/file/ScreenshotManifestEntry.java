@@ -0,0 +1,95 @@
+package de.otto.jlineup.file;
+
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Everything that's known about a screenshot in the screenshots directory. Screenshots that were taken
+ * by older versions have no manifest entry, for them only the values in the file name are known.
+ */
+public class ScreenshotManifestEntry {
+
+    public final String fileName;
+    public final String url;
+    public final String path;
+    public final int windowWidth;
+    public final int yPosition;
+    public final String step;
+
+    //only known for screenshots from the manifest
+    public final Integer width;
+    public final Integer height;
+    public final String hash;
+    public final Long capturedAt;
+    public final Long writeMillis;
+    //name of the object store file relative to the screenshots directory, if the screenshot is deduplicated
+    public final String storedAs;
+    //milliseconds by phase, see ScreenshotTimings
+    public final Map<String, Long> timings;
+
+    public ScreenshotManifestEntry(String fileName, String url, String path, int windowWidth, int yPosition, String step,
+                                   Integer width, Integer height, String hash, Long capturedAt, Long writeMillis, String storedAs,
+                                   Map<String, Long> timings) {
+        this.fileName = fileName;
+        this.url = url;
+        this.path = path;
+        this.windowWidth = windowWidth;
+        this.yPosition = yPosition;
+        this.step = step;
+        this.width = width;
+        this.height = height;
+        this.hash = hash;
+        this.capturedAt = capturedAt;
+        this.writeMillis = writeMillis;
+        this.storedAs = storedAs;
+        this.timings = timings;
+    }
+
+    public static ScreenshotManifestEntry withoutMetadata(String fileName, String url, String path, int windowWidth, int yPosition, String step) {
+        return new ScreenshotManifestEntry(fileName, url, path, windowWidth, yPosition, step, null, null, null, null, null, null, null);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ScreenshotManifestEntry that = (ScreenshotManifestEntry) o;
+        return windowWidth == that.windowWidth &&
+                yPosition == that.yPosition &&
+                Objects.equals(fileName, that.fileName) &&
+                Objects.equals(url, that.url) &&
+                Objects.equals(path, that.path) &&
+                Objects.equals(step, that.step) &&
+                Objects.equals(width, that.width) &&
+                Objects.equals(height, that.height) &&
+                Objects.equals(hash, that.hash) &&
+                Objects.equals(capturedAt, that.capturedAt) &&
+                Objects.equals(writeMillis, that.writeMillis) &&
+                Objects.equals(storedAs, that.storedAs) &&
+                Objects.equals(timings, that.timings);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileName, url, path, windowWidth, yPosition, step, width, height, hash, capturedAt, writeMillis, storedAs, timings);
+    }
+
+    @Override
+    public String toString() {
+        return "ScreenshotManifestEntry{" +
+                "fileName='" + fileName + '\'' +
+                ", url='" + url + '\'' +
+                ", path='" + path + '\'' +
+                ", windowWidth=" + windowWidth +
+                ", yPosition=" + yPosition +
+                ", step='" + step + '\'' +
+                ", width=" + width +
+                ", height=" + height +
+                ", hash='" + hash + '\'' +
+                ", capturedAt=" + capturedAt +
+                ", writeMillis=" + writeMillis +
+                ", storedAs='" + storedAs + '\'' +
+                ", timings=" + timings +
+                '}';
+    }
+}
@@ -0,0 +1,45 @@
+package de.otto.jlineup.file;
+
+import de.otto.jlineup.metrics.JLineupTrace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Durations of the phases that led to a screenshot, in milliseconds by phase name. Everything that happens between two
+ * screenshots of a context counts for the next one, so the first screenshot of a context includes driver lease,
+ * navigation and the waits after page load. The timings are kept in the screenshot manifest, so the report of the
+ * 'after' step knows the timings of both steps. A phase that happens more than once adds up.
+ */
+public class ScreenshotTimings {
+
+    public static final String DRIVER_LEASE = "driverLease";
+    public static final String NAVIGATION = "navigation";
+    public static final String CACHE_WARMUP = "cacheWarmup";
+    public static final String WAIT_AFTER_PAGE_LOAD = "waitAfterPageLoad";
+    public static final String WAIT_FOR_FONTS = "waitForFonts";
+    public static final String WAIT_AFTER_SCROLL = "waitAfterScroll";
+    public static final String CAPTURE = "capture";
+    public static final String WAIT_FOR_NO_ANIMATION = "waitForNoAnimation";
+    public static final String ENCODE = "encode";
+    public static final String WRITE = "write";
+    public static final String DECODE = "decode";
+    public static final String COMPARE = "compare";
+
+    private final Map<String, Long> millisByPhase = new LinkedHashMap<>();
+
+    //Adds the time from startNanos (as returned by System.nanoTime()) until now, the phase is also a span of the trace
+    public synchronized void addSince(String phase, long startNanos) {
+        JLineupTrace.get().span(phase, JLineupTrace.CATEGORY_PHASE, startNanos);
+        add(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    public synchronized void add(String phase, long millis) {
+        millisByPhase.merge(phase, millis, Long::sum);
+    }
+
+    public synchronized Map<String, Long> toMap() {
+        return new LinkedHashMap<>(millisByPhase);
+    }
+}
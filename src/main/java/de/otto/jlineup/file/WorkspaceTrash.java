@@ -0,0 +1,106 @@
+package de.otto.jlineup.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+
+/*
+ * Directories of an earlier run are renamed into a trash directory in the working directory instead of being
+ * deleted file by file, so a new run doesn't have to wait for it. A background thread empties the trash while
+ * the new run takes its screenshots. Whatever is left when JLineup exits is deleted by the next run.
+ */
+class WorkspaceTrash {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkspaceTrash.class);
+
+    static final String TRASH_DIRECTORY = ".jlineup-trash";
+
+    private final Path trashDirectory;
+    private boolean emptying = false;
+    private boolean emptyAgain = false;
+
+    WorkspaceTrash(Path workingDirectory) {
+        this.trashDirectory = workingDirectory.resolve(TRASH_DIRECTORY).toAbsolutePath().normalize();
+    }
+
+    Path getTrashDirectory() {
+        return trashDirectory;
+    }
+
+    //Returns false if the directory can't be renamed, i.e. because it's on another file system, it has to be cleared in place then
+    synchronized boolean moveToTrash(Path directory) {
+        final Path absoluteDirectory = directory.toAbsolutePath().normalize();
+        if (trashDirectory.startsWith(absoluteDirectory)) {
+            return false;
+        }
+        try {
+            if (Files.exists(absoluteDirectory)) {
+                Files.createDirectories(trashDirectory);
+                Files.move(absoluteDirectory, trashDirectory.resolve(absoluteDirectory.getFileName() + "-" + UUID.randomUUID()), StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            LOG.debug("Could not move '{}' to trash: {}", absoluteDirectory, e.getMessage());
+            return false;
+        }
+        emptyInBackground();
+        return true;
+    }
+
+    //Also deletes what's left from earlier runs
+    synchronized void emptyInBackground() {
+        if (!Files.isDirectory(trashDirectory)) {
+            return;
+        }
+        if (emptying) {
+            emptyAgain = true;
+            return;
+        }
+        emptying = true;
+        final Thread thread = new Thread(() -> {
+            do {
+                deleteContents(trashDirectory);
+            } while (continueEmptying());
+        }, "TrashCollector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized boolean isEmptying() {
+        return emptying;
+    }
+
+    private synchronized boolean continueEmptying() {
+        if (emptyAgain) {
+            emptyAgain = false;
+            return true;
+        }
+        emptying = false;
+        return false;
+    }
+
+    private static void deleteContents(Path directory) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (!dir.equals(directory)) {
+                        Files.deleteIfExists(dir);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.warn("Could not empty trash directory '{}': {}", directory, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package de.otto.jlineup.image;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * Reads an image sequentially from top to bottom in bands of rows, so images can be processed
+ * without holding all of their pixels in memory.
+ */
+public interface ImageRowReader extends Closeable {
+
+    int getWidth();
+
+    int getHeight();
+
+    //Reads the next rowCount rows as ARGB pixels into the beginning of the given array
+    void readRows(int[] argbPixels, int rowCount) throws IOException;
+}
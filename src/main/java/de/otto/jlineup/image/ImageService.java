@@ -1,10 +1,15 @@
 package de.otto.jlineup.image;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Optional;
 
@@ -17,6 +22,16 @@ public class ImageService {
     public static final int HIGHLIGHT_COLOR = Color.WHITE.getRGB();
     public static final int DIFFERENT_SIZE_COLOR = Color.GRAY.getRGB();
     public static final int PIXEL_DIFFERENCE_THRESHOLD = 0;
+    //Above this pixel count, images of the same width are compared in bands of rows with bounded memory
+    public static final long BAND_COMPARISON_PIXEL_THRESHOLD = 4_000_000;
+    private static final int BAND_PIXEL_COUNT = 1 << 20;
+    //Memory needed to compare two images in bands: one band of each image and of the difference image
+    public static final long BAND_COMPARISON_MEMORY = 3L * 4 * BAND_PIXEL_COUNT;
+
+    @FunctionalInterface
+    public interface DifferenceImageOutput {
+        PngRowWriter open(int width, int height) throws IOException;
+    }
 
     public static class ImageComparisonResult {
         private final BufferedImage differenceImage;
@@ -37,6 +52,11 @@ public class ImageService {
     }
 
     public ImageComparisonResult compareImages(BufferedImage image1, BufferedImage image2, int viewportHeight) {
+        return compareImages(image1, image2, viewportHeight, null, null);
+    }
+
+    //Tile hashes are optional, if they are given for both images, only the tiles with different hashes are compared
+    public ImageComparisonResult compareImages(BufferedImage image1, BufferedImage image2, int viewportHeight, TileHashes tileHashes1, TileHashes tileHashes2) {
 
         if (image1 == null || image2 == null) throw new NullPointerException("Can't compare null imagebuffers");
 
@@ -50,17 +70,260 @@ public class ImageService {
         final int width2 = image2.getWidth();
         final int height2 = image2.getHeight();
 
-        // calculate max dimensions
-        final int maxWidth = max(image1.getWidth(), image2.getWidth());
-        final int maxHeight = max(image1.getHeight(), image2.getHeight());
-
-        // calculate min width
-        final int minWidth = min(image1.getWidth(), image2.getWidth());
+        if (canCompareTiles(image1, image2, tileHashes1, tileHashes2)) {
+            return compareTilesOfSameWidth(image1, image2, tileHashes1, tileHashes2, viewportHeight);
+        }
 
         // convert images to pixel arrays
         final int[] image1Pixels = image1.getRGB(0, 0, width1, height1, null, 0, width1);
         final int[] image2Pixels = image2.getRGB(0, 0, width2, height2, null, 0, width2);
 
+        if (width1 == width2) {
+            return compareImagesOfSameWidth(image1Pixels, image2Pixels, width1, height1, height2, viewportHeight);
+        }
+        return compareImagesOfDifferentWidth(image1Pixels, image2Pixels, width1, height1, width2, height2, viewportHeight, true);
+    }
+
+    //Gate comparisons only need the difference: no difference image is created and counting stops as soon as the
+    //difference exceeds maxDifference, the returned difference is a lower bound of the real one then.
+    //Images of different width are rare, they are still compared completely.
+    public ImageComparisonResult countDifference(BufferedImage image1, BufferedImage image2, int viewportHeight, TileHashes tileHashes1, TileHashes tileHashes2, double maxDifference) {
+
+        if (image1 == null || image2 == null) throw new NullPointerException("Can't compare null imagebuffers");
+
+        if (bufferedImagesEqualQuick(image1, image2)) {
+            return new ImageComparisonResult(null, 0);
+        }
+
+        final int width = image1.getWidth();
+        final int height1 = image1.getHeight();
+        final int height2 = image2.getHeight();
+        if (width != image2.getWidth()) {
+            final int[] image1Pixels = image1.getRGB(0, 0, width, height1, null, 0, width);
+            final int[] image2Pixels = image2.getRGB(0, 0, image2.getWidth(), height2, null, 0, image2.getWidth());
+            return compareImagesOfDifferentWidth(image1Pixels, image2Pixels, width, height1, image2.getWidth(), height2, viewportHeight, false);
+        }
+
+        final int minHeight = min(height1, height2);
+        final int maxHeight = max(height1, height2);
+        final long differencePixelCount = min((long) width * maxHeight, (long) width * viewportHeight);
+        final double maxDiffPixels = maxDifference * differencePixelCount;
+        //without tile hashes, bands of whole rows are compared
+        final boolean tiles = canCompareTiles(image1, image2, tileHashes1, tileHashes2);
+        final int tileWidth = tiles ? tileHashes1.getTileSize() : width;
+        final int tileHeight = tiles ? tileHashes1.getTileSize() : max(1, BAND_PIXEL_COUNT / width);
+
+        final int[] tile1Pixels = new int[tileWidth * tileHeight];
+        final int[] tile2Pixels = new int[tileWidth * tileHeight];
+        //the remaining rows exist only in the higher image
+        long diffPixelCounter = (long) width * (maxHeight - minHeight);
+        for (int tileY = 0; tileY < minHeight && diffPixelCounter <= maxDiffPixels; tileY += tileHeight) {
+            final int rows = min(tileHeight, minHeight - tileY);
+            for (int tileX = 0; tileX < width && diffPixelCounter <= maxDiffPixels; tileX += tileWidth) {
+                if (tiles && tileHashes1.isTileEqual(tileHashes2, tileX / tileWidth, tileY / tileHeight)) {
+                    continue;
+                }
+                final int columns = min(tileWidth, width - tileX);
+                image1.getRGB(tileX, tileY, columns, rows, tile1Pixels, 0, columns);
+                image2.getRGB(tileX, tileY, columns, rows, tile2Pixels, 0, columns);
+                final int pixelCount = columns * rows;
+                for (int i = 0; i < pixelCount; i++) {
+                    final int pixel1 = tile1Pixels[i];
+                    final int pixel2 = tile2Pixels[i];
+                    if (pixel1 != pixel2 && getPixelDifference(pixel1, pixel2) > PIXEL_DIFFERENCE_THRESHOLD) {
+                        diffPixelCounter++;
+                    }
+                }
+            }
+        }
+
+        return new ImageComparisonResult(null, (1d * diffPixelCounter) / differencePixelCount);
+    }
+
+    private boolean canCompareTiles(BufferedImage image1, BufferedImage image2, TileHashes tileHashes1, TileHashes tileHashes2) {
+        return image1.getWidth() == image2.getWidth() && tileHashesMatchImage(tileHashes1, image1) && tileHashesMatchImage(tileHashes2, image2)
+                && tileHashes1.getTileSize() == tileHashes2.getTileSize();
+    }
+
+    //Screenshots of before and after step are taken with the same window width, so this is the common case.
+    //The comparison runs row by row over plain int arrays without branches into other methods or allocations
+    //in the inner loop, so the JIT can unroll it and the compare time is bound by memory bandwidth
+    private ImageComparisonResult compareImagesOfSameWidth(int[] image1Pixels, int[] image2Pixels, int width, int height1, int height2, int viewportHeight) {
+
+        final int minHeight = min(height1, height2);
+        final int maxHeight = max(height1, height2);
+        final int comparablePixelCount = width * minHeight;
+        final int maxPixelCount = width * maxHeight;
+
+        final int[] differenceImagePixels = new int[maxPixelCount];
+        Arrays.fill(differenceImagePixels, 0, comparablePixelCount, SAME_COLOR);
+
+        int diffPixelCounter = 0;
+        for (int i = 0; i < comparablePixelCount; i++) {
+            final int pixel1 = image1Pixels[i];
+            final int pixel2 = image2Pixels[i];
+            if (pixel1 != pixel2 && getPixelDifference(pixel1, pixel2) > PIXEL_DIFFERENCE_THRESHOLD) {
+                differenceImagePixels[i] = HIGHLIGHT_COLOR;
+                diffPixelCounter++;
+            }
+        }
+
+        //the remaining rows exist only in the higher image
+        Arrays.fill(differenceImagePixels, comparablePixelCount, maxPixelCount, DIFFERENT_SIZE_COLOR);
+        diffPixelCounter += maxPixelCount - comparablePixelCount;
+
+        return createComparisonResult(differenceImagePixels, width, maxHeight, diffPixelCounter, viewportHeight);
+    }
+
+    //Like compareImagesOfSameWidth, but only tiles with different hashes are read from the images and compared.
+    //Unchanged tiles stay filled with same_color in the difference image.
+    //Both images are still decoded completely before, the tile hashes only save the pixel comparison of unchanged tiles
+    private ImageComparisonResult compareTilesOfSameWidth(BufferedImage image1, BufferedImage image2, TileHashes tileHashes1, TileHashes tileHashes2, int viewportHeight) {
+
+        final int width = image1.getWidth();
+        final int minHeight = min(image1.getHeight(), image2.getHeight());
+        final int maxHeight = max(image1.getHeight(), image2.getHeight());
+        final int comparablePixelCount = width * minHeight;
+        final int maxPixelCount = width * maxHeight;
+        final int tileSize = tileHashes1.getTileSize();
+
+        final int[] differenceImagePixels = new int[maxPixelCount];
+        Arrays.fill(differenceImagePixels, 0, comparablePixelCount, SAME_COLOR);
+        Arrays.fill(differenceImagePixels, comparablePixelCount, maxPixelCount, DIFFERENT_SIZE_COLOR);
+        int diffPixelCounter = maxPixelCount - comparablePixelCount;
+
+        final int[] tile1Pixels = new int[tileSize * tileSize];
+        final int[] tile2Pixels = new int[tileSize * tileSize];
+        for (int tileY = 0; tileY < minHeight; tileY += tileSize) {
+            final int tileHeight = min(tileSize, minHeight - tileY);
+            for (int tileX = 0; tileX < width; tileX += tileSize) {
+                if (tileHashes1.isTileEqual(tileHashes2, tileX / tileSize, tileY / tileSize)) {
+                    continue;
+                }
+                final int tileWidth = min(tileSize, width - tileX);
+                image1.getRGB(tileX, tileY, tileWidth, tileHeight, tile1Pixels, 0, tileWidth);
+                image2.getRGB(tileX, tileY, tileWidth, tileHeight, tile2Pixels, 0, tileWidth);
+                for (int y = 0; y < tileHeight; y++) {
+                    final int tileRowStart = y * tileWidth;
+                    final int imageRowStart = (tileY + y) * width + tileX;
+                    for (int x = 0; x < tileWidth; x++) {
+                        final int pixel1 = tile1Pixels[tileRowStart + x];
+                        final int pixel2 = tile2Pixels[tileRowStart + x];
+                        if (pixel1 != pixel2 && getPixelDifference(pixel1, pixel2) > PIXEL_DIFFERENCE_THRESHOLD) {
+                            differenceImagePixels[imageRowStart + x] = HIGHLIGHT_COLOR;
+                            diffPixelCounter++;
+                        }
+                    }
+                }
+            }
+        }
+
+        return createComparisonResult(differenceImagePixels, width, maxHeight, diffPixelCounter, viewportHeight);
+    }
+
+    private boolean tileHashesMatchImage(TileHashes tileHashes, BufferedImage image) {
+        return tileHashes != null && tileHashes.getImageWidth() == image.getWidth() && tileHashes.getImageHeight() == image.getHeight();
+    }
+
+    //Compares two images of the same width band by band, so only a few rows of both images and of the difference image
+    //are in memory at the same time. The difference image is encoded as png into the given output as soon as the first
+    //difference is found, if the images are equal, the output is never opened. Without output, only the difference is counted.
+    public ImageComparisonResult compareImagesInBands(ImageRowReader image1, ImageRowReader image2, int viewportHeight, DifferenceImageOutput differenceImageOutput) throws IOException {
+        return compareImagesInBands(image1, image2, viewportHeight, differenceImageOutput, Double.POSITIVE_INFINITY);
+    }
+
+    //Without output, counting stops as soon as the difference exceeds maxDifference, like in countDifference
+    public ImageComparisonResult compareImagesInBands(ImageRowReader image1, ImageRowReader image2, int viewportHeight, DifferenceImageOutput differenceImageOutput, double maxDifference) throws IOException {
+
+        final int width = image1.getWidth();
+        if (width != image2.getWidth()) {
+            throw new IllegalArgumentException("Only images of the same width can be compared in bands");
+        }
+        final int minHeight = min(image1.getHeight(), image2.getHeight());
+        final int maxHeight = max(image1.getHeight(), image2.getHeight());
+        final int bandHeight = max(1, BAND_PIXEL_COUNT / max(1, width));
+        final long sizeDifferencePixelCount = (long) width * (maxHeight - minHeight);
+        final double maxDiffPixels = maxDifference * min((long) width * maxHeight, (long) width * viewportHeight);
+
+        final int[] band1Pixels = new int[width * bandHeight];
+        final int[] band2Pixels = new int[width * bandHeight];
+        final int[] differenceBandPixels = new int[width * bandHeight];
+
+        long diffPixelCounter = 0;
+        PngRowWriter differenceImageWriter = null;
+        try {
+            for (int bandStart = 0; bandStart < minHeight; bandStart += bandHeight) {
+                final int rows = min(bandHeight, minHeight - bandStart);
+                final int bandPixelCount = rows * width;
+                image1.readRows(band1Pixels, rows);
+                image2.readRows(band2Pixels, rows);
+
+                Arrays.fill(differenceBandPixels, 0, bandPixelCount, SAME_COLOR);
+                int bandDiffPixelCounter = 0;
+                for (int i = 0; i < bandPixelCount; i++) {
+                    final int pixel1 = band1Pixels[i];
+                    final int pixel2 = band2Pixels[i];
+                    if (pixel1 != pixel2 && getPixelDifference(pixel1, pixel2) > PIXEL_DIFFERENCE_THRESHOLD) {
+                        differenceBandPixels[i] = HIGHLIGHT_COLOR;
+                        bandDiffPixelCounter++;
+                    }
+                }
+
+                if (bandDiffPixelCounter > 0 && differenceImageWriter == null && differenceImageOutput != null) {
+                    differenceImageWriter = differenceImageOutput.open(width, maxHeight);
+                    writeRowsOfColor(differenceImageWriter, SAME_COLOR, width, bandStart, band1Pixels);
+                }
+                if (differenceImageWriter != null) {
+                    differenceImageWriter.writeRows(differenceBandPixels, rows);
+                }
+                diffPixelCounter += bandDiffPixelCounter;
+                if (differenceImageOutput == null && diffPixelCounter + sizeDifferencePixelCount > maxDiffPixels) {
+                    break;
+                }
+            }
+
+            //the remaining rows exist only in the higher image
+            if (maxHeight > minHeight) {
+                if (differenceImageWriter == null && differenceImageOutput != null) {
+                    differenceImageWriter = differenceImageOutput.open(width, maxHeight);
+                    writeRowsOfColor(differenceImageWriter, SAME_COLOR, width, minHeight, band1Pixels);
+                }
+                if (differenceImageWriter != null) {
+                    writeRowsOfColor(differenceImageWriter, DIFFERENT_SIZE_COLOR, width, maxHeight - minHeight, band1Pixels);
+                }
+                diffPixelCounter += sizeDifferencePixelCount;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (differenceImageWriter != null) {
+                differenceImageWriter.abort();
+            }
+            throw e;
+        }
+        if (differenceImageWriter != null) {
+            differenceImageWriter.close();
+        }
+
+        final double difference = (1d * diffPixelCounter) / min((long) width * maxHeight, (long) width * viewportHeight);
+        return new ImageComparisonResult(null, difference);
+    }
+
+    private void writeRowsOfColor(PngRowWriter writer, int color, int width, int rowCount, int[] buffer) throws IOException {
+        final int bandHeight = buffer.length / width;
+        Arrays.fill(buffer, color);
+        for (int written = 0; written < rowCount; written += bandHeight) {
+            writer.writeRows(buffer, min(bandHeight, rowCount - written));
+        }
+    }
+
+    private ImageComparisonResult compareImagesOfDifferentWidth(int[] image1Pixels, int[] image2Pixels, int width1, int height1, int width2, int height2, int viewportHeight, boolean differenceImage) {
+
+        // calculate max dimensions
+        final int maxWidth = max(width1, width2);
+        final int maxHeight = max(height1, height2);
+
+        // calculate min width
+        final int minWidth = min(width1, width2);
+
         // calculate pixel counts of img1 and img2
         final int pixelCount1 = width1 * height1;
         final int pixelCount2 = width2 * height2;
@@ -128,35 +391,52 @@ public class ImageService {
             }
         }
 
-        double difference = (1d * diffPixelCounter) / min(maxPixelCount, maxWidth * viewportHeight);
+        return createComparisonResult(differenceImagePixels, maxWidth, maxHeight, diffPixelCounter, viewportHeight, differenceImage);
+    }
+
+    private ImageComparisonResult createComparisonResult(int[] differenceImagePixels, int width, int height, int diffPixelCounter, int viewportHeight) {
+        return createComparisonResult(differenceImagePixels, width, height, diffPixelCounter, viewportHeight, true);
+    }
+
+    private ImageComparisonResult createComparisonResult(int[] differenceImagePixels, int width, int height, int diffPixelCounter, int viewportHeight, boolean differenceImage) {
+        double difference = (1d * diffPixelCounter) / min(width * height, width * viewportHeight);
+        if (!differenceImage) {
+            return new ImageComparisonResult(null, difference);
+        }
 
         // save differenceImagePixels to a new BufferedImage
-        final BufferedImage out = new BufferedImage(maxWidth, maxHeight, BufferedImage.TYPE_INT_RGB);
-        out.setRGB(0, 0, maxWidth, maxHeight, differenceImagePixels, 0, maxWidth);
+        final BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        out.setRGB(0, 0, width, height, differenceImagePixels, 0, width);
         return new ImageComparisonResult(out, difference);
     }
 
-    private int getPixelDifference(int pixelA, int pixelB) {
-        final int[] argbA = getARGB(pixelA);
-        final int[] argbB = getARGB(pixelB);
+    //Sum of the absolute differences of the alpha, red, green and blue channels
+    private static int getPixelDifference(int pixelA, int pixelB) {
+        return Math.abs(((pixelA >>> 24)       ) - ((pixelB >>> 24)       ))
+             + Math.abs(((pixelA >>  16) & 0xFF) - ((pixelB >>  16) & 0xFF))
+             + Math.abs(((pixelA >>   8) & 0xFF) - ((pixelB >>   8) & 0xFF))
+             + Math.abs(((pixelA       ) & 0xFF) - ((pixelB       ) & 0xFF));
+    }
 
-        int diff = 0;
-        for (int i=0; i<argbA.length; i++) {
-            diff += Math.abs(argbA[i] - argbB[i]);
+    //Content hash of the decoded pixels, independent of the image type and of the png encoding
+    public static String pixelHash(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final Hasher hasher = newPixelHasher(image);
+        final int[] row = new int[width];
+        final ByteBuffer rowBytes = ByteBuffer.allocate(width * 4);
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            rowBytes.asIntBuffer().put(row);
+            hasher.putBytes(rowBytes.array());
         }
-        return diff;
+        return hasher.hash().toString();
     }
 
-    private int[] getARGB(int pixel) {
-
-        int rgb = pixel;
-
-        int alpha = (rgb >> 24) & 0xFF;
-        int red =   (rgb >> 16) & 0xFF;
-        int green = (rgb >>  8) & 0xFF;
-        int blue =  (rgb      ) & 0xFF;
-
-        return new int[] {alpha, red, green, blue };
+    //The pixel hash covers the image size and all pixel rows from top to bottom, see TileHashes.of for computing it
+    //together with the tile hashes
+    public static Hasher newPixelHasher(BufferedImage image) {
+        return Hashing.murmur3_128().newHasher().putInt(image.getWidth()).putInt(image.getHeight());
     }
 
     //Helper function to compare two BufferedImage instances (BufferedImage doesn't override equals())
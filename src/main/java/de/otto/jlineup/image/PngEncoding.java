@@ -0,0 +1,43 @@
+package de.otto.jlineup.image;
+
+import java.util.zip.Deflater;
+
+//Settings for PngRowWriter
+public class PngEncoding {
+
+    public static final PngEncoding DEFAULT = new PngEncoding(Deflater.DEFAULT_COMPRESSION, PngFilter.adaptive, 1);
+
+    private final int compressionLevel;
+    private final PngFilter filter;
+    private final int deflateThreads;
+
+    public PngEncoding(int compressionLevel, PngFilter filter, int deflateThreads) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION && (compressionLevel < 0 || compressionLevel > 9)) {
+            throw new IllegalArgumentException("Png compression level has to be between 0 and 9, but is " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        this.filter = filter != null ? filter : PngFilter.adaptive;
+        this.deflateThreads = Math.max(1, deflateThreads);
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public PngFilter getFilter() {
+        return filter;
+    }
+
+    public int getDeflateThreads() {
+        return deflateThreads;
+    }
+
+    @Override
+    public String toString() {
+        return "PngEncoding{" +
+                "compressionLevel=" + compressionLevel +
+                ", filter=" + filter +
+                ", deflateThreads=" + deflateThreads +
+                '}';
+    }
+}
@@ -0,0 +1,72 @@
+package de.otto.jlineup.image;
+
+import static de.otto.jlineup.image.PngRowReader.paethPredictor;
+
+//The png filter types, every row of an image written by PngRowWriter is filtered with the same type,
+//except for adaptive, which picks the type per row like ImageIO and libpng do
+public enum PngFilter {
+    none,
+    sub,
+    up,
+    average,
+    paeth,
+    adaptive;
+
+    private static final PngFilter[] ROW_FILTERS = {none, sub, up, average, paeth};
+
+    //Filters the given row into filtered[1..], filtered[0] receives the filter type
+    void apply(byte[] row, byte[] previousRow, int bytesPerPixel, byte[] filtered) {
+        if (this == adaptive) {
+            bestFilterOf(row, previousRow, bytesPerPixel, filtered).apply(row, previousRow, bytesPerPixel, filtered);
+            return;
+        }
+        filtered[0] = (byte) ordinal();
+        switch (this) {
+            case none:
+                System.arraycopy(row, 0, filtered, 1, row.length);
+                break;
+            case sub:
+                for (int i = 0; i < row.length; i++) {
+                    final int left = i >= bytesPerPixel ? row[i - bytesPerPixel] : 0;
+                    filtered[i + 1] = (byte) (row[i] - left);
+                }
+                break;
+            case up:
+                for (int i = 0; i < row.length; i++) {
+                    filtered[i + 1] = (byte) (row[i] - previousRow[i]);
+                }
+                break;
+            case average:
+                for (int i = 0; i < row.length; i++) {
+                    final int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+                    filtered[i + 1] = (byte) (row[i] - ((left + (previousRow[i] & 0xFF)) >>> 1));
+                }
+                break;
+            case paeth:
+                for (int i = 0; i < row.length; i++) {
+                    final int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+                    final int upperLeft = i >= bytesPerPixel ? previousRow[i - bytesPerPixel] & 0xFF : 0;
+                    filtered[i + 1] = (byte) (row[i] - paethPredictor(left, previousRow[i] & 0xFF, upperLeft));
+                }
+                break;
+        }
+    }
+
+    //The filter with the minimum sum of absolute differences, the heuristic recommended by the png specification
+    private static PngFilter bestFilterOf(byte[] row, byte[] previousRow, int bytesPerPixel, byte[] filtered) {
+        PngFilter best = none;
+        long bestSum = Long.MAX_VALUE;
+        for (PngFilter filter : ROW_FILTERS) {
+            filter.apply(row, previousRow, bytesPerPixel, filtered);
+            long sum = 0;
+            for (int i = 1; i < filtered.length && sum < bestSum; i++) {
+                sum += Math.abs(filtered[i]);
+            }
+            if (sum < bestSum) {
+                best = filter;
+                bestSum = sum;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,135 @@
+package de.otto.jlineup.image;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/*
+ * The png chunks in front of the image data: IHDR and the optional PLTE and tRNS chunks.
+ * Reading the header is cheap, no image data is decompressed.
+ */
+public class PngHeader {
+
+    static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    static final int COLOR_TYPE_RGB = 2;
+    static final int COLOR_TYPE_PALETTE = 3;
+    static final int COLOR_TYPE_RGBA = 6;
+
+    public final int width;
+    public final int height;
+    public final int bitDepth;
+    public final int colorType;
+    public final int interlaceMethod;
+    final byte[] palette;
+    final byte[] transparency;
+    final boolean colorProfile;
+    //length of the first IDAT chunk, which is the next chunk in the stream after the header was read
+    final int firstImageDataChunkLength;
+
+    private PngHeader(int width, int height, int bitDepth, int colorType, int interlaceMethod, byte[] palette, byte[] transparency, boolean colorProfile, int firstImageDataChunkLength) {
+        this.width = width;
+        this.height = height;
+        this.bitDepth = bitDepth;
+        this.colorType = colorType;
+        this.interlaceMethod = interlaceMethod;
+        this.palette = palette;
+        this.transparency = transparency;
+        this.colorProfile = colorProfile;
+        this.firstImageDataChunkLength = firstImageDataChunkLength;
+    }
+
+    //Reads the header and leaves the stream positioned at the data of the first IDAT chunk
+    public static PngHeader read(InputStream inputStream) throws IOException {
+        final DataInputStream in = new DataInputStream(inputStream);
+        final byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) {
+            throw new IOException("Not a png file");
+        }
+
+        int width = 0, height = 0, bitDepth = 0, colorType = 0, interlaceMethod = 0;
+        byte[] palette = null;
+        byte[] transparency = null;
+        boolean colorProfile = false;
+        while (true) {
+            final int length = in.readInt();
+            final String type = readChunkType(in);
+            switch (type) {
+                case "IHDR":
+                    width = in.readInt();
+                    height = in.readInt();
+                    bitDepth = in.readUnsignedByte();
+                    colorType = in.readUnsignedByte();
+                    in.skipBytes(2);
+                    interlaceMethod = in.readUnsignedByte();
+                    in.skipBytes(length - 13);
+                    break;
+                case "PLTE":
+                    palette = new byte[length];
+                    in.readFully(palette);
+                    break;
+                case "tRNS":
+                    transparency = new byte[length];
+                    in.readFully(transparency);
+                    break;
+                case "IDAT":
+                    return new PngHeader(width, height, bitDepth, colorType, interlaceMethod, palette, transparency, colorProfile, length);
+                case "IEND":
+                    throw new IOException("Png file contains no image data");
+                default:
+                    colorProfile |= type.equals("iCCP");
+                    skipFully(in, length);
+            }
+            //crc
+            in.skipBytes(4);
+        }
+    }
+
+    static String readChunkType(DataInputStream in) throws IOException {
+        final byte[] type = new byte[4];
+        in.readFully(type);
+        return new String(type, "US-ASCII");
+    }
+
+    static void skipFully(DataInputStream in, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                in.readByte();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    //True if PngRowReader can decode the image with exactly the pixels that ImageIO would return
+    public boolean isRowStreamable() {
+        if (bitDepth != 8 || interlaceMethod != 0 || colorProfile) {
+            return false;
+        }
+        switch (colorType) {
+            case COLOR_TYPE_RGBA:
+                return true;
+            case COLOR_TYPE_RGB:
+                return transparency == null;
+            case COLOR_TYPE_PALETTE:
+                return palette != null;
+            default:
+                return false;
+        }
+    }
+
+    int getBytesPerPixel() {
+        switch (colorType) {
+            case COLOR_TYPE_RGBA:
+                return 4;
+            case COLOR_TYPE_RGB:
+                return 3;
+            default:
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package de.otto.jlineup.image;
+
+import java.io.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static de.otto.jlineup.image.PngHeader.*;
+
+/*
+ * Streaming decoder for non-interlaced 8 bit RGB, RGBA and palette pngs, the formats written by browsers
+ * and ImageIO. Only the current and the previous row of the image are kept in memory.
+ */
+public class PngRowReader implements ImageRowReader {
+
+    private final DataInputStream in;
+    private final PngHeader header;
+    private final Inflater inflater = new Inflater();
+    private final byte[] compressed = new byte[32 * 1024];
+    private final byte[] filterType = new byte[1];
+    private final int bytesPerPixel;
+    private byte[] currentRow;
+    private byte[] previousRow;
+    private int remainingChunkBytes;
+    private int rowsRead = 0;
+
+    public PngRowReader(InputStream inputStream) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(inputStream));
+        this.header = PngHeader.read(in);
+        if (!header.isRowStreamable()) {
+            in.close();
+            throw new IOException(String.format("Png with color type %d, bit depth %d and interlace method %d can't be read row by row", header.colorType, header.bitDepth, header.interlaceMethod));
+        }
+        this.bytesPerPixel = header.getBytesPerPixel();
+        this.currentRow = new byte[header.width * bytesPerPixel];
+        this.previousRow = new byte[header.width * bytesPerPixel];
+        this.remainingChunkBytes = header.firstImageDataChunkLength;
+    }
+
+    @Override
+    public int getWidth() {
+        return header.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return header.height;
+    }
+
+    @Override
+    public void readRows(int[] argbPixels, int rowCount) throws IOException {
+        if (rowsRead + rowCount > header.height) {
+            throw new EOFException("Can't read " + rowCount + " rows, only " + (header.height - rowsRead) + " rows are left");
+        }
+        for (int row = 0; row < rowCount; row++) {
+            readRow();
+            convertRow(argbPixels, row * header.width);
+        }
+        rowsRead += rowCount;
+    }
+
+    private void readRow() throws IOException {
+        final byte[] swap = previousRow;
+        previousRow = currentRow;
+        currentRow = swap;
+
+        inflateFully(filterType);
+        inflateFully(currentRow);
+        unfilter(filterType[0]);
+    }
+
+    private void unfilter(int filterType) throws IOException {
+        final byte[] row = currentRow;
+        final byte[] prior = previousRow;
+        final int bpp = bytesPerPixel;
+        switch (filterType) {
+            case 0:
+                break;
+            case 1:
+                for (int i = bpp; i < row.length; i++) {
+                    row[i] += row[i - bpp];
+                }
+                break;
+            case 2:
+                for (int i = 0; i < row.length; i++) {
+                    row[i] += prior[i];
+                }
+                break;
+            case 3:
+                for (int i = 0; i < row.length; i++) {
+                    final int left = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    row[i] += (left + (prior[i] & 0xFF)) >>> 1;
+                }
+                break;
+            case 4:
+                for (int i = 0; i < row.length; i++) {
+                    final int left = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    final int upperLeft = i >= bpp ? prior[i - bpp] & 0xFF : 0;
+                    row[i] += paethPredictor(left, prior[i] & 0xFF, upperLeft);
+                }
+                break;
+            default:
+                throw new IOException("Unknown png filter type " + filterType);
+        }
+    }
+
+    static int paethPredictor(int left, int above, int upperLeft) {
+        final int estimate = left + above - upperLeft;
+        final int distanceLeft = Math.abs(estimate - left);
+        final int distanceAbove = Math.abs(estimate - above);
+        final int distanceUpperLeft = Math.abs(estimate - upperLeft);
+        if (distanceLeft <= distanceAbove && distanceLeft <= distanceUpperLeft) {
+            return left;
+        }
+        return distanceAbove <= distanceUpperLeft ? above : upperLeft;
+    }
+
+    private void convertRow(int[] argbPixels, int offset) {
+        final byte[] row = currentRow;
+        final int width = header.width;
+        switch (header.colorType) {
+            case COLOR_TYPE_RGBA:
+                for (int x = 0, i = 0; x < width; x++, i += 4) {
+                    argbPixels[offset + x] = (row[i + 3] & 0xFF) << 24 | (row[i] & 0xFF) << 16 | (row[i + 1] & 0xFF) << 8 | (row[i + 2] & 0xFF);
+                }
+                break;
+            case COLOR_TYPE_RGB:
+                for (int x = 0, i = 0; x < width; x++, i += 3) {
+                    argbPixels[offset + x] = 0xFF000000 | (row[i] & 0xFF) << 16 | (row[i + 1] & 0xFF) << 8 | (row[i + 2] & 0xFF);
+                }
+                break;
+            default:
+                final byte[] palette = header.palette;
+                final byte[] transparency = header.transparency;
+                for (int x = 0; x < width; x++) {
+                    final int index = row[x] & 0xFF;
+                    final int alpha = transparency != null && index < transparency.length ? transparency[index] & 0xFF : 0xFF;
+                    final int p = index * 3;
+                    argbPixels[offset + x] = p + 2 < palette.length
+                            ? alpha << 24 | (palette[p] & 0xFF) << 16 | (palette[p + 1] & 0xFF) << 8 | (palette[p + 2] & 0xFF)
+                            : alpha << 24;
+                }
+        }
+    }
+
+    private void inflateFully(byte[] target) throws IOException {
+        int offset = 0;
+        try {
+            while (offset < target.length) {
+                final int inflated = inflater.inflate(target, offset, target.length - offset);
+                offset += inflated;
+                if (inflated == 0) {
+                    if (inflater.finished() || inflater.needsDictionary()) {
+                        throw new EOFException("Png image data ended unexpectedly");
+                    }
+                    if (inflater.needsInput()) {
+                        fillInflater();
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Png image data is corrupt", e);
+        }
+    }
+
+    private void fillInflater() throws IOException {
+        while (remainingChunkBytes == 0) {
+            //crc of the last IDAT chunk
+            in.skipBytes(4);
+            remainingChunkBytes = in.readInt();
+            if (!"IDAT".equals(readChunkType(in))) {
+                throw new EOFException("Png image data ended unexpectedly");
+            }
+        }
+        final int length = in.read(compressed, 0, Math.min(compressed.length, remainingChunkBytes));
+        if (length < 0) {
+            throw new EOFException("Png file ended unexpectedly");
+        }
+        remainingChunkBytes -= length;
+        inflater.setInput(compressed, 0, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+}
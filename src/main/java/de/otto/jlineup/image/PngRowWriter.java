@@ -0,0 +1,303 @@
+package de.otto.jlineup.image;
+
+import de.otto.jlineup.Util;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static de.otto.jlineup.image.PngHeader.COLOR_TYPE_RGB;
+import static de.otto.jlineup.image.PngHeader.COLOR_TYPE_RGBA;
+import static de.otto.jlineup.image.PngHeader.SIGNATURE;
+
+/*
+ * Streaming encoder for 8 bit RGB and RGBA pngs. Rows are compressed as they are written,
+ * so the image never has to exist as a whole in memory.
+ */
+public class PngRowWriter implements Closeable {
+
+    private static final int IMAGE_DATA_CHUNK_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final boolean alpha;
+    private final PngFilter filter;
+    private final Deflater deflater;
+    private final OutputStream imageData;
+    private byte[] row;
+    private byte[] previousRow;
+    private final byte[] filteredRow;
+    private int rowsWritten = 0;
+
+    public PngRowWriter(OutputStream outputStream, int width, int height) throws IOException {
+        this(outputStream, width, height, false);
+    }
+
+    public PngRowWriter(OutputStream outputStream, int width, int height, boolean alpha) throws IOException {
+        this(outputStream, width, height, alpha, PngEncoding.DEFAULT);
+    }
+
+    public PngRowWriter(OutputStream outputStream, int width, int height, boolean alpha, PngEncoding encoding) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.filter = encoding.getFilter();
+        this.row = new byte[width * (alpha ? 4 : 3)];
+        this.previousRow = new byte[row.length];
+        this.filteredRow = new byte[1 + row.length];
+        final OutputStream imageDataChunks = new BufferedOutputStream(new ImageDataChunkOutputStream(), IMAGE_DATA_CHUNK_SIZE);
+        if (encoding.getDeflateThreads() > 1) {
+            this.deflater = null;
+            this.imageData = new ParallelDeflaterOutputStream(imageDataChunks, encoding.getCompressionLevel(), encoding.getDeflateThreads());
+        } else {
+            this.deflater = new Deflater(encoding.getCompressionLevel());
+            this.imageData = new DeflaterOutputStream(imageDataChunks, deflater, IMAGE_DATA_CHUNK_SIZE);
+        }
+
+        out.write(SIGNATURE);
+        final ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        final DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8);
+        headerData.writeByte(alpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        writeChunk("IHDR", header.toByteArray(), 0, header.size());
+    }
+
+    //Writes rowCount rows from the beginning of the given array, the alpha channel is ignored for RGB pngs
+    public void writeRows(int[] argbPixels, int rowCount) throws IOException {
+        if (rowsWritten + rowCount > height) {
+            throw new IOException("Can't write " + rowCount + " rows, only " + (height - rowsWritten) + " rows are left");
+        }
+        final int bytesPerPixel = alpha ? 4 : 3;
+        for (int y = 0; y < rowCount; y++) {
+            final byte[] swap = previousRow;
+            previousRow = row;
+            row = swap;
+
+            final int offset = y * width;
+            if (alpha) {
+                for (int x = 0, i = 0; x < width; x++, i += 4) {
+                    final int pixel = argbPixels[offset + x];
+                    row[i] = (byte) (pixel >> 16);
+                    row[i + 1] = (byte) (pixel >> 8);
+                    row[i + 2] = (byte) pixel;
+                    row[i + 3] = (byte) (pixel >>> 24);
+                }
+            } else {
+                for (int x = 0, i = 0; x < width; x++, i += 3) {
+                    final int pixel = argbPixels[offset + x];
+                    row[i] = (byte) (pixel >> 16);
+                    row[i + 1] = (byte) (pixel >> 8);
+                    row[i + 2] = (byte) pixel;
+                }
+            }
+            filter.apply(row, previousRow, bytesPerPixel, filteredRow);
+            imageData.write(filteredRow);
+        }
+        rowsWritten += rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) {
+                throw new IOException("Png is incomplete, " + rowsWritten + " of " + height + " rows were written");
+            }
+            imageData.close();
+            writeChunk("IEND", new byte[0], 0, 0);
+            out.close();
+        } finally {
+            endDeflater();
+        }
+    }
+
+    //Closes the output of an incomplete image, e.g. after an error
+    public void abort() {
+        endDeflater();
+        try {
+            out.close();
+        } catch (IOException e) {
+            //the image is broken anyway
+        }
+    }
+
+    private void endDeflater() {
+        if (deflater != null) {
+            deflater.end();
+        } else {
+            ((ParallelDeflaterOutputStream) imageData).cancel();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int offset, int length) throws IOException {
+        final byte[] typeBytes = type.getBytes("US-ASCII");
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    //Every buffered block of compressed data becomes an IDAT chunk
+    private class ImageDataChunkOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            writeChunk("IDAT", data, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /*
+     * Produces a zlib stream like DeflaterOutputStream, but deflates blocks of the input in parallel (like pigz does).
+     * Every block is compressed with the last 32KB of the previous block as dictionary and ends with a sync flush,
+     * so the compressed blocks can simply be concatenated. The checksum is calculated over the whole input in order.
+     * The blocks are deflated by a pool of its own, so they don't compete with other work in the common pool. The pool is
+     * shared by all pngs and created with the first one, every png has at most as many blocks in it as it has threads.
+     */
+    private static class ParallelDeflaterOutputStream extends OutputStream {
+
+        private static final int BLOCK_SIZE = 256 * 1024;
+        private static final int DICTIONARY_SIZE = 32 * 1024;
+
+        private final OutputStream out;
+        private final int compressionLevel;
+        private final int maxPendingBlocks;
+        private final Deque<CompletableFuture<byte[]>> pendingBlocks = new ArrayDeque<>();
+        private final Adler32 checksum = new Adler32();
+        private byte[] block = new byte[BLOCK_SIZE];
+        private int blockLength = 0;
+        private byte[] previousBlock = null;
+        private boolean headerWritten = false;
+
+        ParallelDeflaterOutputStream(OutputStream out, int compressionLevel, int threads) {
+            this.out = out;
+            this.compressionLevel = compressionLevel;
+            this.maxPendingBlocks = threads;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            checksum.update(data, offset, length);
+            while (length > 0) {
+                final int copied = Math.min(length, block.length - blockLength);
+                System.arraycopy(data, offset, block, blockLength, copied);
+                blockLength += copied;
+                offset += copied;
+                length -= copied;
+                if (blockLength == block.length) {
+                    submitBlock(false);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            submitBlock(true);
+            while (!pendingBlocks.isEmpty()) {
+                writeOldestBlock();
+            }
+            final int adler = (int) checksum.getValue();
+            out.write(new byte[]{(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler});
+            out.close();
+        }
+
+        void cancel() {
+            pendingBlocks.forEach(block -> block.cancel(false));
+            pendingBlocks.clear();
+        }
+
+        private void submitBlock(boolean last) throws IOException {
+            if (!headerWritten) {
+                //zlib header: deflate with 32KB window, no preset dictionary
+                out.write(new byte[]{0x78, (byte) 0x9C});
+                headerWritten = true;
+            }
+            final byte[] input = block;
+            final int inputLength = blockLength;
+            final byte[] dictionary = previousBlock;
+            pendingBlocks.add(CompletableFuture.supplyAsync(() -> deflate(input, inputLength, dictionary, last), DeflaterThreadPool.INSTANCE));
+            previousBlock = input;
+            block = new byte[BLOCK_SIZE];
+            blockLength = 0;
+            while (pendingBlocks.size() >= maxPendingBlocks) {
+                writeOldestBlock();
+            }
+        }
+
+        private void writeOldestBlock() throws IOException {
+            try {
+                out.write(pendingBlocks.removeFirst().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while compressing png");
+            } catch (ExecutionException e) {
+                throw new IOException("Could not compress png", e.getCause());
+            }
+        }
+
+        //Holder class, so the pool is only created when the first png is deflated in parallel
+        private static class DeflaterThreadPool {
+            static final ExecutorService INSTANCE = Util.createDaemonThreadPool(Runtime.getRuntime().availableProcessors(), "DeflaterThread");
+        }
+
+        private byte[] deflate(byte[] input, int inputLength, byte[] dictionary, boolean last) {
+            final Deflater deflater = new Deflater(compressionLevel, true);
+            try {
+                if (dictionary != null) {
+                    deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+                }
+                deflater.setInput(input, 0, inputLength);
+                final ByteArrayOutputStream compressed = new ByteArrayOutputStream(inputLength / 2 + 64);
+                final byte[] buffer = new byte[IMAGE_DATA_CHUNK_SIZE];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        compressed.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                } else {
+                    int length;
+                    do {
+                        length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        compressed.write(buffer, 0, length);
+                    } while (length == buffer.length);
+                }
+                return compressed.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.otto.jlineup.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Uncompressed image format: a header with magic number, width and height followed by the ARGB pixels row by row.
+ * It's much faster to write than png and can be compared without any decoding.
+ */
+public class RawImage {
+
+    static final int MAGIC = 0x4A4C5257;
+    static final int HEADER_SIZE = 12;
+
+    private static final int ROWS_PER_WRITE = 64;
+
+    public static void write(BufferedImage image, Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            write(image, out);
+        }
+    }
+
+    //Writes exactly sizeOf(width, height) bytes, the output stays open
+    public static void write(BufferedImage image, OutputStream out) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(width).putInt(height);
+        out.write(header.array());
+
+        final int[] rows = new int[width * ROWS_PER_WRITE];
+        final ByteBuffer rowBytes = ByteBuffer.allocate(rows.length * 4);
+        for (int y = 0; y < height; y += ROWS_PER_WRITE) {
+            final int rowCount = Math.min(ROWS_PER_WRITE, height - y);
+            image.getRGB(0, y, width, rowCount, rows, 0, width);
+            rowBytes.asIntBuffer().put(rows, 0, rowCount * width);
+            out.write(rowBytes.array(), 0, rowCount * width * 4);
+        }
+    }
+
+    public static long sizeOf(int width, int height) {
+        return HEADER_SIZE + 4L * width * height;
+    }
+
+    public static BufferedImage read(Path path) throws IOException {
+        try (RawImageRowReader reader = new RawImageRowReader(path)) {
+            return read(reader);
+        }
+    }
+
+    public static BufferedImage read(RawImageRowReader reader) throws IOException {
+        final BufferedImage image = new BufferedImage(reader.getWidth(), reader.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        reader.readRows(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), reader.getHeight());
+        return image;
+    }
+}
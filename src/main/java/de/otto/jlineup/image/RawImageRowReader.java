@@ -0,0 +1,97 @@
+package de.otto.jlineup.image;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.lang.Math.min;
+import static java.nio.file.StandardOpenOption.READ;
+
+/*
+ * Reads raw images in bands of rows through one reused direct buffer, so files of any size can be read.
+ * The file isn't memory mapped, a mapping would keep the file open until it's garbage collected.
+ */
+public class RawImageRowReader implements ImageRowReader {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final long offset;
+    private final int width;
+    private final int height;
+    private int rowsRead = 0;
+
+    public RawImageRowReader(Path path) throws IOException {
+        this(path, 0);
+    }
+
+    //Reads a raw image that starts at the given offset of the file, i.e. an entry of an uncompressed archive
+    public RawImageRowReader(Path path, long offset) throws IOException {
+        this.channel = FileChannel.open(path, READ);
+        this.offset = offset;
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(RawImage.HEADER_SIZE);
+            readFully(header, offset);
+            header.flip();
+            if (header.getInt() != RawImage.MAGIC) {
+                throw new IOException(path + " is not a raw image");
+            }
+            this.width = header.getInt();
+            this.height = header.getInt();
+            if (channel.size() < offset + RawImage.HEADER_SIZE + 4L * width * height) {
+                throw new IOException(path + " is incomplete");
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void readRows(int[] argbPixels, int rowCount) throws IOException {
+        if (rowsRead + rowCount > height) {
+            throw new IOException("Can't read " + rowCount + " rows, only " + (height - rowsRead) + " rows are left");
+        }
+        long position = offset + RawImage.HEADER_SIZE + 4L * width * rowsRead;
+        final int pixelCount = width * rowCount;
+        int pixelsRead = 0;
+        while (pixelsRead < pixelCount) {
+            final int pixels = min(pixelCount - pixelsRead, BUFFER_SIZE / 4);
+            buffer.clear().limit(pixels * 4);
+            readFully(buffer, position);
+            buffer.flip();
+            buffer.asIntBuffer().get(argbPixels, pixelsRead, pixels);
+            pixelsRead += pixels;
+            position += pixels * 4L;
+        }
+        rowsRead += rowCount;
+    }
+
+    private void readFully(ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            final int read = channel.read(target, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of raw image");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
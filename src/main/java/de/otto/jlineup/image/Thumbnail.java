@@ -0,0 +1,74 @@
+package de.otto.jlineup.image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/*
+ * Downscaled copies of screenshots for the report. The image is read band by band and every pixel of the thumbnail
+ * is the average of the pixels it covers, so images of any size are scaled without holding them in memory.
+ * Transparent pixels are drawn on white, because thumbnails are stored as jpeg.
+ */
+public class Thumbnail {
+
+    private static final int ROWS_PER_BAND = 64;
+
+    public static BufferedImage scaleToWidth(ImageRowReader image, int thumbnailWidth) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final double scale = (double) width / thumbnailWidth;
+        final int thumbnailHeight = (int) ((height - 1) / scale) + 1;
+        final BufferedImage thumbnail = new BufferedImage(thumbnailWidth, thumbnailHeight, BufferedImage.TYPE_INT_RGB);
+
+        final int[] columns = new int[width];
+        for (int x = 0; x < width; x++) {
+            columns[x] = Math.min(thumbnailWidth - 1, (int) (x / scale));
+        }
+        final long[] red = new long[thumbnailWidth];
+        final long[] green = new long[thumbnailWidth];
+        final long[] blue = new long[thumbnailWidth];
+        final int[] count = new int[thumbnailWidth];
+        final int[] thumbnailRow = new int[thumbnailWidth];
+        final int[] band = new int[width * ROWS_PER_BAND];
+
+        int currentRow = 0;
+        for (int y = 0; y < height; y += ROWS_PER_BAND) {
+            final int rowCount = Math.min(ROWS_PER_BAND, height - y);
+            image.readRows(band, rowCount);
+            for (int row = 0; row < rowCount; row++) {
+                final int thumbnailY = Math.min(thumbnailHeight - 1, (int) ((y + row) / scale));
+                if (thumbnailY != currentRow) {
+                    writeRow(thumbnail, currentRow, red, green, blue, count, thumbnailRow);
+                    currentRow = thumbnailY;
+                }
+                final int offset = row * width;
+                for (int x = 0; x < width; x++) {
+                    final int argb = band[offset + x];
+                    final int alpha = argb >>> 24;
+                    final int column = columns[x];
+                    red[column] += onWhite((argb >> 16) & 0xFF, alpha);
+                    green[column] += onWhite((argb >> 8) & 0xFF, alpha);
+                    blue[column] += onWhite(argb & 0xFF, alpha);
+                    count[column]++;
+                }
+            }
+        }
+        writeRow(thumbnail, currentRow, red, green, blue, count, thumbnailRow);
+        return thumbnail;
+    }
+
+    private static int onWhite(int color, int alpha) {
+        return (color * alpha + 255 * (255 - alpha)) / 255;
+    }
+
+    private static void writeRow(BufferedImage thumbnail, int y, long[] red, long[] green, long[] blue, int[] count, int[] thumbnailRow) {
+        for (int x = 0; x < thumbnailRow.length; x++) {
+            final int pixels = Math.max(1, count[x]);
+            thumbnailRow[x] = (int) (red[x] / pixels) << 16 | (int) (green[x] / pixels) << 8 | (int) (blue[x] / pixels);
+            red[x] = 0;
+            green[x] = 0;
+            blue[x] = 0;
+            count[x] = 0;
+        }
+        thumbnail.setRGB(0, y, thumbnailRow.length, 1, thumbnailRow, 0, thumbnailRow.length);
+    }
+}
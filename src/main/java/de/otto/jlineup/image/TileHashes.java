@@ -0,0 +1,132 @@
+package de.otto.jlineup.image;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static java.lang.Math.min;
+
+/*
+ * Grid of hashes over square tiles of an image. Tiles at the right and bottom border can be smaller than the
+ * tile size. The tile dimensions are part of the hash, so two equal hashes mean equal tiles of equal size.
+ */
+public class TileHashes {
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private final int tileSize;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int columns;
+    private final int rows;
+    private final long[] hashes;
+
+    TileHashes(int tileSize, int imageWidth, int imageHeight, long[] hashes) {
+        this.tileSize = tileSize;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.columns = (imageWidth + tileSize - 1) / tileSize;
+        this.rows = (imageHeight + tileSize - 1) / tileSize;
+        if (hashes.length != columns * rows) {
+            throw new IllegalArgumentException("Expected " + columns * rows + " tile hashes, but got " + hashes.length);
+        }
+        this.hashes = hashes;
+    }
+
+    public static TileHashes of(BufferedImage image) {
+        return of(image, DEFAULT_TILE_SIZE);
+    }
+
+    public static TileHashes of(BufferedImage image, int tileSize) {
+        return of(image, tileSize, null);
+    }
+
+    //Puts all pixel rows into the given pixel hasher in the same pass, see ImageService.newPixelHasher
+    public static TileHashes of(BufferedImage image, Hasher pixelHasher) {
+        return of(image, DEFAULT_TILE_SIZE, pixelHasher);
+    }
+
+    private static TileHashes of(BufferedImage image, int tileSize, Hasher pixelHasher) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int columns = (width + tileSize - 1) / tileSize;
+        final int rows = (height + tileSize - 1) / tileSize;
+        final long[] hashes = new long[columns * rows];
+
+        final int[] band = new int[width * tileSize];
+        final ByteBuffer bandBytes = pixelHasher != null ? ByteBuffer.allocate(width * tileSize * 4) : null;
+        final ByteBuffer tileBytes = ByteBuffer.allocate(8 + tileSize * tileSize * 4);
+        final IntBuffer tileInts = tileBytes.asIntBuffer();
+        for (int row = 0; row < rows; row++) {
+            final int tileY = row * tileSize;
+            final int tileHeight = min(tileSize, height - tileY);
+            image.getRGB(0, tileY, width, tileHeight, band, 0, width);
+            if (pixelHasher != null) {
+                bandBytes.asIntBuffer().put(band, 0, width * tileHeight);
+                pixelHasher.putBytes(bandBytes.array(), 0, width * tileHeight * 4);
+            }
+            for (int column = 0; column < columns; column++) {
+                final int tileX = column * tileSize;
+                final int tileWidth = min(tileSize, width - tileX);
+                tileInts.clear();
+                tileInts.put(tileWidth).put(tileHeight);
+                for (int y = 0; y < tileHeight; y++) {
+                    tileInts.put(band, y * width + tileX, tileWidth);
+                }
+                hashes[row * columns + column] = Hashing.murmur3_128().hashBytes(tileBytes.array(), 0, tileInts.position() * 4).asLong();
+            }
+        }
+        return new TileHashes(tileSize, width, height, hashes);
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public boolean isTileEqual(TileHashes other, int column, int row) {
+        return tileSize == other.tileSize
+                && column < columns && column < other.columns
+                && row < rows && row < other.rows
+                && hashes[row * columns + column] == other.hashes[row * other.columns + column];
+    }
+
+    //Number of bytes written by writeTo
+    public long getSerializedSize() {
+        return 12 + 8L * hashes.length;
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(tileSize);
+        out.writeInt(imageWidth);
+        out.writeInt(imageHeight);
+        for (long hash : hashes) {
+            out.writeLong(hash);
+        }
+        out.flush();
+    }
+
+    public static TileHashes readFrom(InputStream inputStream) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        final int tileSize = in.readInt();
+        final int imageWidth = in.readInt();
+        final int imageHeight = in.readInt();
+        final long[] hashes = new long[((imageWidth + tileSize - 1) / tileSize) * ((imageHeight + tileSize - 1) / tileSize)];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = in.readLong();
+        }
+        return new TileHashes(tileSize, imageWidth, imageHeight, hashes);
+    }
+}
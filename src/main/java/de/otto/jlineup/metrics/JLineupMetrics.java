@@ -0,0 +1,246 @@
+package de.otto.jlineup.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Live metrics of a running JLineup, counted by the browser, the file service and the comparator. There is one
+ * instance per JVM, so they don't have to be passed around. It's registered as MBean, so it can be watched with
+ * jconsole or any other JMX client, and can be served in the Prometheus text format by PrometheusEndpoint.
+ *
+ * The rates are averaged from the first screenshot or comparison until now.
+ */
+public class JLineupMetrics implements JLineupMetricsMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JLineupMetrics.class);
+
+    public static final String OBJECT_NAME = "de.otto.jlineup:type=JLineupMetrics";
+
+    private static final JLineupMetrics INSTANCE = new JLineupMetrics();
+
+    private final AtomicLong contextsQueued = new AtomicLong();
+    private final AtomicLong contextsInFlight = new AtomicLong();
+    private final AtomicLong contextsCompleted = new AtomicLong();
+    private final AtomicLong screenshotsTaken = new AtomicLong();
+    private final AtomicLong firstScreenshotNanos = new AtomicLong();
+    private final AtomicLong webDrivers = new AtomicLong();
+    private final AtomicLong driverWaitNanos = new AtomicLong();
+    private final AtomicLong imagesWaitingForEncoder = new AtomicLong();
+    private final AtomicLong imagesEncoding = new AtomicLong();
+    private final AtomicLong screenshotsEncoded = new AtomicLong();
+    private final AtomicLong comparisonsCompleted = new AtomicLong();
+    private final AtomicLong comparedPixels = new AtomicLong();
+    private final AtomicLong firstComparisonNanos = new AtomicLong();
+    private final AtomicLong imageBufferBytes = new AtomicLong();
+
+    JLineupMetrics() {
+    }
+
+    public static JLineupMetrics get() {
+        return INSTANCE;
+    }
+
+    //Starts a new run from zero, i.e. when JLineup runs several times in the same JVM like in the acceptance tests
+    public void reset() {
+        for (AtomicLong counter : new AtomicLong[]{contextsQueued, contextsInFlight, contextsCompleted, screenshotsTaken,
+                firstScreenshotNanos, webDrivers, driverWaitNanos, imagesWaitingForEncoder, imagesEncoding,
+                screenshotsEncoded, comparisonsCompleted, comparedPixels, firstComparisonNanos, imageBufferBytes}) {
+            counter.set(0);
+        }
+    }
+
+    //Registers the metrics with the platform MBean server, a failure is only logged, because JLineup works without
+    public void registerMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            LOG.warn("Could not register metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    public void contextQueued() {
+        contextsQueued.incrementAndGet();
+    }
+
+    public void contextStarted() {
+        contextsQueued.decrementAndGet();
+        contextsInFlight.incrementAndGet();
+    }
+
+    public void contextFinished() {
+        contextsInFlight.decrementAndGet();
+        contextsCompleted.incrementAndGet();
+    }
+
+    public void screenshotTaken() {
+        firstScreenshotNanos.compareAndSet(0, System.nanoTime());
+        screenshotsTaken.incrementAndGet();
+    }
+
+    public void webDriverStarted() {
+        webDrivers.incrementAndGet();
+    }
+
+    public void webDriverQuit() {
+        webDrivers.decrementAndGet();
+    }
+
+    //Time a context waited for its web driver, including starting it
+    public void driverWaitedSince(long startNanos) {
+        driverWaitNanos.addAndGet(System.nanoTime() - startNanos);
+    }
+
+    //An image that's handed over to a background writer waits for the encoder until encodeStarted()
+    public void encodeQueued() {
+        imagesWaitingForEncoder.incrementAndGet();
+    }
+
+    public void encodeDequeued() {
+        imagesWaitingForEncoder.decrementAndGet();
+    }
+
+    public void encodeStarted() {
+        imagesEncoding.incrementAndGet();
+    }
+
+    public void encodeFinished() {
+        imagesEncoding.decrementAndGet();
+        screenshotsEncoded.incrementAndGet();
+    }
+
+    //pixels is 0 for comparisons that didn't need to look at the images, i.e. because of equal hashes
+    public void comparisonFinished(long pixels) {
+        firstComparisonNanos.compareAndSet(0, System.nanoTime());
+        comparisonsCompleted.incrementAndGet();
+        comparedPixels.addAndGet(pixels);
+    }
+
+    //Estimated memory of decoded images and images that wait for the encoder, negative when it's released
+    public void imageBuffers(long bytes) {
+        imageBufferBytes.addAndGet(bytes);
+    }
+
+    @Override
+    public long getContextsQueued() {
+        return contextsQueued.get();
+    }
+
+    @Override
+    public long getContextsInFlight() {
+        return contextsInFlight.get();
+    }
+
+    @Override
+    public long getContextsCompleted() {
+        return contextsCompleted.get();
+    }
+
+    @Override
+    public long getScreenshotsTaken() {
+        return screenshotsTaken.get();
+    }
+
+    @Override
+    public double getScreenshotsPerSecond() {
+        return perSecond(screenshotsTaken.get(), firstScreenshotNanos.get());
+    }
+
+    @Override
+    public long getWebDrivers() {
+        return webDrivers.get();
+    }
+
+    @Override
+    public long getDriverWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(driverWaitNanos.get());
+    }
+
+    @Override
+    public long getEncoderQueueDepth() {
+        return imagesWaitingForEncoder.get() + imagesEncoding.get();
+    }
+
+    @Override
+    public long getScreenshotsEncoded() {
+        return screenshotsEncoded.get();
+    }
+
+    @Override
+    public long getComparisonsCompleted() {
+        return comparisonsCompleted.get();
+    }
+
+    @Override
+    public long getComparedPixels() {
+        return comparedPixels.get();
+    }
+
+    @Override
+    public double getComparisonsPerSecond() {
+        return perSecond(comparisonsCompleted.get(), firstComparisonNanos.get());
+    }
+
+    @Override
+    public long getImageBufferBytes() {
+        return imageBufferBytes.get();
+    }
+
+    //Prometheus text exposition format, version 0.0.4
+    public String toPrometheusText() {
+        final StringBuilder text = new StringBuilder();
+        gauge(text, "jlineup_contexts_queued", "Contexts waiting for a browser thread", getContextsQueued());
+        gauge(text, "jlineup_contexts_in_flight", "Contexts the browser is taking screenshots of", getContextsInFlight());
+        counter(text, "jlineup_contexts_completed_total", "Contexts with all screenshots taken", getContextsCompleted());
+        counter(text, "jlineup_screenshots_total", "Screenshots taken", getScreenshotsTaken());
+        gauge(text, "jlineup_screenshots_per_second", "Screenshots per second since the first screenshot", getScreenshotsPerSecond());
+        gauge(text, "jlineup_webdrivers", "Running web drivers", getWebDrivers());
+        counter(text, "jlineup_driver_wait_seconds_total", "Time contexts waited for their web driver", driverWaitNanos.get() / 1e9);
+        gauge(text, "jlineup_encoder_queue_depth", "Images waiting for or being encoded", getEncoderQueueDepth());
+        counter(text, "jlineup_screenshots_encoded_total", "Screenshots and difference images encoded", getScreenshotsEncoded());
+        counter(text, "jlineup_comparisons_total", "Screenshot pairs compared", getComparisonsCompleted());
+        counter(text, "jlineup_compared_pixels_total", "Pixels of the compared screenshot pairs", getComparedPixels());
+        gauge(text, "jlineup_comparisons_per_second", "Comparisons per second since the first comparison", getComparisonsPerSecond());
+        gauge(text, "jlineup_image_buffer_bytes", "Estimated heap used by decoded images and images waiting for the encoder", getImageBufferBytes());
+        return text.toString();
+    }
+
+    private static double perSecond(long count, long startNanos) {
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        if (count == 0 || elapsedNanos <= 0) {
+            return 0;
+        }
+        return count * 1e9 / elapsedNanos;
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, Number value) {
+        metric(text, name, help, "gauge", value);
+    }
+
+    private static void counter(StringBuilder text, String name, String help, Number value) {
+        metric(text, name, help, "counter", value);
+    }
+
+    private static void metric(StringBuilder text, String name, String help, String type, Number value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ');
+        if (value instanceof Double) {
+            text.append(String.format(Locale.ENGLISH, "%.3f", value.doubleValue()));
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+    }
+}
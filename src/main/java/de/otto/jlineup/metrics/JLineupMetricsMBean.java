@@ -0,0 +1,31 @@
+package de.otto.jlineup.metrics;
+
+//Attributes of the JLineup MBean, see JLineupMetrics
+public interface JLineupMetricsMBean {
+
+    long getContextsQueued();
+
+    long getContextsInFlight();
+
+    long getContextsCompleted();
+
+    long getScreenshotsTaken();
+
+    double getScreenshotsPerSecond();
+
+    long getWebDrivers();
+
+    long getDriverWaitMillis();
+
+    long getEncoderQueueDepth();
+
+    long getScreenshotsEncoded();
+
+    long getComparisonsCompleted();
+
+    long getComparedPixels();
+
+    double getComparisonsPerSecond();
+
+    long getImageBufferBytes();
+}
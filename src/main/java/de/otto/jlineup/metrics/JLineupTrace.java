@@ -0,0 +1,144 @@
+package de.otto.jlineup.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Timeline of a run in the trace event format of Chrome, which can be opened in chrome://tracing or ui.perfetto.dev.
+ * Every thread is a track, browser threads show contexts with their phases, writer and decoder threads show encoding
+ * and decoding, comparison threads show the comparisons. Gaps on a track are idle time.
+ * Spans are only kept after enable(), so tracing costs nothing when it's off. There is one instance per JVM, like
+ * JLineupMetrics, and every enable() starts it anew.
+ */
+public class JLineupTrace {
+
+    public static final String CATEGORY_PHASE = "phase";
+    public static final String CATEGORY_CONTEXT = "context";
+    public static final String CATEGORY_COMPARISON = "comparison";
+    public static final String CATEGORY_IDLE = "idle";
+
+    private static final JLineupTrace INSTANCE = new JLineupTrace();
+
+    private static final int PROCESS_ID = 1;
+
+    private volatile long startNanos = System.nanoTime();
+    private final Queue<Span> spans = new ConcurrentLinkedQueue<>();
+    private final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+    private volatile boolean enabled = false;
+
+    JLineupTrace() {
+    }
+
+    public static JLineupTrace get() {
+        return INSTANCE;
+    }
+
+    //Starts a new trace, spans of an earlier run in the same JVM are dropped
+    public void enable() {
+        spans.clear();
+        threadNames.clear();
+        startNanos = System.nanoTime();
+        enabled = true;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //Records a span of the current thread from startNanos (as returned by System.nanoTime()) until now
+    public void span(String name, String category, long startNanos) {
+        span(name, category, startNanos, null);
+    }
+
+    //detail is shown with the span in the trace viewer, i.e. the url or file name
+    public void span(String name, String category, long startNanos, String detail) {
+        if (!enabled) {
+            return;
+        }
+        final long endNanos = System.nanoTime();
+        final Thread thread = Thread.currentThread();
+        threadNames.putIfAbsent(thread.getId(), thread.getName());
+        spans.add(new Span(name, category, startNanos, endNanos, thread.getId(), detail));
+    }
+
+    public void writeTo(Path traceFile) throws IOException {
+        if (traceFile.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(traceFile.toAbsolutePath().getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(traceFile, Charsets.UTF_8)) {
+            writeTo(writer);
+        }
+    }
+
+    void writeTo(Writer writer) throws IOException {
+        final JsonWriter json = new JsonWriter(writer);
+        json.beginObject();
+        json.name("displayTimeUnit").value("ms");
+        json.name("traceEvents").beginArray();
+        metadata(json, "process_name", null, "JLineup");
+        for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+            metadata(json, "thread_name", thread.getKey(), thread.getValue());
+        }
+        for (Span span : spans) {
+            json.beginObject();
+            json.name("name").value(span.name);
+            json.name("cat").value(span.category);
+            json.name("ph").value("X");
+            json.name("ts").value(micros(span.startNanos - startNanos));
+            json.name("dur").value(micros(span.endNanos - span.startNanos));
+            json.name("pid").value(PROCESS_ID);
+            json.name("tid").value(span.threadId);
+            if (span.detail != null) {
+                json.name("args").beginObject().name("detail").value(span.detail).endObject();
+            }
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    private static void metadata(JsonWriter json, String name, Long threadId, String value) throws IOException {
+        json.beginObject();
+        json.name("name").value(name);
+        json.name("ph").value("M");
+        json.name("pid").value(PROCESS_ID);
+        if (threadId != null) {
+            json.name("tid").value(threadId);
+        }
+        json.name("args").beginObject().name("name").value(value).endObject();
+        json.endObject();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static class Span {
+        final String name;
+        final String category;
+        final long startNanos;
+        final long endNanos;
+        final long threadId;
+        final String detail;
+
+        Span(String name, String category, long startNanos, long endNanos, long threadId, String detail) {
+            this.name = name;
+            this.category = category;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.threadId = threadId;
+            this.detail = detail;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package de.otto.jlineup.metrics;
+
+import com.google.common.base.Charsets;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+/*
+ * Serves the metrics in the Prometheus text format at http://<host>:<port>/metrics while JLineup runs.
+ * It uses the http server of the JDK, so no other library is needed. The metrics show urls and timings of the run,
+ * so the endpoint only listens on the loopback address, unless another host is given.
+ */
+public class PrometheusEndpoint implements AutoCloseable {
+
+    public static final String PATH = "/metrics";
+    public static final String DEFAULT_HOST = "127.0.0.1";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+
+    public PrometheusEndpoint(int port, JLineupMetrics metrics) throws IOException {
+        this(DEFAULT_HOST, port, metrics);
+    }
+
+    public PrometheusEndpoint(String host, int port, JLineupMetrics metrics) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext(PATH, exchange -> {
+            final byte[] body = metrics.toPrometheusText().getBytes(Charsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        //the scrapes are rare, the default executor handles them in the server's own thread
+        start(server);
+    }
+
+    //Threads inherit being a daemon from the thread that starts them, so the server's threads don't keep JLineup from exiting
+    private static void start(HttpServer server) throws IOException {
+        final Thread starter = new Thread(server::start, "PrometheusEndpoint");
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            server.stop(0);
+            throw new InterruptedIOException("Interrupted while starting metrics endpoint");
+        }
+    }
+
+    public String getHost() {
+        return server.getAddress().getHostString();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
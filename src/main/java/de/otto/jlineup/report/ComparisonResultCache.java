@@ -0,0 +1,83 @@
+package de.otto.jlineup.report;
+
+import com.google.common.base.Charsets;
+import de.otto.jlineup.config.Config;
+import de.otto.jlineup.config.Parameters;
+import de.otto.jlineup.file.FileService;
+import de.otto.jlineup.file.LruDirectoryCache;
+import de.otto.jlineup.file.ScreenshotManifestEntry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+ * Results of earlier comparisons, found by the pixel hashes of both screenshots and the settings that change the result.
+ * Every entry holds the difference and, if there is one, the difference image.
+ */
+class ComparisonResultCache {
+
+    //has to change whenever the comparison itself changes, so old results aren't used anymore
+    private static final String COMPARISON_VERSION = "1";
+
+    private static final String DIFFERENCE_FILE = "difference";
+    private static final String DIFFERENCE_IMAGE_FILE = "difference.png";
+
+    private final FileService fileService;
+    private final LruDirectoryCache cache;
+    private final String settings;
+
+    ComparisonResultCache(Parameters parameters, Config config, FileService fileService) {
+        this.fileService = fileService;
+        if (parameters.getComparisonCacheDirectory() != null) {
+            this.cache = new LruDirectoryCache(Paths.get(parameters.getComparisonCacheDirectory()), parameters.getComparisonCacheSize() * 1024L * 1024L);
+        } else {
+            this.cache = null;
+        }
+        this.settings = COMPARISON_VERSION + "/" + config.windowHeight;
+    }
+
+    //The key of the comparison or null if it can't be cached because a hash is missing
+    String keyOf(ScreenshotManifestEntry beforeScreenshot, ScreenshotManifestEntry afterScreenshot) {
+        if (cache == null || beforeScreenshot.hash == null || afterScreenshot.hash == null) {
+            return null;
+        }
+        return beforeScreenshot.hash + "/" + afterScreenshot.hash + "/" + settings;
+    }
+
+    //The cached result or null if the pair wasn't compared before
+    CachedComparison get(String key) throws IOException {
+        final Path entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            final double difference = Double.parseDouble(new String(Files.readAllBytes(entry.resolve(DIFFERENCE_FILE)), Charsets.UTF_8));
+            final Path differenceImage = entry.resolve(DIFFERENCE_IMAGE_FILE);
+            return new CachedComparison(difference, Files.exists(differenceImage) ? differenceImage : null);
+        } catch (IOException | NumberFormatException e) {
+            //evicted by another process while reading
+            return null;
+        }
+    }
+
+    void put(String key, double difference, String differenceImageFileName) throws IOException {
+        cache.put(key, entry -> {
+            if (differenceImageFileName != null) {
+                fileService.copyScreenshotTo(differenceImageFileName, entry.resolve(DIFFERENCE_IMAGE_FILE));
+            }
+            Files.write(entry.resolve(DIFFERENCE_FILE), Double.toString(difference).getBytes(Charsets.UTF_8));
+        });
+    }
+
+    static class CachedComparison {
+        final double difference;
+        final Path differenceImage;
+
+        CachedComparison(double difference, Path differenceImage) {
+            this.difference = difference;
+            this.differenceImage = differenceImage;
+        }
+    }
+}
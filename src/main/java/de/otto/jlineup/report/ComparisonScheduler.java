@@ -0,0 +1,204 @@
+package de.otto.jlineup.report;
+
+import de.otto.jlineup.Util;
+import de.otto.jlineup.metrics.JLineupMetrics;
+import de.otto.jlineup.metrics.JLineupTrace;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*
+ * Runs comparisons in parallel, but only as many as fit into the memory budget at the same time.
+ * Comparisons are admitted in the order they are submitted, a comparison that needs more than the
+ * whole budget waits until all others are finished and then runs alone. Callers that must not wait,
+ * like the browser threads, hand their comparisons to a dispatcher thread that waits for the memory instead.
+ *
+ * Comparisons can decode images in parallel and hand written images over to background writers,
+ * so decoding, comparing and encoding of different pairs overlap.
+ */
+public class ComparisonScheduler implements AutoCloseable {
+
+    private final ExecutorService threadPool;
+    private final ExecutorService dispatcherThreadPool;
+    private final ExecutorService decoderThreadPool;
+    private final ExecutorService writerThreadPool;
+    private final List<Future<?>> writes = new ArrayList<>();
+    private final long memoryBudget;
+    private long reservedMemory = 0;
+    private final JLineupMetrics metrics = JLineupMetrics.get();
+    private final JLineupTrace trace = JLineupTrace.get();
+
+    public ComparisonScheduler(int threads, long memoryBudget) {
+        this.threadPool = Util.createThreadPool(threads, "ComparisonThread");
+        this.dispatcherThreadPool = Util.createThreadPool(1, "ComparisonDispatcherThread");
+        this.decoderThreadPool = Util.createThreadPool(threads, "DecoderThread");
+        this.writerThreadPool = Util.createThreadPool(threads, "WriterThread");
+        this.memoryBudget = memoryBudget;
+    }
+
+    //Blocks until the estimated memory of the comparison is available
+    public <T> Future<T> submit(long estimatedMemory, Callable<T> comparison) throws IOException {
+        final long memory = admittedMemory(estimatedMemory);
+        reserve(memory);
+        try {
+            return threadPool.submit(() -> {
+                try {
+                    return comparison.call();
+                } finally {
+                    release(memory);
+                }
+            });
+        } catch (RuntimeException e) {
+            release(memory);
+            throw e;
+        }
+    }
+
+    //Like submit, but returns at once. The memory is reserved by the dispatcher thread, which admits the comparisons
+    //in the order they are submitted
+    public <T> Future<T> submitWithoutWaiting(long estimatedMemory, Callable<T> comparison) {
+        final long memory = admittedMemory(estimatedMemory);
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        dispatcherThreadPool.execute(() -> {
+            try {
+                reserve(memory);
+            } catch (InterruptedIOException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            try {
+                threadPool.execute(() -> {
+                    //the memory is released before the result is visible, like with submit
+                    try {
+                        final T value;
+                        try {
+                            value = comparison.call();
+                        } finally {
+                            release(memory);
+                        }
+                        result.complete(value);
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                release(memory);
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private long admittedMemory(long estimatedMemory) {
+        return Math.max(0, Math.min(estimatedMemory, memoryBudget));
+    }
+
+    //Decodes an image while the calling comparison does something else, e.g. decoding the other image
+    public <T> Future<T> decode(Callable<T> decoding) {
+        return decoderThreadPool.submit(decoding);
+    }
+
+    //Writes an image in the background. The memory of the image is part of the reservation of the calling comparison,
+    //it's handed over to the write and released when the image is written.
+    public void writeAsync(long memory, Callable<?> write) {
+        synchronized (this) {
+            reservedMemory += memory;
+        }
+        metrics.imageBuffers(memory);
+        metrics.encodeQueued();
+        try {
+            final Future<?> result = writerThreadPool.submit(() -> {
+                metrics.encodeDequeued();
+                try {
+                    return write.call();
+                } finally {
+                    release(memory);
+                }
+            });
+            synchronized (writes) {
+                writes.add(result);
+            }
+        } catch (RuntimeException e) {
+            metrics.encodeDequeued();
+            release(memory);
+            throw e;
+        }
+    }
+
+    //Waits until all images that were handed over to writeAsync are written
+    public void awaitWrites() throws IOException {
+        final List<Future<?>> pendingWrites;
+        synchronized (writes) {
+            pendingWrites = new ArrayList<>(writes);
+            writes.clear();
+        }
+        for (Future<?> write : pendingWrites) {
+            getResult(write);
+        }
+    }
+
+    public static <T> T getResult(Future<T> comparison) throws IOException {
+        try {
+            return comparison.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for comparison");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Comparison failed", cause);
+        }
+    }
+
+    synchronized long getReservedMemory() {
+        return reservedMemory;
+    }
+
+    private synchronized void reserve(long memory) throws InterruptedIOException {
+        final long waitStart = System.nanoTime();
+        boolean waited = false;
+        while (reservedMemory > 0 && reservedMemory + memory > memoryBudget) {
+            waited = true;
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for memory to compare screenshots");
+            }
+        }
+        if (waited) {
+            trace.span("waitForMemory", JLineupTrace.CATEGORY_IDLE, waitStart);
+        }
+        reservedMemory += memory;
+        metrics.imageBuffers(memory);
+    }
+
+    private synchronized void release(long memory) {
+        reservedMemory -= memory;
+        metrics.imageBuffers(-memory);
+        notifyAll();
+    }
+
+    @Override
+    public void close() {
+        dispatcherThreadPool.shutdownNow();
+        threadPool.shutdownNow();
+        decoderThreadPool.shutdownNow();
+        writerThreadPool.shutdownNow();
+    }
+}
@@ -0,0 +1,59 @@
+package de.otto.jlineup.report;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import de.otto.jlineup.file.FileService;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.*;
+
+/*
+ * Comparison results of a run with --gate. They are kept in the report directory, so '--step report' can create the
+ * reports later and only compares the screenshots again that need a difference image or weren't compared at all,
+ * because the gate stopped at the first difference above max-diff.
+ */
+public class GateResults {
+
+    private static final Gson GSON = new Gson();
+    private static final Type RESULT_LIST_TYPE = new TypeToken<List<ScreenshotComparisonResult>>() {}.getType();
+
+    private final FileService fileService;
+
+    public GateResults(FileService fileService) {
+        this.fileService = fileService;
+    }
+
+    public void write(Map<String, List<ScreenshotComparisonResult>> comparisonResults) throws IOException {
+        final List<ScreenshotComparisonResult> results = new ArrayList<>();
+        comparisonResults.values().forEach(results::addAll);
+        try (Writer writer = fileService.openGateResultsWriter()) {
+            GSON.toJson(results, RESULT_LIST_TYPE, writer);
+        }
+    }
+
+    //Results without difference by url, window width and scroll position, they can be taken as they are
+    Map<String, ScreenshotComparisonResult> readResultsWithoutDifference() throws IOException {
+        final Map<String, ScreenshotComparisonResult> resultsWithoutDifference = new HashMap<>();
+        try (Reader reader = fileService.openGateResultsReader()) {
+            if (reader == null) {
+                return resultsWithoutDifference;
+            }
+            final List<ScreenshotComparisonResult> results = GSON.fromJson(reader, RESULT_LIST_TYPE);
+            if (results != null) {
+                for (ScreenshotComparisonResult result : results) {
+                    if (result.difference == 0) {
+                        resultsWithoutDifference.put(positionOf(result.url, result.width, result.verticalScrollPosition), result);
+                    }
+                }
+            }
+        }
+        return resultsWithoutDifference;
+    }
+
+    static String positionOf(String fullUrlWithPath, int windowWidth, int yPosition) {
+        return fullUrlWithPath + "|||" + windowWidth + "|||" + yPosition;
+    }
+}
@@ -6,52 +6,133 @@ import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class HTMLReportWriter {
 
+    //Thymeleaf parses the template only once per engine, so all reports share one
+    private static final TemplateEngine TEMPLATE_ENGINE = createTemplateEngine();
+
+    //images are shown with a maximum width of 350px in the report
+    static final int THUMBNAIL_WIDTH = 350;
+
+    static final String INDEX_PAGE = "report.html";
+
     private FileService fileService;
+    private final boolean thumbnails;
+    private final int threads;
 
     public HTMLReportWriter(FileService fileService) {
+        this(fileService, true, Runtime.getRuntime().availableProcessors());
+    }
+
+    public HTMLReportWriter(FileService fileService, boolean thumbnails, int threads) {
         this.fileService = fileService;
+        this.thumbnails = thumbnails;
+        this.threads = threads;
+    }
+
+    //The index page lists all contexts and is written first, so the report can be opened right away. Every context
+    //has its own page, which is written as soon as its images are prepared. Contexts with differences come first.
+    public void writeReport(Report report) throws IOException {
+        final List<ScreenshotComparisonResultContext> resultContexts = groupIntoContexts(report.getFlatResultList());
+        final ExecutorService executor = Util.createThreadPool(threads, "ReportImageThread");
+        try {
+            final Map<String, Future<String>> reportImages = new HashMap<>();
+            for (ScreenshotComparisonResultContext resultContext : resultContexts) {
+                for (ScreenshotComparisonResult screenshotComparisonResult : resultContext.getResults()) {
+                    for (String image : imagesOf(screenshotComparisonResult)) {
+                        reportImages.computeIfAbsent(image, path -> executor.submit(() -> prepareImage(path)));
+                    }
+                }
+            }
+            try (Writer writer = fileService.openHtmlReportWriter(INDEX_PAGE)) {
+                renderIndexPage(resultContexts, writer);
+            }
+            for (ScreenshotComparisonResultContext resultContext : resultContexts) {
+                final Map<String, String> thumbnails = waitForImages(resultContext, reportImages);
+                try (Writer writer = fileService.openHtmlReportWriter(resultContext.getPageFileName())) {
+                    renderContextPage(resultContext, thumbnails, writer);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    //Screenshots in raw format get their png and big images get a thumbnail, returns the path of the thumbnail or null
+    private String prepareImage(String image) throws IOException {
+        fileService.materializeScreenshotForReport(image);
+        return thumbnails ? fileService.writeThumbnailForReport(image, THUMBNAIL_WIDTH) : null;
+    }
+
+    private static Map<String, String> waitForImages(ScreenshotComparisonResultContext resultContext, Map<String, Future<String>> reportImages) throws IOException {
+        final Map<String, String> thumbnails = new HashMap<>();
+        for (ScreenshotComparisonResult screenshotComparisonResult : resultContext.getResults()) {
+            for (String image : imagesOf(screenshotComparisonResult)) {
+                final String thumbnail = ComparisonScheduler.getResult(reportImages.get(image));
+                if (thumbnail != null) {
+                    thumbnails.put(image, thumbnail);
+                }
+            }
+        }
+        return thumbnails;
+    }
+
+    private static List<String> imagesOf(ScreenshotComparisonResult screenshotComparisonResult) {
+        final List<String> images = new ArrayList<>();
+        for (String image : Arrays.asList(screenshotComparisonResult.screenshotBeforeFileName, screenshotComparisonResult.screenshotAfterFileName, screenshotComparisonResult.differenceImageFileName)) {
+            if (image != null) {
+                images.add(image);
+            }
+        }
+        return images;
     }
 
-    public void writeReport(Report report) throws FileNotFoundException {
-        fileService.writeHtmlReport(renderReport("report", report.getFlatResultList()));
+    String renderIndexPage(List<ScreenshotComparisonResult> screenshotComparisonResults) {
+        final StringWriter writer = new StringWriter();
+        renderIndexPage(groupIntoContexts(screenshotComparisonResults), writer);
+        return writer.toString();
     }
 
-    String renderReport(String template, List<ScreenshotComparisonResult> screenshotComparisonResults) throws FileNotFoundException {
+    String renderContextPage(List<ScreenshotComparisonResult> screenshotComparisonResults) {
+        final StringWriter writer = new StringWriter();
+        renderContextPage(groupIntoContexts(screenshotComparisonResults).get(0), Collections.emptyMap(), writer);
+        return writer.toString();
+    }
+
+    private void renderIndexPage(List<ScreenshotComparisonResultContext> resultContexts, Writer writer) {
+        Map<String, Object> variables = prepareVariablesForReportTemplate();
+        variables.put("resultContexts", resultContexts);
+        variables.put("failedContexts", resultContexts.stream().filter(resultContext -> !resultContext.isSuccess()).count());
+        TEMPLATE_ENGINE.process("report", new Context(Locale.US, variables), writer);
+    }
 
+    private void renderContextPage(ScreenshotComparisonResultContext resultContext, Map<String, String> thumbnails, Writer writer) {
+        Map<String, Object> variables = prepareVariablesForReportTemplate();
+        variables.put("resultContext", resultContext);
+        variables.put("thumbnails", thumbnails);
+        TEMPLATE_ENGINE.process("report-context", new Context(Locale.US, variables), writer);
+    }
+
+    private static TemplateEngine createTemplateEngine() {
         ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
         templateResolver.setTemplateMode("HTML");
         templateResolver.setPrefix("templates/");
         templateResolver.setSuffix(".html");
+        templateResolver.setCacheable(true);
         TemplateEngine templateEngine = new TemplateEngine();
         templateEngine.setTemplateResolver(templateResolver);
-
-        Map<String, Object> variables = prepareVariablesForReportTemplate(screenshotComparisonResults);
-
-        return templateEngine.process(template, new Context(Locale.US, variables));
+        return templateEngine;
     }
 
-    private Map<String, Object> prepareVariablesForReportTemplate(List<ScreenshotComparisonResult> screenshotComparisonResults) {
+    private Map<String, Object> prepareVariablesForReportTemplate() {
         Map<String, Object> variables = new HashMap<>();
-        List<ScreenshotComparisonResultContext> screenshotComparisonResultContexts = new LinkedList<>();
-
-        String lastContextKey = null;
-        ScreenshotComparisonResultContext currentContext = null;
-        for (ScreenshotComparisonResult screenshotComparisonResult : screenshotComparisonResults) {
-            String context = getContextKey(screenshotComparisonResult);
-            if (!context.equals(lastContextKey)) {
-                lastContextKey = context;
-                currentContext = new ScreenshotComparisonResultContext(screenshotComparisonResult.url, screenshotComparisonResult.width);
-                screenshotComparisonResultContexts.add(currentContext);
-            }
-            currentContext.addResult(screenshotComparisonResult);
-        }
-
-        variables.put("resultContexts", screenshotComparisonResultContexts);
         variables.put("jlineup_version", Util.readVersion());
         variables.put("jlineup_commit", Util.readCommit());
         return variables;
@@ -61,11 +142,28 @@ public class HTMLReportWriter {
         return screenshotComparisonResult.url + "|||" + screenshotComparisonResult.width;
     }
 
+    private List<ScreenshotComparisonResultContext> groupIntoContexts(List<ScreenshotComparisonResult> screenshotComparisonResults) {
+        final Map<String, ScreenshotComparisonResultContext> resultContextsByKey = new LinkedHashMap<>();
+        for (ScreenshotComparisonResult screenshotComparisonResult : screenshotComparisonResults) {
+            resultContextsByKey.computeIfAbsent(getContextKey(screenshotComparisonResult),
+                    key -> new ScreenshotComparisonResultContext(screenshotComparisonResult.url, screenshotComparisonResult.width))
+                    .addResult(screenshotComparisonResult);
+        }
+        final List<ScreenshotComparisonResultContext> resultContexts = new ArrayList<>(resultContextsByKey.values());
+        //stable sort, contexts keep their order within failures and successes
+        resultContexts.sort(Comparator.comparing(ScreenshotComparisonResultContext::isSuccess));
+        for (int i = 0; i < resultContexts.size(); i++) {
+            resultContexts.get(i).setPageFileName("report-" + (i + 1) + ".html");
+        }
+        return resultContexts;
+    }
+
     private class ScreenshotComparisonResultContext {
 
         private String url;
         private int width;
         private List<ScreenshotComparisonResult> results;
+        private String pageFileName;
 
         public ScreenshotComparisonResultContext(String url, int width) {
             this.url = url;
@@ -77,6 +175,15 @@ public class HTMLReportWriter {
             results.add(result);
         }
 
+        void setPageFileName(String pageFileName) {
+            this.pageFileName = pageFileName;
+        }
+
+        @UsedInTemplate
+        public String getPageFileName() {
+            return pageFileName;
+        }
+
         public String getUrl() {
             return url;
         }
@@ -100,6 +207,15 @@ public class HTMLReportWriter {
             return shortenedUrl;
         }
 
+        @UsedInTemplate
+        public double getMaxDifference() {
+            double maxDifference = 0;
+            for (ScreenshotComparisonResult result : results) {
+                maxDifference = Math.max(maxDifference, result.difference);
+            }
+            return maxDifference;
+        }
+
         @UsedInTemplate
         public boolean isSuccess()
         {
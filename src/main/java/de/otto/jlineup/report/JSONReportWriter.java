@@ -1,8 +1,8 @@
 package de.otto.jlineup.report;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
 
 public interface JSONReportWriter {
 
-    public void writeComparisonReportAsJson(Report report) throws FileNotFoundException;
+    public void writeComparisonReportAsJson(Report report) throws IOException;
 }
@@ -2,22 +2,32 @@ package de.otto.jlineup.report;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import de.otto.jlineup.file.FileService;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
 
 public class JSONReportWriter_V2 implements JSONReportWriter {
 
     private final FileService fileService;
 
-    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson gson;
 
     public JSONReportWriter_V2(FileService fileService) {
+        this(fileService, false);
+    }
+
+    public JSONReportWriter_V2(FileService fileService, boolean compact) {
         this.fileService = fileService;
+        this.gson = compact ? new Gson() : new GsonBuilder().setPrettyPrinting().create();
     }
 
-    public void writeComparisonReportAsJson(Report report) throws FileNotFoundException {
-        final String reportJson = gson.toJson(report);
-        fileService.writeJsonReport(reportJson);
+    //Every result is serialized right into the file, the report never exists as a whole json string
+    public void writeComparisonReportAsJson(Report report) throws IOException {
+        try (Writer writer = fileService.openJsonReportWriter();
+             JsonWriter jsonWriter = gson.newJsonWriter(writer)) {
+            gson.toJson(report, Report.class, jsonWriter);
+        }
     }
 }
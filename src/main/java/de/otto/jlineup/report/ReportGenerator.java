@@ -1,6 +1,7 @@
 package de.otto.jlineup.report;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class ReportGenerator {
@@ -21,6 +22,28 @@ public class ReportGenerator {
     private Summary getSummary(List<ScreenshotComparisonResult> resultList) {
         final double differenceSum = resultList.stream().mapToDouble(scr -> scr.difference).sum();
         final OptionalDouble differenceMax = resultList.stream().mapToDouble(scr -> scr.difference).max();
-        return new Summary(differenceSum > 0, differenceSum, differenceMax.orElseGet(() -> 0));
+        return new Summary(differenceSum > 0, differenceSum, differenceMax.orElseGet(() -> 0), getTimingStatistics(resultList));
+    }
+
+    //null if the results have no timings, i.e. in report format 1 and 2
+    private Timings<TimingStatistics> getTimingStatistics(List<ScreenshotComparisonResult> resultList) {
+        final List<Timings<Long>> timings = resultList.stream().map(scr -> scr.timings).filter(Objects::nonNull).collect(Collectors.toList());
+        if (timings.isEmpty()) {
+            return null;
+        }
+        return new Timings<>(getTimingStatistics(timings, t -> t.before), getTimingStatistics(timings, t -> t.after), getTimingStatistics(timings, t -> t.comparison));
+    }
+
+    private Map<String, TimingStatistics> getTimingStatistics(List<Timings<Long>> timings, Function<Timings<Long>, Map<String, Long>> timingsOfStep) {
+        final Map<String, List<Long>> millisByPhase = new LinkedHashMap<>();
+        for (Timings<Long> timingsOfResult : timings) {
+            final Map<String, Long> millis = timingsOfStep.apply(timingsOfResult);
+            if (millis != null) {
+                millis.forEach((phase, phaseMillis) -> millisByPhase.computeIfAbsent(phase, k -> new ArrayList<>()).add(phaseMillis));
+            }
+        }
+        final Map<String, TimingStatistics> statistics = new LinkedHashMap<>();
+        millisByPhase.forEach((phase, millis) -> statistics.put(phase, TimingStatistics.of(millis)));
+        return statistics;
     }
 }
@@ -0,0 +1,241 @@
+package de.otto.jlineup.report;
+
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import de.otto.jlineup.browser.BrowserUtils;
+import de.otto.jlineup.browser.ScreenshotContext;
+import de.otto.jlineup.config.Config;
+import de.otto.jlineup.config.Parameters;
+import de.otto.jlineup.config.UrlConfig;
+import de.otto.jlineup.file.FileService;
+import de.otto.jlineup.file.ScreenshotManifestEntry;
+import de.otto.jlineup.file.ScreenshotTimings;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Function;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+/*
+ * Append-only log with one line of json per context and step of every run. It's kept outside of the working directory,
+ * so every run can be compared with the runs before: contexts that became a lot slower or changed their page height
+ * are reported, and the contexts that took longest are started first, so they don't hold up the end of the run.
+ */
+public class RunHistory {
+
+    private static final Gson GSON = new Gson();
+
+    //the median of this many earlier runs of a context is what a run is compared with
+    private static final int RUNS_TO_COMPARE = 10;
+    private static final double SLOWER_FACTOR = 2;
+    //smaller slowdowns are just noise
+    private static final long MIN_SLOWDOWN_MILLIS = 1000;
+    private static final double PAGE_HEIGHT_CHANGE_FACTOR = 1.5;
+
+    private static final List<String> STABILIZE_PHASES = Arrays.asList(ScreenshotTimings.WAIT_AFTER_PAGE_LOAD,
+            ScreenshotTimings.WAIT_FOR_FONTS, ScreenshotTimings.WAIT_AFTER_SCROLL, ScreenshotTimings.WAIT_FOR_NO_ANIMATION);
+
+    private final Path logFile;
+    private List<RunHistoryEntry> entries;
+
+    public RunHistory(Parameters parameters) {
+        this.logFile = parameters.getRunHistoryFile() != null ? Paths.get(parameters.getRunHistoryFile()) : null;
+    }
+
+    public boolean isEnabled() {
+        return logFile != null;
+    }
+
+    //Adds the screenshots of this step to the history and returns the trends compared to earlier runs
+    public List<String> record(Parameters parameters, Config config, FileService fileService, String step,
+                               Map<String, List<ScreenshotComparisonResult>> comparisonResults) throws IOException {
+        final List<RunHistoryEntry> run = entriesOf(parameters, config, fileService, step, comparisonResults, System.currentTimeMillis());
+        final List<String> trends = trendsOf(run);
+        append(run);
+        return trends;
+    }
+
+    //Contexts with the longest median duration of earlier runs first, contexts without history before all others
+    public Comparator<ScreenshotContext> longestContextsFirst() throws IOException {
+        final Map<String, Long> expectedDurations = new HashMap<>();
+        earlierRunsByContext().forEach((context, runs) -> {
+            final Long median = median(runs, entry -> entry.durationMillis);
+            if (median != null) {
+                expectedDurations.put(context, median);
+            }
+        });
+        return Comparator.comparing((ScreenshotContext context) ->
+                expectedDurations.getOrDefault(contextKey(context.url, context.urlSubPath, context.windowWidth), Long.MAX_VALUE)).reversed();
+    }
+
+    static List<RunHistoryEntry> entriesOf(Parameters parameters, Config config, FileService fileService, String step,
+                                           Map<String, List<ScreenshotComparisonResult>> comparisonResults, long runAt) throws IOException {
+        final List<RunHistoryEntry> run = new ArrayList<>();
+        for (Map.Entry<String, UrlConfig> urlConfigEntry : config.urls.entrySet()) {
+            final String url = BrowserUtils.prepareDomain(parameters, urlConfigEntry.getKey());
+            final UrlConfig urlConfig = urlConfigEntry.getValue();
+            for (String path : urlConfig.paths) {
+                final String fullUrlWithPath = BrowserUtils.buildUrl(url, path, urlConfig.envMapping);
+                final Map<Integer, List<ScreenshotManifestEntry>> screenshotsByWidth = new TreeMap<>();
+                for (ScreenshotManifestEntry screenshot : fileService.getScreenshotsForStep(path, url, step)) {
+                    screenshotsByWidth.computeIfAbsent(screenshot.windowWidth, width -> new ArrayList<>()).add(screenshot);
+                }
+                for (Map.Entry<Integer, List<ScreenshotManifestEntry>> screenshotsOfWidth : screenshotsByWidth.entrySet()) {
+                    final int windowWidth = screenshotsOfWidth.getKey();
+                    final List<ScreenshotManifestEntry> screenshots = screenshotsOfWidth.getValue();
+                    run.add(new RunHistoryEntry(runAt, step, url, path, windowWidth, screenshots.size(),
+                            pageHeightOf(screenshots, config), sumOfTimings(screenshots, null), sumOfTimings(screenshots, STABILIZE_PHASES),
+                            differenceMaxOf(comparisonResults != null ? comparisonResults.get(urlConfigEntry.getKey()) : null, fullUrlWithPath, windowWidth)));
+                }
+            }
+        }
+        return run;
+    }
+
+    List<String> trendsOf(List<RunHistoryEntry> run) throws IOException {
+        final Map<String, List<RunHistoryEntry>> earlierRuns = earlierRunsByContext();
+        final List<String> trends = new ArrayList<>();
+        for (RunHistoryEntry entry : run) {
+            final List<RunHistoryEntry> earlier = earlierRuns.get(entry.contextKey());
+            if (earlier == null) {
+                continue;
+            }
+            final String context = BrowserUtils.buildUrl(entry.url, entry.path, null) + " at " + entry.windowWidth + "px";
+            slowdown(entry.durationMillis, median(earlier, e -> e.durationMillis)).ifPresent(factor ->
+                    trends.add(String.format(Locale.ENGLISH, "%s became %.1fx slower (%d ms, usually %d ms)",
+                            context, factor, entry.durationMillis, median(earlier, e -> e.durationMillis))));
+            slowdown(entry.stabilizeMillis, median(earlier, e -> e.stabilizeMillis)).ifPresent(factor ->
+                    trends.add(String.format(Locale.ENGLISH, "%s became %.1fx slower to stabilize (%d ms, usually %d ms)",
+                            context, factor, entry.stabilizeMillis, median(earlier, e -> e.stabilizeMillis))));
+            final Long usualPageHeight = median(earlier, e -> (long) e.pageHeight);
+            if (usualPageHeight != null && usualPageHeight > 0 && entry.pageHeight > 0
+                    && Math.max(entry.pageHeight, usualPageHeight) >= PAGE_HEIGHT_CHANGE_FACTOR * Math.min(entry.pageHeight, usualPageHeight)) {
+                trends.add(String.format(Locale.ENGLISH, "%s has a page height of %d px (usually %d px)", context, entry.pageHeight, usualPageHeight));
+            }
+        }
+        return trends;
+    }
+
+    //One line per entry, written at once, so runs that end at the same time don't mix their lines
+    void append(List<RunHistoryEntry> run) throws IOException {
+        if (run.isEmpty()) {
+            return;
+        }
+        final StringBuilder lines = new StringBuilder();
+        run.forEach(entry -> lines.append(GSON.toJson(entry)).append('\n'));
+        if (logFile.getParent() != null) {
+            Files.createDirectories(logFile.getParent());
+        }
+        Files.write(logFile, lines.toString().getBytes(Charsets.UTF_8), CREATE, APPEND);
+        if (entries != null) {
+            entries.addAll(run);
+        }
+    }
+
+    //Lines that can't be read, i.e. the last line of a run that was killed while writing, are skipped
+    List<RunHistoryEntry> read() throws IOException {
+        if (entries == null) {
+            entries = new ArrayList<>();
+            if (Files.exists(logFile)) {
+                try (BufferedReader reader = Files.newBufferedReader(logFile, Charsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        try {
+                            final RunHistoryEntry entry = GSON.fromJson(line, RunHistoryEntry.class);
+                            if (entry != null) {
+                                entries.add(entry);
+                            }
+                        } catch (JsonParseException e) {
+                            //skipped
+                        }
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    static String contextKey(String url, String path, int windowWidth) {
+        return url + "|||" + path + "|||" + windowWidth;
+    }
+
+    //The last runs of every context, regardless of the step, because both steps take the same screenshots
+    private Map<String, List<RunHistoryEntry>> earlierRunsByContext() throws IOException {
+        final Map<String, List<RunHistoryEntry>> runsByContext = new HashMap<>();
+        for (RunHistoryEntry entry : read()) {
+            runsByContext.computeIfAbsent(entry.contextKey(), key -> new ArrayList<>()).add(entry);
+        }
+        runsByContext.replaceAll((key, runs) -> runs.subList(Math.max(0, runs.size() - RUNS_TO_COMPARE), runs.size()));
+        return runsByContext;
+    }
+
+    private static Optional<Double> slowdown(Long millis, Long usualMillis) {
+        if (millis == null || usualMillis == null || millis - usualMillis < MIN_SLOWDOWN_MILLIS) {
+            return Optional.empty();
+        }
+        final double factor = (double) millis / Math.max(1, usualMillis);
+        return factor >= SLOWER_FACTOR ? Optional.of(factor) : Optional.empty();
+    }
+
+    private static Long median(List<RunHistoryEntry> runs, Function<RunHistoryEntry, Long> value) {
+        final List<Long> values = new ArrayList<>();
+        for (RunHistoryEntry run : runs) {
+            final Long v = value.apply(run);
+            if (v != null) {
+                values.add(v);
+            }
+        }
+        if (values.isEmpty()) {
+            return null;
+        }
+        Collections.sort(values);
+        return values.get((values.size() - 1) / 2);
+    }
+
+    private static int pageHeightOf(List<ScreenshotManifestEntry> screenshots, Config config) {
+        int pageHeight = 0;
+        for (ScreenshotManifestEntry screenshot : screenshots) {
+            pageHeight = Math.max(pageHeight, screenshot.yPosition + (screenshot.height != null ? screenshot.height : config.windowHeight));
+        }
+        return pageHeight;
+    }
+
+    //Sum of the given phases or of all phases if null, null if no screenshot has timings
+    private static Long sumOfTimings(List<ScreenshotManifestEntry> screenshots, List<String> phases) {
+        Long sum = null;
+        for (ScreenshotManifestEntry screenshot : screenshots) {
+            if (screenshot.timings == null) {
+                continue;
+            }
+            for (Map.Entry<String, Long> timing : screenshot.timings.entrySet()) {
+                if (phases == null || phases.contains(timing.getKey())) {
+                    sum = (sum != null ? sum : 0) + timing.getValue();
+                }
+            }
+            if (sum == null) {
+                sum = 0L;
+            }
+        }
+        return sum;
+    }
+
+    private static Double differenceMaxOf(List<ScreenshotComparisonResult> results, String fullUrlWithPath, int windowWidth) {
+        if (results == null) {
+            return null;
+        }
+        Double differenceMax = null;
+        for (ScreenshotComparisonResult result : results) {
+            if (result.url.equals(fullUrlWithPath) && result.width == windowWidth) {
+                differenceMax = Math.max(differenceMax != null ? differenceMax : 0, result.difference);
+            }
+        }
+        return differenceMax;
+    }
+}
@@ -0,0 +1,79 @@
+package de.otto.jlineup.report;
+
+import java.util.Objects;
+
+/*
+ * What is known about one context (url, path and window width) in one step of a run.
+ */
+public class RunHistoryEntry {
+
+    public final long runAt;
+    public final String step;
+    public final String url;
+    public final String path;
+    public final int windowWidth;
+    public final int screenshots;
+    public final int pageHeight;
+    //null if the screenshots have no timings
+    public final Long durationMillis;
+    //time spent waiting for the page to settle, i.e. after page load, for fonts, after scrolling and for animations
+    public final Long stabilizeMillis;
+    //only known in the 'after' step
+    public final Double differenceMax;
+
+    public RunHistoryEntry(long runAt, String step, String url, String path, int windowWidth, int screenshots, int pageHeight,
+                           Long durationMillis, Long stabilizeMillis, Double differenceMax) {
+        this.runAt = runAt;
+        this.step = step;
+        this.url = url;
+        this.path = path;
+        this.windowWidth = windowWidth;
+        this.screenshots = screenshots;
+        this.pageHeight = pageHeight;
+        this.durationMillis = durationMillis;
+        this.stabilizeMillis = stabilizeMillis;
+        this.differenceMax = differenceMax;
+    }
+
+    String contextKey() {
+        return RunHistory.contextKey(url, path, windowWidth);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RunHistoryEntry that = (RunHistoryEntry) o;
+        return runAt == that.runAt &&
+                windowWidth == that.windowWidth &&
+                screenshots == that.screenshots &&
+                pageHeight == that.pageHeight &&
+                Objects.equals(step, that.step) &&
+                Objects.equals(url, that.url) &&
+                Objects.equals(path, that.path) &&
+                Objects.equals(durationMillis, that.durationMillis) &&
+                Objects.equals(stabilizeMillis, that.stabilizeMillis) &&
+                Objects.equals(differenceMax, that.differenceMax);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(runAt, step, url, path, windowWidth, screenshots, pageHeight, durationMillis, stabilizeMillis, differenceMax);
+    }
+
+    @Override
+    public String toString() {
+        return "RunHistoryEntry{" +
+                "runAt=" + runAt +
+                ", step='" + step + '\'' +
+                ", url='" + url + '\'' +
+                ", path='" + path + '\'' +
+                ", windowWidth=" + windowWidth +
+                ", screenshots=" + screenshots +
+                ", pageHeight=" + pageHeight +
+                ", durationMillis=" + durationMillis +
+                ", stabilizeMillis=" + stabilizeMillis +
+                ", differenceMax=" + differenceMax +
+                '}';
+    }
+}
@@ -1,5 +1,7 @@
 package de.otto.jlineup.report;
 
+import java.util.Map;
+
 public class ScreenshotComparisonResult {
 
     public final String url;
@@ -9,8 +11,14 @@ public class ScreenshotComparisonResult {
     public final String screenshotBeforeFileName;
     public final String screenshotAfterFileName;
     public final String differenceImageFileName;
+    //only in report format 3, measured values are no part of equals() and hashCode()
+    public final Timings<Long> timings;
 
     public ScreenshotComparisonResult(String url, int width, int verticalScrollPosition, double difference, String screenshotBeforeFileName, String screenshotAfterFileName, String differenceImageFileName) {
+        this(url, width, verticalScrollPosition, difference, screenshotBeforeFileName, screenshotAfterFileName, differenceImageFileName, null);
+    }
+
+    public ScreenshotComparisonResult(String url, int width, int verticalScrollPosition, double difference, String screenshotBeforeFileName, String screenshotAfterFileName, String differenceImageFileName, Timings<Long> timings) {
         this.url = url;
         this.width = width;
         this.verticalScrollPosition = verticalScrollPosition;
@@ -18,6 +26,12 @@ public class ScreenshotComparisonResult {
         this.screenshotBeforeFileName = screenshotBeforeFileName;
         this.screenshotAfterFileName = screenshotAfterFileName;
         this.differenceImageFileName = differenceImageFileName;
+        this.timings = timings;
+    }
+
+    public ScreenshotComparisonResult withTimings(Map<String, Long> beforeTimings, Map<String, Long> afterTimings, Map<String, Long> comparisonTimings) {
+        return new ScreenshotComparisonResult(url, width, verticalScrollPosition, difference, screenshotBeforeFileName, screenshotAfterFileName, differenceImageFileName,
+                new Timings<>(beforeTimings, afterTimings, comparisonTimings));
     }
 
     public static ScreenshotComparisonResult noBeforeImageComparisonResult(String url, int width, int verticalScrollPosition, String screenshotAfterFileName) {
@@ -72,6 +86,7 @@ public class ScreenshotComparisonResult {
                 ", screenshotBeforeFileName='" + screenshotBeforeFileName + '\'' +
                 ", screenshotAfterFileName='" + screenshotAfterFileName + '\'' +
                 ", differenceImageFileName='" + differenceImageFileName + '\'' +
+                ", timings=" + timings +
                 '}';
     }
 }
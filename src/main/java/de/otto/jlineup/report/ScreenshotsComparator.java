@@ -2,42 +2,63 @@ package de.otto.jlineup.report;
 
 import com.google.common.annotations.VisibleForTesting;
 import de.otto.jlineup.browser.BrowserUtils;
+import de.otto.jlineup.browser.ScreenshotContext;
+import de.otto.jlineup.browser.ScreenshotListener;
 import de.otto.jlineup.config.Config;
 import de.otto.jlineup.config.Parameters;
 import de.otto.jlineup.config.UrlConfig;
 import de.otto.jlineup.file.FileService;
+import de.otto.jlineup.file.ScreenshotManifestEntry;
+import de.otto.jlineup.file.ScreenshotTimings;
+import de.otto.jlineup.image.ImageRowReader;
 import de.otto.jlineup.image.ImageService;
+import de.otto.jlineup.image.TileHashes;
+import de.otto.jlineup.metrics.JLineupMetrics;
+import de.otto.jlineup.metrics.JLineupTrace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.IIOException;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.io.InterruptedIOException;
+import java.nio.file.NoSuchFileException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static de.otto.jlineup.file.FileService.*;
 
-public class ScreenshotsComparator {
+public class ScreenshotsComparator implements ScreenshotListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(ScreenshotsComparator.class);
 
-    private static final String BEFORE_MATCHER = DIVIDER + BEFORE + PNG_EXTENSION;
-    private static final String AFTER_MATCHER = DIVIDER + AFTER + PNG_EXTENSION;
+    private static final String DIFFERENCE = "DIFFERENCE";
+    private static final int TIMINGS_REPORT_FORMAT = 3;
 
     final private Parameters parameters;
     final private Config config;
     final private FileService fileService;
     final private ImageService imageService;
+    final private ComparisonResultCache comparisonResultCache;
+
+    //comparisons that were started while the browser was still taking screenshots, by after file name
+    final private Map<String, Future<ScreenshotComparisonResult>> earlyComparisons = new ConcurrentHashMap<>();
+    final private Gate gate = new Gate();
+    final private JLineupMetrics metrics = JLineupMetrics.get();
+    final private JLineupTrace trace = JLineupTrace.get();
+    private ComparisonScheduler scheduler;
+    private Map<String, ScreenshotComparisonResult> gateResultsWithoutDifference;
 
     public ScreenshotsComparator(Parameters parameters, Config config, FileService fileService, ImageService imageService) {
         this.parameters = parameters;
         this.config = config;
         this.fileService = fileService;
         this.imageService = imageService;
+        this.comparisonResultCache = new ComparisonResultCache(parameters, config, fileService);
     }
 
     public Map<String, List<ScreenshotComparisonResult>> compare() throws IOException {
@@ -47,118 +68,456 @@ public class ScreenshotsComparator {
             return null;
         }
         Map<String, List<ScreenshotComparisonResult>> results = new HashMap<>();
-        for (Map.Entry<String, UrlConfig> urlConfigEntry : config.urls.entrySet()) {
-            List<ScreenshotComparisonResult> screenshotComparisonResults = new ArrayList<>();
-            String url = BrowserUtils.prepareDomain(parameters, urlConfigEntry.getKey());
-            UrlConfig urlConfig = urlConfigEntry.getValue();
-            LOG.debug("Url: {}", url);
-            for (String path : urlConfig.paths) {
-                LOG.debug("Path: {}", path);
-                String fullUrlWithPath = BrowserUtils.buildUrl(url, path, urlConfig.envMapping);
-
-                final List<String> beforeFileNamesList = fileService.getFilenamesForStep(path, url, BEFORE);
-                final List<String> afterFileNamesList = new ArrayList<>();
-                beforeFileNamesList.forEach(filename -> afterFileNamesList.add(switchAfterWithBeforeInFileName(filename)));
-
-                final Set<String> beforeFileNamesSet = new HashSet<>(beforeFileNamesList);
-                final Set<String> afterFileNamesSet = new HashSet<>(fileService.getFilenamesForStep(path, url, AFTER));
-
-                //we need after files that have no before file in the final report
-                final List<String> afterFileNamesWithNoBeforeFile = new ArrayList<>();
-                afterFileNamesSet.stream()
-                        .filter(name -> !beforeFileNamesSet.contains(switchAfterWithBeforeInFileName(name)))
-                        .forEach(afterFileNamesWithNoBeforeFile::add);
-
-                for (int i = 0; i < beforeFileNamesList.size(); i++) {
-                    String beforeFileName = beforeFileNamesList.get(i);
-                    String afterFileName = afterFileNamesList.get(i);
-
-                    LOG.debug("Comparing '{}' with '{}'", beforeFileName, afterFileName);
-
-                    int yPosition = extractVerticalScrollPositionFromFileName(beforeFileName);
-                    int windowWidth = extractWindowWidthFromFileName(beforeFileName);
-
-                    BufferedImage imageBefore;
-                    try {
-                        imageBefore = fileService.readScreenshot(beforeFileName);
-                    } catch (IIOException e) {
-                        System.err.println("Can't read screenshot of 'before' step. Did you run JLineup with '--step before' parameter before trying to run '--step after' or --compare?");
-                        throw e;
+        Map<String, Map<String, Future<ScreenshotComparisonResult>>> comparisons = new HashMap<>();
+        final ComparisonScheduler scheduler = getScheduler();
+        try {
+            for (Map.Entry<String, UrlConfig> urlConfigEntry : config.urls.entrySet()) {
+                if (isGateClosed()) {
+                    break;
+                }
+                List<ScreenshotComparisonResult> screenshotComparisonResults = new ArrayList<>();
+                //by file name of the after screenshot
+                Map<String, Future<ScreenshotComparisonResult>> screenshotComparisons = new LinkedHashMap<>();
+                String url = BrowserUtils.prepareDomain(parameters, urlConfigEntry.getKey());
+                UrlConfig urlConfig = urlConfigEntry.getValue();
+                LOG.debug("Url: {}", url);
+                for (String path : urlConfig.paths) {
+                    if (isGateClosed()) {
+                        break;
                     }
+                    LOG.debug("Path: {}", path);
+                    String fullUrlWithPath = BrowserUtils.buildUrl(url, path, urlConfig.envMapping);
 
-                    BufferedImage imageAfter;
-                    try {
-                        imageAfter = fileService.readScreenshot(afterFileName);
-                    } catch (IIOException e) {
-                        screenshotComparisonResults.add(ScreenshotComparisonResult.noAfterImageComparisonResult(fullUrlWithPath, windowWidth, yPosition, buildRelativePathFromReportDir(beforeFileName)));
-                        continue;
+                    //after screenshots are paired with before screenshots by their position, the remaining ones have no before screenshot
+                    final Map<String, ScreenshotManifestEntry> afterScreenshotsByPosition = new LinkedHashMap<>();
+                    fileService.getScreenshotsForStep(path, url, AFTER).forEach(screenshot -> afterScreenshotsByPosition.put(positionOf(screenshot), screenshot));
+
+                    for (ScreenshotManifestEntry beforeScreenshot : fileService.getScreenshotsForStep(path, url, BEFORE)) {
+                        if (isGateClosed()) {
+                            break;
+                        }
+                        final ScreenshotManifestEntry afterScreenshot = afterScreenshotsByPosition.remove(positionOf(beforeScreenshot));
+                        if (afterScreenshot == null) {
+                            final ScreenshotComparisonResult result = addTimings(ScreenshotComparisonResult.noAfterImageComparisonResult(fullUrlWithPath,
+                                    beforeScreenshot.windowWidth, beforeScreenshot.yPosition, buildRelativePathFromReportDir(beforeScreenshot)),
+                                    beforeScreenshot, null, null);
+                            gate.check(result, urlConfig.maxDiff);
+                            screenshotComparisonResults.add(result);
+                            continue;
+                        }
+                        final Future<ScreenshotComparisonResult> earlyComparison = earlyComparisons.remove(afterScreenshot.fileName);
+                        if (earlyComparison != null) {
+                            screenshotComparisons.put(afterScreenshot.fileName, earlyComparison);
+                        } else {
+                            screenshotComparisons.put(afterScreenshot.fileName, scheduler.submit(estimateComparisonMemory(beforeScreenshot, afterScreenshot),
+                                    gated(afterScreenshot.fileName, urlConfig.maxDiff, () -> compareScreenshots(scheduler, url, path, fullUrlWithPath, beforeScreenshot, afterScreenshot, urlConfig.maxDiff))));
+                        }
                     }
 
-                    ImageService.ImageComparisonResult imageComparisonResult = imageService.compareImages(imageBefore, imageAfter, config.windowHeight);
-                    String differenceImageFileName = null;
-                    if (imageComparisonResult.getDifference() > 0 && imageComparisonResult.getDifferenceImage().isPresent()) {
-                        differenceImageFileName = Paths.get(fileService.writeScreenshot(imageComparisonResult.getDifferenceImage().orElse(null), url, path, windowWidth, yPosition, "DIFFERENCE")).getFileName().toString();
+                    if (!isGateClosed()) {
+                        addMissingBeforeFilesToResults(screenshotComparisonResults, fullUrlWithPath, afterScreenshotsByPosition.values(), urlConfig.maxDiff);
+                    }
+                }
+                results.put(urlConfigEntry.getKey(), screenshotComparisonResults);
+                comparisons.put(urlConfigEntry.getKey(), screenshotComparisons);
+            }
+            if (parameters.isGate()) {
+                gate.await();
+            }
+            for (Map.Entry<String, Map<String, Future<ScreenshotComparisonResult>>> comparisonsOfUrl : comparisons.entrySet()) {
+                for (Map.Entry<String, Future<ScreenshotComparisonResult>> comparison : comparisonsOfUrl.getValue().entrySet()) {
+                    //comparisons that are still running when the gate is closed are left out, except the ones that closed it
+                    if (!isGateClosed() || comparison.getValue().isDone()) {
+                        results.get(comparisonsOfUrl.getKey()).add(ComparisonScheduler.getResult(comparison.getValue()));
+                    } else if (gate.getClosingResult(comparison.getKey()) != null) {
+                        results.get(comparisonsOfUrl.getKey()).add(gate.getClosingResult(comparison.getKey()));
                     }
-                    screenshotComparisonResults.add(new ScreenshotComparisonResult(fullUrlWithPath, windowWidth, yPosition, imageComparisonResult.getDifference(),
-                            buildRelativePathFromReportDir(beforeFileName),
-                            buildRelativePathFromReportDir(afterFileName),
-                            buildRelativePathFromReportDir(differenceImageFileName)));
                 }
-
-                addMissingBeforeFilesToResults(screenshotComparisonResults, fullUrlWithPath, afterFileNamesWithNoBeforeFile);
             }
-            screenshotComparisonResults.sort(Comparator.<ScreenshotComparisonResult, String>comparing(r -> r.url).thenComparing(r -> r.width).thenComparing(r -> r.verticalScrollPosition));
-            results.put(urlConfigEntry.getKey(), screenshotComparisonResults);
+            scheduler.awaitWrites();
+        } finally {
+            closeScheduler();
         }
+        results.values().forEach(screenshotComparisonResults -> screenshotComparisonResults.sort(Comparator.<ScreenshotComparisonResult, String>comparing(r -> r.url).thenComparing(r -> r.width).thenComparing(r -> r.verticalScrollPosition)));
         return results;
     }
 
+    //Compares every after screenshot as soon as it's written, so the comparison runs while the browser continues.
+    //compare() picks up the results, after screenshots without before screenshot are left to compare().
+    //The browser thread doesn't wait for memory of the comparison, the scheduler's dispatcher does.
+    @Override
+    public void screenshotWritten(ScreenshotContext screenshotContext, int yPosition, String fileName) throws IOException {
+        if (screenshotContext.before) {
+            return;
+        }
+        final ScreenshotManifestEntry beforeScreenshot = fileService.getScreenshot(screenshotContext.url, screenshotContext.urlSubPath, screenshotContext.windowWidth, yPosition, BEFORE);
+        final ScreenshotManifestEntry afterScreenshot = fileService.getScreenshot(screenshotContext.url, screenshotContext.urlSubPath, screenshotContext.windowWidth, yPosition, AFTER);
+        if (beforeScreenshot == null || afterScreenshot == null) {
+            return;
+        }
+        final String fullUrlWithPath = BrowserUtils.buildUrl(screenshotContext.url, screenshotContext.urlSubPath, screenshotContext.urlConfig.envMapping);
+        final ComparisonScheduler scheduler = getScheduler();
+        LOG.debug("Starting comparison of '{}' while taking screenshots", fileName);
+        earlyComparisons.put(afterScreenshot.fileName, scheduler.submitWithoutWaiting(estimateComparisonMemory(beforeScreenshot, afterScreenshot),
+                gated(afterScreenshot.fileName, screenshotContext.urlConfig.maxDiff, () -> compareScreenshots(scheduler, screenshotContext.url, screenshotContext.urlSubPath, fullUrlWithPath, beforeScreenshot, afterScreenshot, screenshotContext.urlConfig.maxDiff))));
+    }
+
+    //In gate mode, every comparison is checked against the max diff of its url as soon as it's finished
+    private Callable<ScreenshotComparisonResult> gated(String afterFileName, double maxDiff, Callable<ScreenshotComparisonResult> comparison) {
+        if (!parameters.isGate()) {
+            return comparison;
+        }
+        gate.started();
+        return () -> {
+            try {
+                final ScreenshotComparisonResult result = comparison.call();
+                gate.check(afterFileName, result, maxDiff);
+                return result;
+            } finally {
+                gate.finished();
+            }
+        };
+    }
+
+    //Decoding shows up on the trace of the thread that decodes
+    private BufferedImage readScreenshot(String fileName) throws IOException {
+        final long decodeStart = System.nanoTime();
+        try {
+            return fileService.readScreenshot(fileName);
+        } finally {
+            trace.span("decodeImage", JLineupTrace.CATEGORY_PHASE, decodeStart, fileName);
+        }
+    }
+
+    private boolean isGateClosed() {
+        return parameters.isGate() && gate.isMaxDiffExceeded();
+    }
+
+    private static String positionOf(ScreenshotManifestEntry screenshot) {
+        return screenshot.windowWidth + DIVIDER + screenshot.yPosition;
+    }
+
+    private synchronized ComparisonScheduler getScheduler() {
+        if (scheduler == null) {
+            scheduler = new ComparisonScheduler(parameters.getCompareThreads(), parameters.getCompareMemoryBudget());
+        }
+        return scheduler;
+    }
+
+    private synchronized void closeScheduler() {
+        if (scheduler != null) {
+            scheduler.close();
+            scheduler = null;
+        }
+        earlyComparisons.clear();
+    }
+
+    //Memory that's needed for a comparison, unless the images are compared in bands: both decoded images, their pixels
+    //as int arrays from getRGB, and the difference as int array and as image, with 4 bytes per pixel each.
+    //Screenshots that can't be read take no memory, because they aren't decoded.
+    @VisibleForTesting
+    long estimateComparisonMemory(ScreenshotManifestEntry beforeScreenshot, ScreenshotManifestEntry afterScreenshot) {
+        final Dimension before = sizeOf(beforeScreenshot);
+        final Dimension after = sizeOf(afterScreenshot);
+        if (before == null || after == null) {
+            return 0;
+        }
+        if (shouldCompareInBands(beforeScreenshot, afterScreenshot)) {
+            return ImageService.BAND_COMPARISON_MEMORY;
+        }
+        final long maxPixels = (long) Math.max(before.width, after.width) * Math.max(before.height, after.height);
+        return 2 * 4L * ((long) before.width * before.height + (long) after.width * after.height + maxPixels);
+    }
+
+    private Dimension sizeOf(ScreenshotManifestEntry screenshot) {
+        if (screenshot.width != null && screenshot.height != null) {
+            return new Dimension(screenshot.width, screenshot.height);
+        }
+        return fileService.readScreenshotSize(screenshot.fileName);
+    }
+
+    private ScreenshotComparisonResult compareScreenshots(ComparisonScheduler scheduler, String url, String path, String fullUrlWithPath,
+                                                          ScreenshotManifestEntry beforeScreenshot, ScreenshotManifestEntry afterScreenshot, double maxDiff) throws IOException {
+        final long comparisonStart = System.nanoTime();
+        final ScreenshotTimings comparisonTimings = new ScreenshotTimings();
+        final ScreenshotComparisonResult result = compareScreenshots(scheduler, url, path, fullUrlWithPath, beforeScreenshot, afterScreenshot, maxDiff, comparisonTimings);
+        //only pairs that were compared pixel by pixel count for the compare throughput
+        final boolean compared = comparisonTimings.toMap().containsKey(ScreenshotTimings.COMPARE);
+        metrics.comparisonFinished(compared && beforeScreenshot.width != null && beforeScreenshot.height != null
+                ? (long) beforeScreenshot.width * beforeScreenshot.height : 0);
+        trace.span("comparison", JLineupTrace.CATEGORY_COMPARISON, comparisonStart, afterScreenshot.fileName);
+        return addTimings(result, beforeScreenshot, afterScreenshot, comparisonTimings);
+    }
+
+    //Report format 3 has the timings of both screenshots and of their comparison
+    private ScreenshotComparisonResult addTimings(ScreenshotComparisonResult result, ScreenshotManifestEntry beforeScreenshot,
+                                                  ScreenshotManifestEntry afterScreenshot, ScreenshotTimings comparisonTimings) {
+        if (config.reportFormat == null || config.reportFormat < TIMINGS_REPORT_FORMAT) {
+            return result;
+        }
+        return result.withTimings(beforeScreenshot != null ? beforeScreenshot.timings : null,
+                afterScreenshot != null ? afterScreenshot.timings : null,
+                comparisonTimings != null ? comparisonTimings.toMap() : null);
+    }
+
+    //In gate mode, no difference image is created and counting stops as soon as maxDiff is exceeded
+    private ScreenshotComparisonResult compareScreenshots(ComparisonScheduler scheduler, String url, String path, String fullUrlWithPath,
+                                                          ScreenshotManifestEntry beforeScreenshot, ScreenshotManifestEntry afterScreenshot,
+                                                          double maxDiff, ScreenshotTimings comparisonTimings) throws IOException {
+
+        final String beforeFileName = beforeScreenshot.fileName;
+        final String afterFileName = afterScreenshot.fileName;
+        LOG.debug("Comparing '{}' with '{}'", beforeFileName, afterFileName);
+
+        int yPosition = beforeScreenshot.yPosition;
+        int windowWidth = beforeScreenshot.windowWidth;
+
+        if (beforeScreenshot.hash != null && beforeScreenshot.hash.equals(afterScreenshot.hash)) {
+            LOG.debug("Pixel hashes of '{}' and '{}' are equal, no need to compare the images", beforeFileName, afterFileName);
+            return new ScreenshotComparisonResult(fullUrlWithPath, windowWidth, yPosition, 0d,
+                    buildRelativePathFromReportDir(beforeScreenshot),
+                    buildRelativePathFromReportDir(afterScreenshot),
+                    null);
+        }
+
+        if (parameters.isReport() && getGateResultsWithoutDifference().containsKey(GateResults.positionOf(fullUrlWithPath, windowWidth, yPosition))) {
+            LOG.debug("'{}' and '{}' had no difference in the gate run", beforeFileName, afterFileName);
+            return new ScreenshotComparisonResult(fullUrlWithPath, windowWidth, yPosition, 0d,
+                    buildRelativePathFromReportDir(beforeScreenshot),
+                    buildRelativePathFromReportDir(afterScreenshot),
+                    null);
+        }
+
+        final String cacheKey = comparisonResultCache.keyOf(beforeScreenshot, afterScreenshot);
+        if (cacheKey != null) {
+            final ScreenshotComparisonResult cachedResult = getCachedComparisonResult(cacheKey, url, path, fullUrlWithPath, beforeScreenshot, afterScreenshot);
+            if (cachedResult != null) {
+                return cachedResult;
+            }
+        }
+
+        if (shouldCompareInBands(beforeScreenshot, afterScreenshot)) {
+            try (ImageRowReader imageBefore = openScreenshotRowReaderIfPossible(beforeFileName);
+                 ImageRowReader imageAfter = openScreenshotRowReaderIfPossible(afterFileName)) {
+                if (imageBefore != null && imageAfter != null) {
+                    final long compareStart = System.nanoTime();
+                    final ScreenshotComparisonResult result = compareScreenshotsInBands(url, path, fullUrlWithPath, beforeScreenshot, afterScreenshot, windowWidth, yPosition, imageBefore, imageAfter, cacheKey, maxDiff);
+                    //the rows are read while they are compared, so decoding is part of the comparison here
+                    comparisonTimings.addSince(ScreenshotTimings.COMPARE, compareStart);
+                    return result;
+                }
+            }
+        }
+
+        final long decodeStart = System.nanoTime();
+        final Future<BufferedImage> imageAfterDecoding = scheduler.decode(() -> readScreenshot(afterFileName));
+        BufferedImage imageBefore;
+        try {
+            imageBefore = readScreenshot(beforeFileName);
+        } catch (IIOException e) {
+            imageAfterDecoding.cancel(true);
+            System.err.println("Can't read screenshot of 'before' step. Did you run JLineup with '--step before' parameter before trying to run '--step after' or --compare?");
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            imageAfterDecoding.cancel(true);
+            throw e;
+        }
+
+        BufferedImage imageAfter;
+        try {
+            imageAfter = ComparisonScheduler.getResult(imageAfterDecoding);
+        } catch (IIOException e) {
+            return ScreenshotComparisonResult.noAfterImageComparisonResult(fullUrlWithPath, windowWidth, yPosition, buildRelativePathFromReportDir(beforeScreenshot));
+        }
+        comparisonTimings.addSince(ScreenshotTimings.DECODE, decodeStart);
+
+        final long compareStart = System.nanoTime();
+        final TileHashes tileHashesBefore = fileService.readTileHashes(beforeFileName);
+        final TileHashes tileHashesAfter = fileService.readTileHashes(afterFileName);
+        ImageService.ImageComparisonResult imageComparisonResult = parameters.isGate()
+                ? imageService.countDifference(imageBefore, imageAfter, config.windowHeight, tileHashesBefore, tileHashesAfter, maxDiff)
+                : imageService.compareImages(imageBefore, imageAfter, config.windowHeight, tileHashesBefore, tileHashesAfter);
+        comparisonTimings.addSince(ScreenshotTimings.COMPARE, compareStart);
+        final double difference = imageComparisonResult.getDifference();
+        String differenceImageFileName = null;
+        if (parameters.isGate()) {
+            //without difference image, only results without difference are complete
+            if (difference == 0) {
+                cacheComparisonResult(cacheKey, difference, null);
+            }
+        } else if (difference > 0 && imageComparisonResult.getDifferenceImage().isPresent()) {
+            final BufferedImage differenceImage = imageComparisonResult.getDifferenceImage().get();
+            final String fileName = fileService.generateScreenshotFileName(url, path, windowWidth, yPosition, DIFFERENCE);
+            differenceImageFileName = fileName;
+            scheduler.writeAsync(4L * differenceImage.getWidth() * differenceImage.getHeight(), () -> {
+                fileService.writeScreenshot(differenceImage, url, path, windowWidth, yPosition, DIFFERENCE);
+                cacheComparisonResult(cacheKey, difference, fileName);
+                return null;
+            });
+        } else {
+            cacheComparisonResult(cacheKey, difference, null);
+        }
+        return new ScreenshotComparisonResult(fullUrlWithPath, windowWidth, yPosition, imageComparisonResult.getDifference(),
+                buildRelativePathFromReportDir(beforeScreenshot),
+                buildRelativePathFromReportDir(afterScreenshot),
+                buildRelativePathFromReportDir(differenceImageFileName));
+    }
+
+    private ImageRowReader openScreenshotRowReaderIfPossible(String fileName) {
+        try {
+            return fileService.openScreenshotRowReader(fileName);
+        } catch (IOException e) {
+            //missing screenshots or pngs that can't be read row by row are handled by the default comparison
+            return null;
+        }
+    }
+
+    //Raw screenshots are always compared in bands, because their rows can be read without any decoding.
+    //Very high png screenshots (i.e. full page screenshots) are compared in bands to keep the memory usage bounded.
+    //The sizes come from the manifest or the png header, so no reader is opened for pairs that are decoded anyway
+    private boolean shouldCompareInBands(ScreenshotManifestEntry beforeScreenshot, ScreenshotManifestEntry afterScreenshot) {
+        final Dimension before = sizeOf(beforeScreenshot);
+        final Dimension after = sizeOf(afterScreenshot);
+        if (before == null || after == null || before.width != after.width) {
+            return false;
+        }
+        return (fileService.isRawScreenshot(beforeScreenshot.fileName) && fileService.isRawScreenshot(afterScreenshot.fileName))
+                || (long) before.width * Math.max(before.height, after.height) > ImageService.BAND_COMPARISON_PIXEL_THRESHOLD;
+    }
+
+    private ScreenshotComparisonResult compareScreenshotsInBands(String url, String path, String fullUrlWithPath, ScreenshotManifestEntry beforeScreenshot, ScreenshotManifestEntry afterScreenshot, int windowWidth, int yPosition,
+                                                                 ImageRowReader imageBefore, ImageRowReader imageAfter, String cacheKey, double maxDiff) throws IOException {
+        LOG.debug("Comparing '{}' with '{}' in bands", beforeScreenshot.fileName, afterScreenshot.fileName);
+        final ImageService.ImageComparisonResult imageComparisonResult = imageService.compareImagesInBands(imageBefore, imageAfter, config.windowHeight,
+                parameters.isGate() ? null : (width, height) -> fileService.openScreenshotPngWriter(url, path, windowWidth, yPosition, DIFFERENCE, width, height), maxDiff);
+        String differenceImageFileName = null;
+        if (imageComparisonResult.getDifference() > 0 && !parameters.isGate()) {
+            differenceImageFileName = fileService.generateScreenshotFileName(url, path, windowWidth, yPosition, DIFFERENCE);
+        }
+        if (imageComparisonResult.getDifference() == 0 || !parameters.isGate()) {
+            cacheComparisonResult(cacheKey, imageComparisonResult.getDifference(), differenceImageFileName);
+        }
+        return new ScreenshotComparisonResult(fullUrlWithPath, windowWidth, yPosition, imageComparisonResult.getDifference(),
+                buildRelativePathFromReportDir(beforeScreenshot),
+                buildRelativePathFromReportDir(afterScreenshot),
+                buildRelativePathFromReportDir(differenceImageFileName));
+    }
+
+    //The result of an earlier comparison of the same pair, the cached difference image is copied to the screenshots directory
+    private ScreenshotComparisonResult getCachedComparisonResult(String cacheKey, String url, String path, String fullUrlWithPath,
+                                                                 ScreenshotManifestEntry beforeScreenshot, ScreenshotManifestEntry afterScreenshot) throws IOException {
+        final ComparisonResultCache.CachedComparison cachedComparison = comparisonResultCache.get(cacheKey);
+        if (cachedComparison == null) {
+            return null;
+        }
+        String differenceImageFileName = null;
+        if (cachedComparison.differenceImage != null && !parameters.isGate()) {
+            differenceImageFileName = fileService.generateScreenshotFileName(url, path, beforeScreenshot.windowWidth, beforeScreenshot.yPosition, DIFFERENCE);
+            try {
+                fileService.copyScreenshot(cachedComparison.differenceImage, differenceImageFileName);
+            } catch (NoSuchFileException e) {
+                //evicted by another process in the meantime
+                return null;
+            }
+        }
+        LOG.debug("Using cached comparison result of '{}' and '{}'", beforeScreenshot.fileName, afterScreenshot.fileName);
+        return new ScreenshotComparisonResult(fullUrlWithPath, beforeScreenshot.windowWidth, beforeScreenshot.yPosition, cachedComparison.difference,
+                buildRelativePathFromReportDir(beforeScreenshot),
+                buildRelativePathFromReportDir(afterScreenshot),
+                buildRelativePathFromReportDir(differenceImageFileName));
+    }
+
+    //A result that can't be cached is no reason to fail the comparison
+    private void cacheComparisonResult(String cacheKey, double difference, String differenceImageFileName) {
+        if (cacheKey == null) {
+            return;
+        }
+        try {
+            comparisonResultCache.put(cacheKey, difference, differenceImageFileName);
+        } catch (IOException e) {
+            LOG.warn("Could not cache comparison result: {}", e.getMessage());
+        }
+    }
+
+    //Deduplicated screenshots are shown from the object store
+    private String buildRelativePathFromReportDir(ScreenshotManifestEntry screenshot) {
+        return buildRelativePathFromReportDir(screenshot.storedAs != null ? screenshot.storedAs : screenshot.fileName);
+    }
+
     private String buildRelativePathFromReportDir(String imageFileName) {
         return imageFileName != null ? fileService.getRelativePathFromReportDirToScreenshotsDir() + imageFileName : null;
     }
 
-    private void addMissingBeforeFilesToResults(List<ScreenshotComparisonResult> screenshotComparisonResults, String fullUrlWithPath, List<String> afterFileNamesWithNoBeforeFile) {
-        screenshotComparisonResults.addAll(afterFileNamesWithNoBeforeFile
+    private void addMissingBeforeFilesToResults(List<ScreenshotComparisonResult> screenshotComparisonResults, String fullUrlWithPath, Collection<ScreenshotManifestEntry> afterScreenshotsWithNoBeforeScreenshot, double maxDiff) {
+        final List<ScreenshotComparisonResult> results = afterScreenshotsWithNoBeforeScreenshot
                 .stream()
-                .map(remainingFile -> ScreenshotComparisonResult.noBeforeImageComparisonResult(
+                .map(afterScreenshot -> addTimings(ScreenshotComparisonResult.noBeforeImageComparisonResult(
                         fullUrlWithPath,
-                        extractWindowWidthFromFileName(remainingFile),
-                        extractVerticalScrollPositionFromFileName(remainingFile),
-                        buildRelativePathFromReportDir(remainingFile)))
-                .collect(Collectors.toList()));
+                        afterScreenshot.windowWidth,
+                        afterScreenshot.yPosition,
+                        buildRelativePathFromReportDir(afterScreenshot)),
+                        null, afterScreenshot, null))
+                .collect(Collectors.toList());
+        results.forEach(result -> gate.check(result, maxDiff));
+        screenshotComparisonResults.addAll(results);
     }
 
-    @VisibleForTesting
-    static String switchAfterWithBeforeInFileName(String filename) {
-        if (filename.contains(BEFORE_MATCHER)) {
-            return filename.replace(BEFORE_MATCHER, AFTER_MATCHER);
-        } else if (filename.contains(AFTER_MATCHER)) {
-            return filename.replace(AFTER_MATCHER, BEFORE_MATCHER);
+    private synchronized Map<String, ScreenshotComparisonResult> getGateResultsWithoutDifference() throws IOException {
+        if (gateResultsWithoutDifference == null) {
+            gateResultsWithoutDifference = new GateResults(fileService).readResultsWithoutDifference();
         }
-        return filename;
+        return gateResultsWithoutDifference;
     }
 
-    final private static Pattern FIND_VERTICAL_SCROLL_POSITION_PATTERN = Pattern.compile("_([0-9]*?)_\\D*$");
+    //Keeps track of the running comparisons in gate mode, the gate is closed by the first difference above max-diff
+    private static class Gate {
 
-    @VisibleForTesting
-    static int extractVerticalScrollPositionFromFileName(String fileName) {
-        Matcher matcher = FIND_VERTICAL_SCROLL_POSITION_PATTERN.matcher(fileName);
-        if (matcher.find()) {
-            String group = matcher.group(1);
-            return Integer.parseInt(group);
+        private int runningComparisons = 0;
+        private boolean maxDiffExceeded = false;
+        //the gate is closed before the future of the comparison is done, so compare() takes these results from here
+        private final Map<String, ScreenshotComparisonResult> closingResults = new HashMap<>();
+
+        synchronized void started() {
+            runningComparisons++;
+        }
+
+        synchronized void finished() {
+            runningComparisons--;
+            notifyAll();
         }
-        return 0;
-    }
 
-    final private static Pattern FIND_WINDOW_WIDTH_PATTERN = Pattern.compile("([0-9]*?)_[0-9]*?_\\D*$");
+        synchronized void check(ScreenshotComparisonResult result, double maxDiff) {
+            if (result.difference > maxDiff) {
+                maxDiffExceeded = true;
+                notifyAll();
+            }
+        }
 
-    @VisibleForTesting
-    static int extractWindowWidthFromFileName(String fileName) {
-        Matcher matcher = FIND_WINDOW_WIDTH_PATTERN.matcher(fileName);
-        if (matcher.find()) {
-            String group = matcher.group(1);
-            return Integer.parseInt(group);
+        synchronized void check(String afterFileName, ScreenshotComparisonResult result, double maxDiff) {
+            if (result.difference > maxDiff) {
+                closingResults.put(afterFileName, result);
+            }
+            check(result, maxDiff);
+        }
+
+        synchronized ScreenshotComparisonResult getClosingResult(String afterFileName) {
+            return closingResults.get(afterFileName);
+        }
+
+        synchronized boolean isMaxDiffExceeded() {
+            return maxDiffExceeded;
+        }
+
+        //Waits until all comparisons are finished or one of them closes the gate
+        synchronized void await() throws InterruptedIOException {
+            while (!maxDiffExceeded && runningComparisons > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for comparisons");
+                }
+            }
         }
-        return 0;
     }
 }
@@ -5,10 +5,17 @@ public class Summary {
     public final boolean error;
     public final double differenceSum;
     public final double differenceMax;
+    //only in report format 3
+    public final Timings<TimingStatistics> timings;
 
     public Summary(boolean error, double difference, double differenceMax) {
+        this(error, difference, differenceMax, null);
+    }
+
+    public Summary(boolean error, double difference, double differenceMax, Timings<TimingStatistics> timings) {
         this.error = error;
         this.differenceSum = difference;
         this.differenceMax = differenceMax;
+        this.timings = timings;
     }
 }
@@ -0,0 +1,65 @@
+package de.otto.jlineup.report;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+//Aggregated milliseconds of a phase over all screenshots, the total shows which phase dominates a run
+public class TimingStatistics {
+
+    public final int count;
+    public final long total;
+    public final long p50;
+    public final long p95;
+    public final long max;
+
+    public TimingStatistics(int count, long total, long p50, long p95, long max) {
+        this.count = count;
+        this.total = total;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.max = max;
+    }
+
+    public static TimingStatistics of(List<Long> millis) {
+        final List<Long> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        final long total = sorted.stream().mapToLong(Long::longValue).sum();
+        return new TimingStatistics(sorted.size(), total, percentile(sorted, 50), percentile(sorted, 95), sorted.get(sorted.size() - 1));
+    }
+
+    //nearest rank
+    private static long percentile(List<Long> sorted, int percentile) {
+        final int rank = (int) Math.ceil(percentile / 100d * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TimingStatistics that = (TimingStatistics) o;
+        return count == that.count &&
+                total == that.total &&
+                p50 == that.p50 &&
+                p95 == that.p95 &&
+                max == that.max;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(count, total, p50, p95, max);
+    }
+
+    @Override
+    public String toString() {
+        return "TimingStatistics{" +
+                "count=" + count +
+                ", total=" + total +
+                ", p50=" + p50 +
+                ", p95=" + p95 +
+                ", max=" + max +
+                '}';
+    }
+}
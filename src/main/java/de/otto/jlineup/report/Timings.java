@@ -0,0 +1,45 @@
+package de.otto.jlineup.report;
+
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Timings by phase name (see ScreenshotTimings) of the before screenshot, the after screenshot and their comparison.
+ * Only part of the report since report format 3.
+ */
+public class Timings<T> {
+
+    public final Map<String, T> before;
+    public final Map<String, T> after;
+    public final Map<String, T> comparison;
+
+    public Timings(Map<String, T> before, Map<String, T> after, Map<String, T> comparison) {
+        this.before = before;
+        this.after = after;
+        this.comparison = comparison;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Timings<?> timings = (Timings<?>) o;
+        return Objects.equals(before, timings.before) &&
+                Objects.equals(after, timings.after) &&
+                Objects.equals(comparison, timings.comparison);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(before, after, comparison);
+    }
+
+    @Override
+    public String toString() {
+        return "Timings{" +
+                "before=" + before +
+                ", after=" + after +
+                ", comparison=" + comparison +
+                '}';
+    }
+}
@@ -99,7 +99,9 @@ public class JLineupAcceptanceTest {
         assertThat(report.summary.differenceSum, is(0.0d));
 
         final String htmlReportText = getTextFileContentAsString(reportHtml);
-        assertThat(htmlReportText, containsString("<a href=\"screenshots/file__"));
+        assertThat(htmlReportText, containsString("<a href=\"report-1.html\""));
+        final String htmlContextPageText = getTextFileContentAsString(reportHtml.resolveSibling("report-1.html"));
+        assertThat(htmlContextPageText, containsString("<a href=\"screenshots/file__"));
     }
 
     @Test
@@ -117,7 +119,9 @@ public class JLineupAcceptanceTest {
         assertThat(report.summary.differenceSum, is(0.0d));
 
         final String htmlReportText = getTextFileContentAsString(reportHtml);
-        assertThat(htmlReportText, containsString("<a href=\"screenshots/file__"));
+        assertThat(htmlReportText, containsString("<a href=\"report-1.html\""));
+        final String htmlContextPageText = getTextFileContentAsString(reportHtml.resolveSibling("report-1.html"));
+        assertThat(htmlContextPageText, containsString("<a href=\"screenshots/file__"));
     }
 
     @Test
@@ -135,7 +139,9 @@ public class JLineupAcceptanceTest {
         assertThat(report.summary.differenceSum, is(0.0d));
 
         final String htmlReportText = getTextFileContentAsString(reportHtml);
-        assertThat(htmlReportText, containsString("<a href=\"screenshots/file__"));
+        assertThat(htmlReportText, containsString("<a href=\"report-1.html\""));
+        final String htmlContextPageText = getTextFileContentAsString(reportHtml.resolveSibling("report-1.html"));
+        assertThat(htmlContextPageText, containsString("<a href=\"screenshots/file__"));
     }
 
     @Test
@@ -153,7 +159,9 @@ public class JLineupAcceptanceTest {
         assertThat(report.get(0).get("difference"), is(0.0d));
 
         final String htmlReportText = getTextFileContentAsString(reportHtml);
-        assertThat(htmlReportText, containsString("<a href=\"screenshots/file__"));
+        assertThat(htmlReportText, containsString("<a href=\"report-1.html\""));
+        final String htmlContextPageText = getTextFileContentAsString(reportHtml.resolveSibling("report-1.html"));
+        assertThat(htmlContextPageText, containsString("<a href=\"screenshots/file__"));
     }
 
     @Test
@@ -171,7 +179,9 @@ public class JLineupAcceptanceTest {
         assertThat(report.summary.differenceSum, is(0.0d));
 
         final String htmlReportText = getTextFileContentAsString(reportHtml);
-        assertThat(htmlReportText, containsString("<a href=\"screenshots/file__"));
+        assertThat(htmlReportText, containsString("<a href=\"report-1.html\""));
+        final String htmlContextPageText = getTextFileContentAsString(reportHtml.resolveSibling("report-1.html"));
+        assertThat(htmlContextPageText, containsString("<a href=\"screenshots/file__"));
 
         assertThat(sysOut.toString(), containsString("Sum of screenshot differences for file://###CWD###/src/test/resources/acceptance/webpage/:\n0.0 (0 %)"));
         assertThat(sysOut.toString(), containsString("Sum of overall screenshot differences:\n0.0 (0 %)"));
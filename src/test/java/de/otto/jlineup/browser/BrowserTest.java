@@ -235,4 +235,27 @@ public class BrowserTest {
         verify(webDriverMock, times(8)).executeScript(String.format(JS_SCROLL_CALL, 500));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldNotifyListenerAboutWrittenScreenshots() throws Exception {
+        //given
+        UrlConfig urlConfig = new UrlConfig(ImmutableList.of("/"), 0f, null, null, null, null, ImmutableList.of(600), 5000, 0, 0, 0, 0, null, 0);
+        Config config = new Config(ImmutableMap.of("testurl", urlConfig), Browser.Type.PHANTOMJS, null, 0f, 100, 1, Config.DEFAULT_REPORT_FORMAT, false);
+        ScreenshotListener screenshotListener = mock(ScreenshotListener.class);
+        testee = new Browser(parameters, config, fileService, browserUtilsMock, screenshotListener);
+
+        ScreenshotContext screenshotContext = ScreenshotContext.of("testurl", "/", 600, false, urlConfig);
+
+        when(webDriverMock.executeScript(JS_DOCUMENT_HEIGHT_CALL)).thenReturn(500L);
+        when(webDriverMock.executeScript(JS_CLIENT_VIEWPORT_HEIGHT_CALL)).thenReturn(500L);
+        when(webDriverMock.getScreenshotAs(OutputType.FILE)).thenReturn(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_before.png"));
+        when(webDriverMock.executeScript(JS_GET_BROWSER_AND_VERSION_CALL)).thenReturn(ImmutableMap.of("name","test", "version", "1"));
+        when(fileService.writeScreenshot(any(), eq("testurl"), eq("/"), eq(600), eq(0), eq("after"), any())).thenReturn("some/dir/testurl_root_1234567_0600_00000_after.png");
+
+        //when
+        testee.takeScreenshots(ImmutableList.of(screenshotContext));
+
+        //then
+        verify(screenshotListener).screenshotWritten(screenshotContext, 0, "testurl_root_1234567_0600_00000_after.png");
+    }
+
+}
@@ -1,15 +1,22 @@
 package de.otto.jlineup.file;
 
 import com.google.common.collect.ImmutableList;
+import de.otto.jlineup.config.Config;
 import de.otto.jlineup.config.Parameters;
+import de.otto.jlineup.config.ScreenshotFormat;
+import de.otto.jlineup.image.ImageService;
+import de.otto.jlineup.image.PngRowWriter;
+import de.otto.jlineup.image.TileHashes;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 
+import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -18,6 +25,7 @@ import java.util.List;
 
 import static de.otto.jlineup.file.FileService.AFTER;
 import static de.otto.jlineup.file.FileService.BEFORE;
+import static de.otto.jlineup.image.ImageService.bufferedImagesEqual;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Mockito.when;
@@ -73,11 +81,55 @@ public class FileServiceTest {
         assertThat(Files.exists(Paths.get(fileName)), is(true));
     }
 
+    @Test
+    public void shouldRecordPixelHashOfWrittenScreenshot() throws IOException {
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        BufferedImage bufferedImage = new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB);
+        bufferedImage.setRGB(0, 0, 200);
+
+        String fileName = Paths.get(testee.writeScreenshot(bufferedImage, "http://someurl", "somePath", 999, 777, BEFORE)).getFileName().toString();
+
+        assertThat(testee.getScreenshotHash(fileName), is(ImageService.pixelHash(bufferedImage)));
+        assertThat(new FileService(parameters).getScreenshotHash(fileName), is(ImageService.pixelHash(bufferedImage)));
+        assertThat(testee.readTileHashes(fileName).isTileEqual(TileHashes.of(bufferedImage), 0, 0), is(true));
+    }
+
+    @Test
+    public void shouldNotWriteTileHashesOfDifferenceImage() throws IOException {
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        BufferedImage bufferedImage = new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB);
+
+        String fileName = Paths.get(testee.writeScreenshot(bufferedImage, "http://someurl", "somePath", 999, 777, "DIFFERENCE")).getFileName().toString();
+
+        assertThat(testee.readTileHashes(fileName) == null, is(true));
+    }
+
+    @Test
+    public void shouldWriteAndReadRawScreenshotByPngFileName() throws IOException {
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        when(parameters.getScreenshotFormat()).thenReturn(ScreenshotFormat.raw);
+        BufferedImage bufferedImage = new BufferedImage(10, 20, BufferedImage.TYPE_INT_ARGB);
+        bufferedImage.setRGB(0, 0, 0xFF0000C8);
+
+        String fileName = Paths.get(testee.writeScreenshot(bufferedImage, "http://someurl", "somePath", 999, 777, AFTER)).getFileName().toString();
+
+        assertThat(Files.exists(Paths.get(writeScreenshotTestPath, "screenshots", fileName)), is(false));
+        assertThat(testee.isRawScreenshot(fileName), is(true));
+        assertThat(testee.getFilenamesForStep("somePath", "http://someurl", AFTER), is(ImmutableList.of(fileName)));
+        assertThat(bufferedImagesEqual(testee.readScreenshot(fileName), bufferedImage), is(true));
+
+        testee.materializeScreenshotForReport("../screenshots/" + fileName);
+
+        assertThat(bufferedImagesEqual(ImageIO.read(Paths.get(writeScreenshotTestPath, "screenshots", fileName).toFile()), bufferedImage), is(true));
+    }
+
     @Test
     public void shouldWriteJsonReport() throws Exception {
         when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
 
-        testee.writeJsonReport("[{\"toll\":\"mega\"}]");
+        try (Writer writer = testee.openJsonReportWriter()) {
+            writer.write("[{\"toll\":\"mega\"}]");
+        }
 
         Path reportFilePath = Paths.get(writeScreenshotTestPath + "/report/report.json");
         assertThat(Files.exists(reportFilePath), is(true));
@@ -143,4 +195,242 @@ public class FileServiceTest {
         //then
         assertThat(beforeFiles, is(ImmutableList.of("http_url_root_ff3c40c_1001_02002_after.png", "http_url_root_ff3c40c_1001_03003_after.png")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldFindScreenshotsThatWereWrittenAfterDirectoryWasIndexed() throws IOException {
+        //given
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        BufferedImage bufferedImage = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        testee.writeScreenshot(bufferedImage, "http://someurl", "indexedPath", 600, 0, BEFORE);
+        assertThat(testee.getFilenamesForStep("indexedPath", "http://someurl", BEFORE).size(), is(1));
+
+        //when
+        testee.writeScreenshot(bufferedImage, "http://someurl", "indexedPath", 600, 500, BEFORE);
+        testee.writeScreenshot(bufferedImage, "http://someurl", "indexedPath", 600, 500, AFTER);
+
+        //then
+        assertThat(testee.getFilenamesForStep("indexedPath", "http://someurl", BEFORE), is(ImmutableList.of(
+                testee.generateScreenshotFileName("http://someurl", "indexedPath", 600, 0, BEFORE),
+                testee.generateScreenshotFileName("http://someurl", "indexedPath", 600, 500, BEFORE))));
+        assertThat(testee.getFilenamesForStep("indexedPath", "http://someurl", AFTER), is(ImmutableList.of(
+                testee.generateScreenshotFileName("http://someurl", "indexedPath", 600, 500, AFTER))));
+    }
+
+    @Test
+    public void shouldTakePositionOfScreenshotsWithoutManifestEntryFromFileName() throws IOException {
+        //when
+        List<ScreenshotManifestEntry> afterScreenshots = testee.getScreenshotsForStep("/", "http://url", AFTER);
+        //then
+        assertThat(afterScreenshots, is(ImmutableList.of(
+                ScreenshotManifestEntry.withoutMetadata("http_url_root_ff3c40c_1001_02002_after.png", "http://url", "/", 1001, 2002, AFTER),
+                ScreenshotManifestEntry.withoutMetadata("http_url_root_ff3c40c_1001_03003_after.png", "http://url", "/", 1001, 3003, AFTER))));
+    }
+
+    @Test
+    public void shouldRecordWrittenScreenshotInManifest() throws IOException {
+        //given
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        BufferedImage bufferedImage = new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB);
+
+        //when
+        testee.writeScreenshot(bufferedImage, "http://someurl", "manifestPath", 600, 500, BEFORE);
+
+        //then
+        final ScreenshotManifestEntry screenshot = new FileService(parameters).getScreenshot("http://someurl", "manifestPath", 600, 500, BEFORE);
+        assertThat(screenshot.fileName, is(testee.generateScreenshotFileName("http://someurl", "manifestPath", 600, 500, BEFORE)));
+        assertThat(screenshot.url, is("http://someurl"));
+        assertThat(screenshot.path, is("manifestPath"));
+        assertThat(screenshot.windowWidth, is(600));
+        assertThat(screenshot.yPosition, is(500));
+        assertThat(screenshot.width, is(10));
+        assertThat(screenshot.height, is(20));
+        assertThat(screenshot.hash, is(ImageService.pixelHash(bufferedImage)));
+    }
+
+    @Test
+    public void shouldRecordTimingsOfScreenshotInManifest() throws IOException {
+        //given
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        BufferedImage bufferedImage = new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB);
+        ScreenshotTimings timings = new ScreenshotTimings();
+        timings.add(ScreenshotTimings.CAPTURE, 42);
+
+        //when
+        testee.writeScreenshot(bufferedImage, "http://someurl", "timingsPath", 600, 0, BEFORE, timings);
+
+        //then
+        final ScreenshotManifestEntry screenshot = new FileService(parameters).getScreenshot("http://someurl", "timingsPath", 600, 0, BEFORE);
+        assertThat(screenshot.timings.get(ScreenshotTimings.CAPTURE), is(42L));
+        assertThat(screenshot.timings.containsKey(ScreenshotTimings.ENCODE), is(true));
+        assertThat(screenshot.timings.containsKey(ScreenshotTimings.WRITE), is(true));
+    }
+
+    @Test
+    public void shouldStoreEqualScreenshotsOnlyOnceWhenDeduplicating() throws IOException {
+        //given
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        when(parameters.isDeduplicateScreenshots()).thenReturn(true);
+        BufferedImage bufferedImage = new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB);
+        bufferedImage.setRGB(3, 4, 0xFF00FF00);
+
+        //when
+        testee.writeScreenshot(bufferedImage, "http://someurl", "dedupPath", 600, 0, BEFORE);
+        testee.writeScreenshot(bufferedImage, "http://someurl", "dedupPath", 800, 0, BEFORE);
+
+        //then
+        final String hash = ImageService.pixelHash(bufferedImage);
+        final Path objectsDirectory = Paths.get(writeScreenshotTestPath, "screenshots", FileService.OBJECTS_DIRECTORY);
+        assertThat(Files.list(objectsDirectory).count(), is(2L));
+        assertThat(Files.exists(objectsDirectory.resolve(hash + ".png")), is(true));
+        assertThat(Files.exists(objectsDirectory.resolve(hash + ".png" + FileService.TILE_HASHES_EXTENSION)), is(true));
+
+        final FileService otherFileService = new FileService(parameters);
+        final List<String> fileNames = otherFileService.getFilenamesForStep("dedupPath", "http://someurl", BEFORE);
+        assertThat(fileNames.size(), is(2));
+        for (String fileName : fileNames) {
+            assertThat(Files.exists(Paths.get(writeScreenshotTestPath, "screenshots", fileName)), is(false));
+            assertThat(bufferedImagesEqual(otherFileService.readScreenshot(fileName), bufferedImage), is(true));
+            assertThat(otherFileService.getScreenshot("http://someurl", "dedupPath", 600, 0, BEFORE).storedAs, is("objects/" + hash + ".png"));
+        }
+    }
+
+    @Test
+    public void shouldReadScreenshotsFromArchiveWithoutUnpacking() throws IOException {
+        //given
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        when(parameters.isArchiveScreenshots()).thenReturn(true);
+        when(parameters.getScreenshotFormat()).thenReturn(ScreenshotFormat.raw);
+        BufferedImage bufferedImage = new BufferedImage(10, 20, BufferedImage.TYPE_INT_ARGB);
+        bufferedImage.setRGB(3, 4, 0xFF00FF00);
+
+        //when
+        testee.writeScreenshot(bufferedImage, "http://someurl", "archivePath", 600, 0, BEFORE);
+        testee.finishScreenshotArchive();
+
+        //then
+        final String fileName = testee.generateScreenshotFileName("http://someurl", "archivePath", 600, 0, BEFORE);
+        final Path screenshotsDirectory = Paths.get(writeScreenshotTestPath, "screenshots");
+        assertThat(Files.exists(screenshotsDirectory.resolve(ScreenshotArchive.ARCHIVE_FILE_NAME)), is(true));
+        assertThat(Files.exists(screenshotsDirectory.resolve(fileName)), is(false));
+
+        final FileService otherFileService = new FileService(parameters);
+        assertThat(otherFileService.getFilenamesForStep("archivePath", "http://someurl", BEFORE), is(ImmutableList.of(fileName)));
+        assertThat(otherFileService.isRawScreenshot(fileName), is(true));
+        assertThat(bufferedImagesEqual(otherFileService.readScreenshot(fileName), bufferedImage), is(true));
+        assertThat(otherFileService.readTileHashes(fileName).isTileEqual(TileHashes.of(bufferedImage), 0, 0), is(true));
+    }
+
+    @Test
+    public void shouldArchiveDifferenceImageWhenItsWriterIsClosed() throws IOException {
+        //given
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        when(parameters.isArchiveScreenshots()).thenReturn(true);
+        final String fileName = testee.generateScreenshotFileName("http://someurl", "differencePath", 600, 0, "DIFFERENCE");
+
+        //when
+        try (PngRowWriter writer = testee.openScreenshotPngWriter("http://someurl", "differencePath", 600, 0, "DIFFERENCE", 10, 20)) {
+            writer.writeRows(new int[10 * 20], 20);
+        }
+
+        //then
+        final Path screenshotsDirectory = Paths.get(writeScreenshotTestPath, "screenshots");
+        assertThat(Files.exists(screenshotsDirectory.resolve(fileName)), is(false));
+        assertThat(testee.readScreenshot(fileName).getHeight(), is(20));
+    }
+
+    @Test
+    public void shouldNotExtractArchivedScreenshotForReport() throws IOException {
+        //given
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        when(parameters.isArchiveScreenshots()).thenReturn(true);
+        when(parameters.getScreenshotFormat()).thenReturn(ScreenshotFormat.raw);
+        BufferedImage bufferedImage = new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB);
+        String fileName = Paths.get(testee.writeScreenshot(bufferedImage, "http://someurl", "reportPath", 600, 0, BEFORE)).getFileName().toString();
+
+        //when
+        testee.materializeScreenshotForReport("../screenshots/" + fileName);
+
+        //then
+        assertThat(Files.exists(Paths.get(writeScreenshotTestPath, "screenshots", fileName)), is(false));
+    }
+
+    @Test
+    public void shouldExtractScreenshotArchive() throws IOException {
+        //given
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        when(parameters.isArchiveScreenshots()).thenReturn(true);
+        BufferedImage bufferedImage = new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB);
+        bufferedImage.setRGB(3, 4, 0x00FF00);
+        String pngFileName = Paths.get(testee.writeScreenshot(bufferedImage, "http://someurl", "reportPath", 600, 0, BEFORE)).getFileName().toString();
+        when(parameters.getScreenshotFormat()).thenReturn(ScreenshotFormat.raw);
+        String rawFileName = Paths.get(testee.writeScreenshot(bufferedImage, "http://someurl", "reportPath", 600, 0, AFTER)).getFileName().toString();
+        testee.finishScreenshotArchive();
+
+        //when
+        final int extracted = new FileService(parameters).extractScreenshotArchive();
+
+        //then
+        assertThat(extracted, is(2));
+        assertThat(bufferedImagesEqual(ImageIO.read(Paths.get(writeScreenshotTestPath, "screenshots", pngFileName).toFile()), bufferedImage), is(true));
+        assertThat(bufferedImagesEqual(ImageIO.read(Paths.get(writeScreenshotTestPath, "screenshots", rawFileName).toFile()), bufferedImage), is(true));
+        assertThat(Files.exists(Paths.get(writeScreenshotTestPath, "screenshots", pngFileName + FileService.TILE_HASHES_EXTENSION)), is(false));
+    }
+
+    @Test
+    public void shouldRestoreScreenshotsFromBaselineCache() throws IOException {
+        //given
+        final BaselineCache baselineCache = writeBaseline();
+
+        //when
+        final boolean restored = testee.restoreScreenshotsFromBaselineCache(baselineCache);
+
+        //then
+        assertThat(restored, is(true));
+        assertThat(testee.getFilenamesForStep("baselinePath", "http://someurl", BEFORE).size(), is(2));
+    }
+
+    @Test
+    public void shouldNotRestoreBaselineThatWasEvictedWhileItWasCopied() throws IOException {
+        //given
+        final BaselineCache baselineCache = writeBaseline();
+        Files.delete(baselineCache.get().resolve(testee.generateScreenshotFileName("http://someurl", "baselinePath", 600, 0, BEFORE)));
+
+        //when
+        final boolean restored = testee.restoreScreenshotsFromBaselineCache(baselineCache);
+
+        //then
+        assertThat(restored, is(false));
+        assertThat(testee.getFilenamesForStep("baselinePath", "http://someurl", BEFORE).size(), is(0));
+    }
+
+    private BaselineCache writeBaseline() throws IOException {
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        when(parameters.getBaselineCacheDirectory()).thenReturn(tempDirPath + "/baselines");
+        when(parameters.getBaselineVersion()).thenReturn("1.0");
+        when(parameters.getBaselineCacheSize()).thenReturn(100);
+        final BaselineCache baselineCache = new BaselineCache(parameters, Config.defaultConfig("http://someurl"));
+        testee.writeScreenshot(new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB), "http://someurl", "baselinePath", 600, 0, BEFORE);
+        testee.writeScreenshot(new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB), "http://someurl", "baselinePath", 600, 20, BEFORE);
+        testee.storeScreenshotsInBaselineCache(baselineCache);
+        testee.createOrClearScreenshotsDirectory();
+        return baselineCache;
+    }
+
+    @Test
+    public void shouldWriteThumbnailForReport() throws IOException {
+        //given
+        when(parameters.getWorkingDirectory()).thenReturn(writeScreenshotTestPath);
+        BufferedImage bufferedImage = new BufferedImage(1000, 2000, BufferedImage.TYPE_INT_RGB);
+        String fileName = Paths.get(testee.writeScreenshot(bufferedImage, "http://someurl", "thumbnailPath", 1000, 0, BEFORE)).getFileName().toString();
+
+        //when
+        String thumbnail = testee.writeThumbnailForReport("../screenshots/" + fileName, 350);
+
+        //then
+        assertThat(thumbnail, is("thumbnails/" + fileName.replace(".png", ".jpg")));
+        BufferedImage thumbnailImage = ImageIO.read(Paths.get(writeScreenshotTestPath, "report", thumbnail).toFile());
+        assertThat(thumbnailImage.getWidth(), is(350));
+        assertThat(thumbnailImage.getHeight(), is(700));
+        assertThat(testee.writeThumbnailForReport("../screenshots/" + fileName, 1000), is((String) null));
+    }
+}
@@ -0,0 +1,91 @@
+package de.otto.jlineup.file;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LruDirectoryCacheTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private Path cacheDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        cacheDirectory = tempDir.newFolder("cache").toPath();
+    }
+
+    @Test
+    public void shouldReturnNullForUnknownKey() throws IOException {
+        //given
+        LruDirectoryCache testee = new LruDirectoryCache(cacheDirectory, 1000);
+
+        //when
+        Path entry = testee.get("unknown");
+
+        //then
+        assertThat(entry, is(nullValue()));
+    }
+
+    @Test
+    public void shouldStoreCopyOfDirectory() throws IOException {
+        //given
+        LruDirectoryCache testee = new LruDirectoryCache(cacheDirectory, 1000);
+        Path source = tempDir.newFolder("source").toPath();
+        Files.createDirectories(source.resolve("objects"));
+        Files.write(source.resolve("a.png"), new byte[]{1, 2, 3});
+        Files.write(source.resolve("objects/b.png"), new byte[]{4, 5});
+
+        //when
+        testee.put("version/fingerprint", source);
+        Path entry = testee.get("version/fingerprint");
+
+        //then
+        assertThat(entry, is(notNullValue()));
+        assertThat(Files.readAllBytes(entry.resolve("a.png")), is(new byte[]{1, 2, 3}));
+        assertThat(Files.readAllBytes(entry.resolve("objects/b.png")), is(new byte[]{4, 5}));
+        assertThat(LruDirectoryCache.sizeOf(cacheDirectory), is(5L));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntries() throws IOException {
+        //given
+        LruDirectoryCache testee = new LruDirectoryCache(cacheDirectory, 250);
+        testee.put("first", entry -> Files.write(entry.resolve("file"), new byte[100]));
+        testee.put("second", entry -> Files.write(entry.resolve("file"), new byte[100]));
+        Files.setLastModifiedTime(testee.get("first"), FileTime.fromMillis(System.currentTimeMillis() - 20000));
+        Files.setLastModifiedTime(testee.get("second"), FileTime.fromMillis(System.currentTimeMillis() - 30000));
+
+        //when
+        testee.put("third", entry -> Files.write(entry.resolve("file"), new byte[100]));
+
+        //then
+        assertThat(testee.get("second"), is(nullValue()));
+        assertThat(testee.get("first"), is(notNullValue()));
+        assertThat(testee.get("third"), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldKeepNewestEntryEvenIfBiggerThanCache() throws IOException {
+        //given
+        LruDirectoryCache testee = new LruDirectoryCache(cacheDirectory, 10);
+
+        //when
+        testee.put("big", entry -> Files.write(entry.resolve("file"), new byte[100]));
+
+        //then
+        assertThat(testee.get("big"), is(notNullValue()));
+    }
+}
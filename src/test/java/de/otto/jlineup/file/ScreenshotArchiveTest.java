@@ -0,0 +1,116 @@
+package de.otto.jlineup.file;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ScreenshotArchiveTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void shouldReadEntriesOfReopenedArchive() throws IOException {
+        //given
+        final Path archiveFile = tempDir.getRoot().toPath().resolve(ScreenshotArchive.ARCHIVE_FILE_NAME);
+        final String longName = "objects/http_www_example_com_some_very_long_path_with_many_segments_below_it_ff3c40c_1001_02002_before.png";
+        try (ScreenshotArchive archive = new ScreenshotArchive(archiveFile)) {
+            add(archive, "short.png", new byte[]{1, 2, 3});
+            add(archive, longName, new byte[1000]);
+        }
+
+        //when
+        try (ScreenshotArchive archive = new ScreenshotArchive(archiveFile)) {
+            add(archive, "third.png", new byte[]{4});
+
+            //then
+            assertThat(archive.getEntryNames(), is(ImmutableSet.of("short.png", longName, "third.png")));
+            assertThat(read(archive, "short.png"), is(new byte[]{1, 2, 3}));
+            assertThat(read(archive, longName), is(new byte[1000]));
+            assertThat(read(archive, "third.png"), is(new byte[]{4}));
+            assertThat(archive.contains("missing.png"), is(false));
+        }
+        assertThat(Files.size(archiveFile) % 512, is(0L));
+    }
+
+    @Test
+    public void shouldCloseArchiveOnlyWhenEntriesAreReadCompletely() throws IOException {
+        //given
+        final ScreenshotArchive archive = new ScreenshotArchive(tempDir.getRoot().toPath().resolve(ScreenshotArchive.ARCHIVE_FILE_NAME));
+        add(archive, "a.png", new byte[]{1, 2, 3});
+
+        try (InputStream in = archive.openEntry("a.png")) {
+            //when
+            archive.close();
+
+            //then
+            assertThat(ByteStreams.toByteArray(in), is(new byte[]{1, 2, 3}));
+        }
+    }
+
+    @Test
+    public void shouldWriteSeveralEntriesAtTheSameTime() throws IOException {
+        //given
+        final Path archiveFile = tempDir.getRoot().toPath().resolve(ScreenshotArchive.ARCHIVE_FILE_NAME);
+        try (ScreenshotArchive archive = new ScreenshotArchive(archiveFile)) {
+            final OutputStream reserved = archive.createEntry("reserved.raw", 4);
+            final OutputStream buffered = archive.createEntry("buffered.png", -1);
+
+            //when
+            reserved.write(new byte[]{1, 2});
+            buffered.write(new byte[]{5, 6, 7});
+            reserved.write(new byte[]{3, 4});
+            assertThat(archive.contains("reserved.raw"), is(false));
+            buffered.close();
+            reserved.close();
+        }
+
+        //then
+        try (ScreenshotArchive archive = new ScreenshotArchive(archiveFile)) {
+            assertThat(read(archive, "reserved.raw"), is(new byte[]{1, 2, 3, 4}));
+            assertThat(read(archive, "buffered.png"), is(new byte[]{5, 6, 7}));
+        }
+    }
+
+    @Test
+    public void shouldNotReadIncompleteEntryOfReopenedArchive() throws IOException {
+        //given
+        final Path archiveFile = tempDir.getRoot().toPath().resolve(ScreenshotArchive.ARCHIVE_FILE_NAME);
+        try (ScreenshotArchive archive = new ScreenshotArchive(archiveFile)) {
+            add(archive, "a.png", new byte[]{1});
+            archive.createEntry("aborted.raw", 1000).write(new byte[10]);
+            add(archive, "b.png", new byte[]{2});
+        }
+
+        //when
+        try (ScreenshotArchive archive = new ScreenshotArchive(archiveFile)) {
+
+            //then
+            assertThat(archive.getEntryNames(), is(ImmutableSet.of("a.png", "b.png")));
+            assertThat(read(archive, "b.png"), is(new byte[]{2}));
+        }
+    }
+
+    private static void add(ScreenshotArchive archive, String name, byte[] content) throws IOException {
+        try (OutputStream out = archive.createEntry(name, content.length)) {
+            out.write(content);
+        }
+    }
+
+    private static byte[] read(ScreenshotArchive archive, String name) throws IOException {
+        try (InputStream in = archive.openEntry(name)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package de.otto.jlineup.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class WorkspaceTrashTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void shouldMoveDirectoryToTrashAndEmptyTrashInBackground() throws Exception {
+        //given
+        final Path workingDirectory = tempDir.getRoot().toPath();
+        final Path screenshots = Files.createDirectories(workingDirectory.resolve("report/screenshots"));
+        Files.write(screenshots.resolve("screenshot.png"), new byte[]{1, 2, 3});
+        final Path leftover = Files.createDirectories(workingDirectory.resolve(WorkspaceTrash.TRASH_DIRECTORY).resolve("report-of-aborted-run"));
+        Files.write(leftover.resolve("screenshot.png"), new byte[]{1, 2, 3});
+        final WorkspaceTrash testee = new WorkspaceTrash(workingDirectory);
+
+        //when
+        final boolean moved = testee.moveToTrash(workingDirectory.resolve("report"));
+
+        //then
+        assertThat(moved, is(true));
+        assertThat(Files.exists(workingDirectory.resolve("report")), is(false));
+        for (int i = 0; i < 100 && testee.isEmptying(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(Files.list(testee.getTrashDirectory()).count(), is(0L));
+    }
+
+    @Test
+    public void shouldNotMoveWorkingDirectoryToTrash() throws IOException {
+        //given
+        final Path workingDirectory = tempDir.getRoot().toPath();
+        final WorkspaceTrash testee = new WorkspaceTrash(workingDirectory);
+
+        //when
+        final boolean moved = testee.moveToTrash(workingDirectory.resolve("."));
+
+        //then
+        assertThat(moved, is(false));
+        assertThat(Files.isDirectory(workingDirectory), is(true));
+    }
+}
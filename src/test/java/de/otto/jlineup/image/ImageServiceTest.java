@@ -1,11 +1,15 @@
 package de.otto.jlineup.image;
 
+import com.google.common.hash.Hasher;
 import org.junit.Before;
 import org.junit.Test;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 
 import static de.otto.jlineup.image.ImageService.bufferedImagesEqual;
@@ -37,6 +41,103 @@ public class ImageServiceTest {
         assertThat(bufferedImagesEqual(referenceImageBuffer, result.getDifferenceImage().orElse(null)), is(true));
     }
 
+    @Test
+    public void shouldCountDifferenceWithoutDifferenceImage() throws IOException {
+        //given
+        final BufferedImage beforeImageBuffer = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_before.png"));
+        final BufferedImage afterImageBuffer = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_after.png"));
+
+        //when
+        ImageService.ImageComparisonResult result = testee.countDifference(beforeImageBuffer, afterImageBuffer, 800,
+                TileHashes.of(beforeImageBuffer), TileHashes.of(afterImageBuffer), 0.1);
+
+        //then
+        assertThat(result.getDifference(), is(0.07005));
+        assertThat(result.getDifferenceImage().isPresent(), is(false));
+    }
+
+    @Test
+    public void shouldStopCountingDifferenceWhenMaxDifferenceIsExceeded() throws IOException {
+        //given
+        final BufferedImage beforeImageBuffer = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_before.png"));
+        final BufferedImage afterImageBuffer = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_after.png"));
+
+        //when
+        ImageService.ImageComparisonResult result = testee.countDifference(beforeImageBuffer, afterImageBuffer, 800, null, null, 0.01);
+
+        //then
+        assertThat(result.getDifference() > 0.01, is(true));
+        assertThat(result.getDifference() <= 0.07005, is(true));
+    }
+
+    @Test
+    public void shouldComputePixelHashTogetherWithTileHashes() throws IOException {
+        //given
+        final BufferedImage image = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_before.png"));
+        final Hasher pixelHasher = ImageService.newPixelHasher(image);
+
+        //when
+        final TileHashes tileHashes = TileHashes.of(image, pixelHasher);
+
+        //then
+        assertThat(pixelHasher.hash().toString(), is(ImageService.pixelHash(image)));
+        assertThat(tileHashes.isTileEqual(TileHashes.of(image), 1, 2), is(true));
+    }
+
+    @Test
+    public void shouldGenerateSameDifferenceImageWhenComparingOnlyChangedTiles() throws IOException {
+        //given
+        final int viewportHeight = 800;
+        final BufferedImage beforeImageBuffer = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_before.png"));
+        final BufferedImage afterImageBuffer = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_after.png"));
+        final BufferedImage referenceImageBuffer = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_DIFFERENCE_reference.png"));
+
+        //when
+        ImageService.ImageComparisonResult result = testee.compareImages(beforeImageBuffer, afterImageBuffer, viewportHeight,
+                TileHashes.of(beforeImageBuffer), TileHashes.of(afterImageBuffer));
+
+        //then
+        assertThat(result.getDifference(), is(0.07005));
+        assertThat(bufferedImagesEqual(referenceImageBuffer, result.getDifferenceImage().orElse(null)), is(true));
+    }
+
+    @Test
+    public void shouldGenerateSameDifferenceImageWhenComparingInBands() throws IOException {
+        //given
+        final int viewportHeight = 800;
+        final BufferedImage referenceImageBuffer = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_DIFFERENCE_reference.png"));
+        final ByteArrayOutputStream differenceImageOutput = new ByteArrayOutputStream();
+
+        //when
+        ImageService.ImageComparisonResult result;
+        try (PngRowReader beforeImage = new PngRowReader(new FileInputStream("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_before.png"));
+             PngRowReader afterImage = new PngRowReader(new FileInputStream("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_after.png"))) {
+            result = testee.compareImagesInBands(beforeImage, afterImage, viewportHeight, (width, height) -> new PngRowWriter(differenceImageOutput, width, height));
+        }
+
+        //then
+        assertThat(result.getDifference(), is(0.07005));
+        assertThat(bufferedImagesEqual(referenceImageBuffer, ImageIO.read(new ByteArrayInputStream(differenceImageOutput.toByteArray()))), is(true));
+    }
+
+    @Test
+    public void shouldNotOpenDifferenceImageOutputForEqualImagesInBands() throws IOException {
+        //given
+        final String fileName = "src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_before.png";
+
+        //when
+        ImageService.ImageComparisonResult result;
+        try (PngRowReader image1 = new PngRowReader(new FileInputStream(fileName));
+             PngRowReader image2 = new PngRowReader(new FileInputStream(fileName))) {
+            result = testee.compareImagesInBands(image1, image2, 800, (width, height) -> {
+                throw new IOException("Difference image should not be written");
+            });
+        }
+
+        //then
+        assertThat(result.getDifference(), is(0d));
+    }
+
     @Test
     public void shouldGenerateDifferenceImageFromScreenshotsWithDifferentSizes() throws IOException {
         //given
@@ -68,6 +169,24 @@ public class ImageServiceTest {
         assertThat(result.getDifference(), is(0.475));
     }
 
+    @Test
+    public void shouldMarkDifferentPixelsAndAdditionalRowsOfSameWidthImages() {
+        //given
+        final BufferedImage beforeImageBuffer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        final BufferedImage afterImageBuffer = new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB);
+        afterImageBuffer.setRGB(3, 4, 0x010000);
+
+        //when
+        ImageService.ImageComparisonResult result = testee.compareImages(beforeImageBuffer, afterImageBuffer, 100);
+
+        //then
+        assertThat(result.getDifference(), is(101d / 200));
+        final BufferedImage differenceImage = result.getDifferenceImage().orElse(null);
+        assertThat(differenceImage.getRGB(3, 4), is(ImageService.HIGHLIGHT_COLOR));
+        assertThat(differenceImage.getRGB(4, 4), is(ImageService.SAME_COLOR));
+        assertThat(differenceImage.getRGB(9, 15), is(ImageService.DIFFERENT_SIZE_COLOR));
+    }
+
     @Test
     public void shouldSeeIdenticalByteImageBuffersAsEqualWithQuickCompare() {
         final BufferedImage image1 = new BufferedImage(100, 100, BufferedImage.TYPE_BYTE_INDEXED);
@@ -0,0 +1,56 @@
+package de.otto.jlineup.image;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PngRowReaderTest {
+
+    @Test
+    public void shouldReadRgbaPngWithSamePixelsAsImageIO() throws IOException {
+        assertRowsEqualImageIO("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_after.png");
+    }
+
+    @Test
+    public void shouldReadRgbPngWithSamePixelsAsImageIO() throws IOException {
+        assertRowsEqualImageIO("src/test/resources/screenshots/ideaDifferenceReference.png");
+    }
+
+    @Test
+    public void shouldReadHeaderWithoutImageData() throws IOException {
+        final PngHeader header;
+        try (FileInputStream in = new FileInputStream("src/test/resources/screenshots/ideaWide.png")) {
+            header = PngHeader.read(in);
+        }
+
+        assertThat(header.width, is(1273));
+        assertThat(header.height, is(489));
+        assertThat(header.isRowStreamable(), is(true));
+    }
+
+    private void assertRowsEqualImageIO(String fileName) throws IOException {
+        final BufferedImage image = ImageIO.read(new File(fileName));
+        final int width = image.getWidth();
+        final int[] rows = new int[width * 7];
+        try (PngRowReader reader = new PngRowReader(new FileInputStream(fileName))) {
+            assertThat(reader.getWidth(), is(width));
+            assertThat(reader.getHeight(), is(image.getHeight()));
+            for (int y = 0; y < image.getHeight(); y += 7) {
+                final int rowCount = Math.min(7, image.getHeight() - y);
+                reader.readRows(rows, rowCount);
+                for (int row = 0; row < rowCount; row++) {
+                    for (int x = 0; x < width; x++) {
+                        assertThat(rows[row * width + x], is(image.getRGB(x, y + row)));
+                    }
+                }
+            }
+        }
+    }
+}
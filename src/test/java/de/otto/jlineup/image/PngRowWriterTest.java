@@ -0,0 +1,105 @@
+package de.otto.jlineup.image;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PngRowWriterTest {
+
+    @Test
+    public void shouldWritePngThatImageIOCanRead() throws IOException {
+        //given
+        final int width = 300;
+        final int height = 200;
+        final int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | (i * 7919);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //when
+        try (PngRowWriter writer = new PngRowWriter(out, width, height)) {
+            writer.writeRows(pixels, 50);
+            writer.writeRows(Arrays.copyOfRange(pixels, 50 * width, pixels.length), 150);
+        }
+
+        //then
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(image.getWidth(), is(width));
+        assertThat(image.getHeight(), is(height));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertThat(image.getRGB(x, y), is(pixels[y * width + x]));
+            }
+        }
+    }
+
+    @Test
+    public void shouldWriteFilteredPngsThatImageIOCanRead() throws IOException {
+        for (PngFilter filter : PngFilter.values()) {
+            //given
+            final int width = 97;
+            final int height = 61;
+            final int[] pixels = createPixels(width, height);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            //when
+            try (PngRowWriter writer = new PngRowWriter(out, width, height, true, new PngEncoding(1, filter, 1))) {
+                writer.writeRows(pixels, height);
+            }
+
+            //then
+            assertPixels(ImageIO.read(new ByteArrayInputStream(out.toByteArray())), pixels, width, height);
+        }
+    }
+
+    @Test
+    public void shouldWritePngThatImageIOCanReadWhenDeflatingInParallel() throws IOException {
+        //given
+        final int width = 1000;
+        final int height = 700;
+        final int[] pixels = createPixels(width, height);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //when
+        try (PngRowWriter writer = new PngRowWriter(out, width, height, true, new PngEncoding(6, PngFilter.up, 4))) {
+            writer.writeRows(pixels, height);
+        }
+
+        //then
+        assertPixels(ImageIO.read(new ByteArrayInputStream(out.toByteArray())), pixels, width, height);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldNotCloseIncompletePng() throws IOException {
+        try (PngRowWriter writer = new PngRowWriter(new ByteArrayOutputStream(), 10, 10)) {
+            writer.writeRows(new int[100], 5);
+        }
+    }
+
+    private static int[] createPixels(int width, int height) {
+        final int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (i % 13 == 0 ? 0x80000000 : 0xFF000000) | ((i / 5) * 7919 & 0xFFFFFF);
+        }
+        return pixels;
+    }
+
+    private static void assertPixels(BufferedImage image, int[] pixels, int width, int height) {
+        assertThat(image.getWidth(), is(width));
+        assertThat(image.getHeight(), is(height));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertThat(image.getRGB(x, y), is(pixels[y * width + x]));
+            }
+        }
+    }
+}
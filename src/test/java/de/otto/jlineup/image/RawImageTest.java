@@ -0,0 +1,72 @@
+package de.otto.jlineup.image;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static de.otto.jlineup.image.ImageService.bufferedImagesEqual;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RawImageTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void shouldReadWrittenRawImage() throws IOException {
+        //given
+        final BufferedImage image = ImageIO.read(new File("src/test/resources/screenshots/ideaVertical.png"));
+        final Path rawImagePath = tempDir.getRoot().toPath().resolve("ideaVertical.raw");
+
+        //when
+        RawImage.write(image, rawImagePath);
+
+        //then
+        assertThat(bufferedImagesEqual(image, RawImage.read(rawImagePath)), is(true));
+    }
+
+    @Test
+    public void shouldReadRawImageInBands() throws IOException {
+        //given
+        final BufferedImage image = ImageIO.read(new File("src/test/resources/screenshots/ideaWide.png"));
+        final Path rawImagePath = tempDir.getRoot().toPath().resolve("ideaWide.raw");
+        RawImage.write(image, rawImagePath);
+        final int[] rows = new int[image.getWidth() * 100];
+
+        //when
+        try (RawImageRowReader reader = new RawImageRowReader(rawImagePath)) {
+            reader.readRows(rows, 100);
+            reader.readRows(rows, 100);
+        }
+
+        //then
+        assertThat(rows[image.getWidth() * 42 + 17], is(image.getRGB(17, 142)));
+    }
+
+    @Test
+    public void shouldReadBandLargerThanReadBuffer() throws IOException {
+        //given
+        final BufferedImage image = new BufferedImage(1000, 400, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.setRGB(y, y, 0xff000000 | y);
+        }
+        final Path rawImagePath = tempDir.getRoot().toPath().resolve("large.raw");
+        RawImage.write(image, rawImagePath);
+        final int[] rows = new int[image.getWidth() * image.getHeight()];
+
+        //when
+        try (RawImageRowReader reader = new RawImageRowReader(rawImagePath)) {
+            reader.readRows(rows, image.getHeight());
+        }
+
+        //then
+        assertThat(rows[image.getWidth() * 399 + 399], is(image.getRGB(399, 399)));
+    }
+}
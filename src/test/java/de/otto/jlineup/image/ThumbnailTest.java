@@ -0,0 +1,50 @@
+package de.otto.jlineup.image;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ThumbnailTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void shouldAveragePixelsCoveredByThumbnailPixel() throws IOException {
+        //given
+        final BufferedImage image = new BufferedImage(700, 300, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (x < 350) {
+                    image.setRGB(x, y, x % 2 == 0 ? 0xFFFF0000 : 0xFF0000FF);
+                } else {
+                    image.setRGB(x, y, 0x00000000);
+                }
+            }
+        }
+        final Path rawImagePath = tempDir.getRoot().toPath().resolve("image.raw");
+        RawImage.write(image, rawImagePath);
+
+        //when
+        final BufferedImage thumbnail;
+        try (RawImageRowReader reader = new RawImageRowReader(rawImagePath)) {
+            thumbnail = Thumbnail.scaleToWidth(reader, 350);
+        }
+
+        //then
+        assertThat(thumbnail.getWidth(), is(350));
+        assertThat(thumbnail.getHeight(), is(150));
+        assertThat(thumbnail.getRGB(0, 0), is(0xFF7F007F));
+        assertThat(thumbnail.getRGB(174, 149), is(0xFF7F007F));
+        //transparent pixels are white
+        assertThat(thumbnail.getRGB(175, 0), is(0xFFFFFFFF));
+        assertThat(thumbnail.getRGB(349, 149), is(0xFFFFFFFF));
+    }
+}
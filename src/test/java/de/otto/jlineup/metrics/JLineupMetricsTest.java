@@ -0,0 +1,88 @@
+package de.otto.jlineup.metrics;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JLineupMetricsTest {
+
+    private final JLineupMetrics testee = new JLineupMetrics();
+
+    @Test
+    public void shouldCountContextsByState() {
+        //given
+        testee.contextQueued();
+        testee.contextQueued();
+        testee.contextQueued();
+
+        //when
+        testee.contextStarted();
+        testee.contextStarted();
+        testee.contextFinished();
+
+        //then
+        assertThat(testee.getContextsQueued(), is(1L));
+        assertThat(testee.getContextsInFlight(), is(1L));
+        assertThat(testee.getContextsCompleted(), is(1L));
+    }
+
+    @Test
+    public void shouldStartFromZeroAfterReset() {
+        //given
+        testee.contextQueued();
+        testee.screenshotTaken();
+        testee.comparisonFinished(100);
+        testee.imageBuffers(1000);
+
+        //when
+        testee.reset();
+
+        //then
+        assertThat(testee.getContextsQueued(), is(0L));
+        assertThat(testee.getScreenshotsTaken(), is(0L));
+        assertThat(testee.getScreenshotsPerSecond(), is(0d));
+        assertThat(testee.getComparisonsCompleted(), is(0L));
+        assertThat(testee.getComparedPixels(), is(0L));
+        assertThat(testee.getImageBufferBytes(), is(0L));
+    }
+
+    @Test
+    public void shouldCountImagesWaitingForAndBeingEncodedAsEncoderQueue() {
+        //given
+        testee.encodeQueued();
+        testee.encodeQueued();
+
+        //when
+        testee.encodeDequeued();
+        testee.encodeStarted();
+
+        //then
+        assertThat(testee.getEncoderQueueDepth(), is(2L));
+
+        //when
+        testee.encodeFinished();
+
+        //then
+        assertThat(testee.getEncoderQueueDepth(), is(1L));
+        assertThat(testee.getScreenshotsEncoded(), is(1L));
+    }
+
+    @Test
+    public void shouldWriteMetricsInPrometheusTextFormat() {
+        //given
+        testee.screenshotTaken();
+        testee.comparisonFinished(1000L);
+        testee.imageBuffers(4096L);
+
+        //when
+        String text = testee.toPrometheusText();
+
+        //then
+        assertThat(text, containsString("# HELP jlineup_screenshots_total Screenshots taken\n# TYPE jlineup_screenshots_total counter\njlineup_screenshots_total 1\n"));
+        assertThat(text, containsString("\njlineup_compared_pixels_total 1000\n"));
+        assertThat(text, containsString("\njlineup_image_buffer_bytes 4096\n"));
+        assertThat(text, containsString("\njlineup_driver_wait_seconds_total 0.000\n"));
+    }
+}
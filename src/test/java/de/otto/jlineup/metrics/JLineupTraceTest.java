@@ -0,0 +1,74 @@
+package de.otto.jlineup.metrics;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JLineupTraceTest {
+
+    private final JLineupTrace testee = new JLineupTrace();
+
+    @Test
+    public void shouldWriteSpansAsCompleteEventsOnTrackOfThread() throws Exception {
+        //given
+        testee.enable();
+        testee.span("capture", JLineupTrace.CATEGORY_PHASE, System.nanoTime() - 2000000, "y=0");
+
+        //when
+        StringWriter writer = new StringWriter();
+        testee.writeTo(writer);
+
+        //then
+        JsonArray events = new JsonParser().parse(writer.toString()).getAsJsonObject().getAsJsonArray("traceEvents");
+        assertThat(events.size(), is(3));
+        JsonObject process = events.get(0).getAsJsonObject();
+        assertThat(process.get("name").getAsString(), is("process_name"));
+        JsonObject thread = events.get(1).getAsJsonObject();
+        assertThat(thread.get("name").getAsString(), is("thread_name"));
+        assertThat(thread.get("tid").getAsLong(), is(Thread.currentThread().getId()));
+        assertThat(thread.getAsJsonObject("args").get("name").getAsString(), is(Thread.currentThread().getName()));
+        JsonObject span = events.get(2).getAsJsonObject();
+        assertThat(span.get("name").getAsString(), is("capture"));
+        assertThat(span.get("cat").getAsString(), is("phase"));
+        assertThat(span.get("ph").getAsString(), is("X"));
+        assertThat(span.get("tid").getAsLong(), is(Thread.currentThread().getId()));
+        assertThat(span.get("dur").getAsLong() >= 2000, is(true));
+        assertThat(span.getAsJsonObject("args").get("detail").getAsString(), is("y=0"));
+    }
+
+    @Test
+    public void shouldDropSpansOfEarlierRunWhenEnabledAgain() throws Exception {
+        //given
+        testee.enable();
+        testee.span("capture", JLineupTrace.CATEGORY_PHASE, System.nanoTime());
+
+        //when
+        testee.enable();
+        StringWriter writer = new StringWriter();
+        testee.writeTo(writer);
+
+        //then
+        JsonArray events = new JsonParser().parse(writer.toString()).getAsJsonObject().getAsJsonArray("traceEvents");
+        assertThat(events.size(), is(1));
+    }
+
+    @Test
+    public void shouldNotRecordSpansUnlessEnabled() throws Exception {
+        //given
+        testee.span("capture", JLineupTrace.CATEGORY_PHASE, System.nanoTime());
+
+        //when
+        StringWriter writer = new StringWriter();
+        testee.writeTo(writer);
+
+        //then
+        JsonArray events = new JsonParser().parse(writer.toString()).getAsJsonObject().getAsJsonArray("traceEvents");
+        assertThat(events.size(), is(1));
+    }
+}
@@ -0,0 +1,45 @@
+package de.otto.jlineup.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PrometheusEndpointTest {
+
+    @Test
+    public void shouldServeMetrics() throws Exception {
+        //given
+        JLineupMetrics metrics = new JLineupMetrics();
+        metrics.contextQueued();
+
+        try (PrometheusEndpoint testee = new PrometheusEndpoint(0, metrics)) {
+            //when
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + testee.getPort() + PrometheusEndpoint.PATH).openConnection();
+            String body;
+            try (Reader reader = new InputStreamReader(connection.getInputStream(), Charsets.UTF_8)) {
+                body = CharStreams.toString(reader);
+            }
+
+            //then
+            assertThat(connection.getResponseCode(), is(200));
+            assertThat(connection.getContentType(), containsString("version=0.0.4"));
+            assertThat(body, containsString("\njlineup_contexts_queued 1\n"));
+        }
+    }
+
+    @Test
+    public void shouldListenOnLoopbackAddressByDefault() throws Exception {
+        try (PrometheusEndpoint testee = new PrometheusEndpoint(0, new JLineupMetrics())) {
+            assertThat(testee.getHost(), is(PrometheusEndpoint.DEFAULT_HOST));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package de.otto.jlineup.report;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ComparisonSchedulerTest {
+
+    @Test
+    public void shouldNotRunMoreComparisonsThanFitIntoMemoryBudget() throws Exception {
+        //given
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<Future<Integer>> comparisons = new ArrayList<>();
+
+        //when
+        try (ComparisonScheduler testee = new ComparisonScheduler(4, 100)) {
+            for (int i = 0; i < 10; i++) {
+                final int number = i;
+                comparisons.add(testee.submit(40, () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(10);
+                    running.decrementAndGet();
+                    return number;
+                }));
+            }
+            for (int i = 0; i < comparisons.size(); i++) {
+                assertThat(ComparisonScheduler.getResult(comparisons.get(i)), is(i));
+            }
+            assertThat(testee.getReservedMemory(), is(0L));
+        }
+
+        //then
+        assertThat(maxRunning.get() <= 2, is(true));
+    }
+
+    @Test
+    public void shouldRunComparisonThatExceedsMemoryBudgetAlone() throws Exception {
+        try (ComparisonScheduler testee = new ComparisonScheduler(2, 100)) {
+            final Future<String> small = testee.submit(10, () -> "small");
+            final Future<String> huge = testee.submit(1000, () -> "huge");
+
+            assertThat(ComparisonScheduler.getResult(small), is("small"));
+            assertThat(ComparisonScheduler.getResult(huge), is("huge"));
+        }
+    }
+
+    @Test
+    public void shouldReleaseMemoryOfAsyncWritesWhenTheyAreDone() throws Exception {
+        //given
+        final AtomicInteger written = new AtomicInteger();
+
+        //when
+        try (ComparisonScheduler testee = new ComparisonScheduler(2, 100)) {
+            ComparisonScheduler.getResult(testee.submit(50, () -> {
+                testee.writeAsync(30, written::incrementAndGet);
+                return null;
+            }));
+            testee.awaitWrites();
+
+            //then
+            assertThat(written.get(), is(1));
+            assertThat(testee.getReservedMemory(), is(0L));
+        }
+    }
+
+    @Test
+    public void shouldNotBlockCallerOfSubmitWithoutWaitingWhenMemoryBudgetIsUsedUp() throws Exception {
+        //given
+        final CountDownLatch firstComparisonMayFinish = new CountDownLatch(1);
+
+        try (ComparisonScheduler testee = new ComparisonScheduler(2, 100)) {
+            final Future<String> first = testee.submit(100, () -> {
+                firstComparisonMayFinish.await();
+                return "first";
+            });
+
+            //when
+            final Future<String> second = testee.submitWithoutWaiting(100, () -> "second");
+
+            //then
+            assertThat(second.isDone(), is(false));
+            firstComparisonMayFinish.countDown();
+            assertThat(ComparisonScheduler.getResult(first), is("first"));
+            assertThat(ComparisonScheduler.getResult(second), is("second"));
+            assertThat(testee.getReservedMemory(), is(0L));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRethrowExceptionOfSubmittedWithoutWaiting() throws Exception {
+        try (ComparisonScheduler testee = new ComparisonScheduler(1, 100)) {
+            ComparisonScheduler.getResult(testee.submitWithoutWaiting(10, () -> {
+                throw new IOException("Can't read screenshot");
+            }));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRethrowExceptionOfComparison() throws Exception {
+        try (ComparisonScheduler testee = new ComparisonScheduler(1, 100)) {
+            ComparisonScheduler.getResult(testee.submit(10, () -> {
+                throw new IOException("Can't read screenshot");
+            }));
+        }
+    }
+}
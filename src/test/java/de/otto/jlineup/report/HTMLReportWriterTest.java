@@ -6,16 +6,20 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.StringContains.containsString;
 import static org.hamcrest.core.StringEndsWith.endsWith;
 import static org.hamcrest.core.StringStartsWith.startsWith;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 public class HTMLReportWriterTest {
@@ -38,12 +42,9 @@ public class HTMLReportWriterTest {
         testee = new HTMLReportWriter(fileServiceMock);
     }
 
-    @Test
-    public void shouldRenderHTMLReport() throws Exception {
-
-        String n = System.getProperty("line.separator");
+    private final String n = System.getProperty("line.separator");
 
-        String expectedHtmlStart = "<!DOCTYPE html>" + n +
+    private final String expectedHtmlHead = "<!DOCTYPE html>" + n +
                 "<html>" + n +
                 "<head>" + n +
                 "    <title>JLineup Comparison Report</title>" + n +
@@ -141,6 +142,14 @@ public class HTMLReportWriterTest {
                 "            border-left: 6px solid transparent;" + n +
                 "        }" + n +
                 "" + n +
+                "        .overview a {" + n +
+                "            display: block;" + n +
+                "            padding: 5px 0;" + n +
+                "            font-weight: bold;" + n +
+                "            font-size: 18px;" + n +
+                "            text-decoration: none;" + n +
+                "        }" + n +
+                "" + n +
                 "        .success {" + n +
                 "            color: green;" + n +
                 "        }" + n +
@@ -153,11 +162,44 @@ public class HTMLReportWriterTest {
                 "</head>" + n +
                 "" + n +
                 "<body>" + n +
+                "" + n;
+
+    private final String expectedHtmlEnd = "</p>" + n +
+            "" + n +
+            "</body>" + n +
+            "</html>";
+
+    @Test
+    public void shouldRenderIndexPage() throws Exception {
+
+        String expectedHtmlStart = expectedHtmlHead +
+                "<div class=\"report\">" + n +
+                "    <h2>JLineup Comparison Report</h2>" + n +
+                "    <p>0 of 1 contexts with differences</p>" + n +
+                "    <div class=\"overview\">" + n +
+                "        <a href=\"report-1.html\" class=\"success\">" + n +
+                "            url (Browser window width: 1337, max difference: 0.00%)" + n +
+                "        </a>" + n +
+                "    </div>" + n +
+                "</div>" + n +
                 "" + n +
+                "<p class=\"footer\">Generated with Jlineup";
+
+        final String report = testee.renderIndexPage(screenshotComparisonResults);
+
+        assertThat(report, startsWith(expectedHtmlStart));
+        assertThat(report, endsWith(expectedHtmlEnd));
+    }
+
+    @Test
+    public void shouldRenderContextPage() throws Exception {
+
+        String expectedHtmlStart = expectedHtmlHead +
                 "<div class=\"report\">" + n +
                 "    <h2>JLineup Comparison Report</h2>" + n +
+                "    <p><a href=\"report.html\">Back to all contexts</a></p>" + n +
                 "    <div class=\"context\">" + n +
-                "        <input type=\"checkbox\" id=\"url|||1337\" />" + n +
+                "        <input type=\"checkbox\" checked=\"checked\" id=\"url|||1337\" />" + n +
                 "        <label for=\"url|||1337\" class=\"success\">" + n +
                 "            <div class=\"arrow-right\"></div>" + n +
                 "            <div class=\"arrow-down\"></div>" + n +
@@ -180,19 +222,19 @@ public class HTMLReportWriterTest {
                 "                </td>" + n +
                 "                <td>" + n +
                 "                    <a href=\"before\" target=\"_blank\">" + n +
-                "                        <img src=\"before\" style=\"max-width: 350px;\" />" + n +
+                "                        <img src=\"before\" style=\"max-width: 350px;\" loading=\"lazy\" />" + n +
                 "                    </a>" + n +
                 "                    " + n +
                 "                </td>" + n +
                 "                <td>" + n +
                 "                    <a href=\"after\" target=\"_blank\">" + n +
-                "                        <img src=\"after\" style=\"max-width: 350px;\" />" + n +
+                "                        <img src=\"after\" style=\"max-width: 350px;\" loading=\"lazy\" />" + n +
                 "                    </a>" + n +
                 "                    " + n +
                 "                </td>" + n +
                 "                <td>" + n +
                 "                    <a href=\"differenceSum\" target=\"_blank\">" + n +
-                "                        <img src=\"differenceSum\" style=\"max-width: 350px;\" />" + n +
+                "                        <img src=\"differenceSum\" style=\"max-width: 350px;\" loading=\"lazy\" />" + n +
                 "                    </a>" + n +
                 "                    " + n +
                 "                </td>" + n +
@@ -203,22 +245,59 @@ public class HTMLReportWriterTest {
                 "" + n +
                 "<p class=\"footer\">Generated with Jlineup";
 
-        String expectedHtmlEnd = "</p>" + n +
-                "" + n +
-                "</body>" + n +
-                "</html>";
-
-        final String report = testee.renderReport("report", screenshotComparisonResults);
+        final String report = testee.renderContextPage(screenshotComparisonResults);
 
         assertThat(report, startsWith(expectedHtmlStart));
         assertThat(report, endsWith(expectedHtmlEnd));
     }
 
     @Test
-    public void shouldWriteReport() throws FileNotFoundException {
+    public void shouldWriteIndexAndContextPages() throws IOException {
+        final StringWriter indexWriter = new StringWriter();
+        final StringWriter contextWriter = new StringWriter();
+        when(fileServiceMock.openHtmlReportWriter("report.html")).thenReturn(indexWriter);
+        when(fileServiceMock.openHtmlReportWriter("report-1.html")).thenReturn(contextWriter);
+
+        testee.writeReport(report);
+
+        assertThat(indexWriter.toString(), containsString("<a href=\"report-1.html\" class=\"success\">"));
+        assertThat(indexWriter.toString(), endsWith("</html>"));
+        assertThat(contextWriter.toString(), containsString("<a href=\"before\" target=\"_blank\">"));
+        assertThat(contextWriter.toString(), endsWith("</html>"));
+        Mockito.verify(fileServiceMock).materializeScreenshotForReport("before");
+        Mockito.verify(fileServiceMock).materializeScreenshotForReport("after");
+    }
+
+    @Test
+    public void shouldListContextsWithDifferencesFirst() throws IOException {
+        final StringWriter indexWriter = new StringWriter();
+        when(fileServiceMock.openHtmlReportWriter(anyString())).thenReturn(new StringWriter());
+        when(fileServiceMock.openHtmlReportWriter("report.html")).thenReturn(indexWriter);
+        final List<ScreenshotComparisonResult> results = Arrays.asList(
+                new ScreenshotComparisonResult("same", 800, 0, 0d, "before", "after", null),
+                new ScreenshotComparisonResult("changed", 800, 0, 0d, "before", "after", null),
+                new ScreenshotComparisonResult("changed", 800, 800, 0.25d, "before", "after", "difference"));
+
+        testee.writeReport(new Report(summary, singletonMap("test", new UrlReport(results, localSummary))));
+
+        assertThat(indexWriter.toString(), containsString("<p>1 of 2 contexts with differences</p>"));
+        assertThat(indexWriter.toString(), containsString("<a href=\"report-1.html\" class=\"failure\">" + n +
+                "            changed (Browser window width: 800, max difference: 25.00%)"));
+        assertThat(indexWriter.toString(), containsString("<a href=\"report-2.html\" class=\"success\">" + n +
+                "            same (Browser window width: 800, max difference: 0.00%)"));
+    }
+
+    @Test
+    public void shouldShowThumbnailsThatLinkToScreenshots() throws IOException {
+        final StringWriter writer = new StringWriter();
+        when(fileServiceMock.openHtmlReportWriter("report.html")).thenReturn(new StringWriter());
+        when(fileServiceMock.openHtmlReportWriter("report-1.html")).thenReturn(writer);
+        when(fileServiceMock.writeThumbnailForReport("before", HTMLReportWriter.THUMBNAIL_WIDTH)).thenReturn("thumbnails/before.jpg");
 
         testee.writeReport(report);
 
-        Mockito.verify(fileServiceMock).writeHtmlReport(anyString());
+        assertThat(writer.toString(), containsString("<a href=\"before\" target=\"_blank\">"));
+        assertThat(writer.toString(), containsString("<img src=\"thumbnails/before.jpg\" style=\"max-width: 350px;\" loading=\"lazy\" />"));
+        assertThat(writer.toString(), containsString("<img src=\"after\" style=\"max-width: 350px;\" loading=\"lazy\" />"));
     }
-}
\ No newline at end of file
+}
@@ -4,10 +4,14 @@ import de.otto.jlineup.file.FileService;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
-import org.mockito.Mockito;
+
+import java.io.StringWriter;
 
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 public class JSONReportWriterV1Test {
@@ -44,8 +48,11 @@ public class JSONReportWriterV1Test {
                 "  }\n" +
                 "]";
 
+        final StringWriter writer = new StringWriter();
+        when(fileServiceMock.openJsonReportWriter()).thenReturn(writer);
+
         testee.writeComparisonReportAsJson(report);
 
-        Mockito.verify(fileServiceMock).writeJsonReport(expectedString);
+        assertThat(writer.toString(), is(expectedString));
     }
 }
\ No newline at end of file
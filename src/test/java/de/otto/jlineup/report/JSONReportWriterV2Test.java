@@ -4,11 +4,15 @@ import de.otto.jlineup.file.FileService;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
-import org.mockito.Mockito;
+
+import java.io.StringWriter;
 
 import java.util.Collections;
 
 import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 public class JSONReportWriterV2Test {
@@ -61,8 +65,28 @@ public class JSONReportWriterV2Test {
                 "  }\n" +
                 "}";
 
+        final StringWriter writer = new StringWriter();
+        when(fileServiceMock.openJsonReportWriter()).thenReturn(writer);
+
         testee.writeComparisonReportAsJson(report);
 
-        Mockito.verify(fileServiceMock).writeJsonReport(expectedString);
+        assertThat(writer.toString(), is(expectedString));
+    }
+
+    @Test
+    public void shouldWriteCompactComparisonReportAsJson() throws Exception {
+        ScreenshotComparisonResult screenshotComparisonResult =
+                new ScreenshotComparisonResult("url", 1337, 1338, 0d, "before", "after", null);
+        final Summary summary = new Summary(false, 0d, 0d);
+        Report report = new Report(summary, Collections.singletonMap("test", new UrlReport(singletonList(screenshotComparisonResult), summary)));
+        final StringWriter writer = new StringWriter();
+        when(fileServiceMock.openJsonReportWriter()).thenReturn(writer);
+
+        new JSONReportWriter_V2(fileServiceMock, true).writeComparisonReportAsJson(report);
+
+        assertThat(writer.toString(), is("{\"summary\":{\"error\":false,\"differenceSum\":0.0,\"differenceMax\":0.0}," +
+                "\"screenshotComparisonsForUrl\":{\"test\":{\"comparisonResults\":[{\"url\":\"url\",\"width\":1337,\"verticalScrollPosition\":1338,\"difference\":0.0," +
+                "\"screenshotBeforeFileName\":\"before\",\"screenshotAfterFileName\":\"after\"}]," +
+                "\"summary\":{\"error\":false,\"differenceSum\":0.0,\"differenceMax\":0.0}}}}"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package de.otto.jlineup.report;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ReportGeneratorTest {
+
+    private final ReportGenerator testee = new ReportGenerator();
+
+    @Test
+    public void shouldSummarizeDifferences() {
+        //given
+        final List<ScreenshotComparisonResult> results = ImmutableList.of(
+                new ScreenshotComparisonResult("http://url/", 800, 0, 0.25d, "before", "after", "difference"),
+                new ScreenshotComparisonResult("http://url/", 800, 1000, 0.5d, "before", "after", "difference"));
+
+        //when
+        final Report report = testee.generateReport(ImmutableMap.of("http://url", results));
+
+        //then
+        assertThat(report.summary.error, is(true));
+        assertThat(report.summary.differenceSum, is(0.75d));
+        assertThat(report.summary.differenceMax, is(0.5d));
+        assertThat(report.summary.timings, is(nullValue()));
+    }
+
+    @Test
+    public void shouldSummarizeTimingsByPhase() {
+        //given
+        final List<ScreenshotComparisonResult> results = new ArrayList<>();
+        for (long millis = 1; millis <= 100; millis++) {
+            results.add(new ScreenshotComparisonResult("http://url/", 800, (int) millis, 0d, "before", "after", null)
+                    .withTimings(ImmutableMap.of("capture", millis), null, ImmutableMap.of("compare", 2 * millis)));
+        }
+
+        //when
+        final Report report = testee.generateReport(ImmutableMap.of("http://url", results));
+
+        //then
+        final Timings<TimingStatistics> timings = report.summary.timings;
+        assertThat(timings.before.get("capture"), is(new TimingStatistics(100, 5050, 50, 95, 100)));
+        assertThat(timings.after.isEmpty(), is(true));
+        assertThat(timings.comparison.get("compare"), is(new TimingStatistics(100, 10100, 100, 190, 200)));
+        assertThat(report.screenshotComparisonsForUrl.get("http://url").summary.timings, is(timings));
+    }
+}
@@ -0,0 +1,157 @@
+package de.otto.jlineup.report;
+
+import com.beust.jcommander.JCommander;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.otto.jlineup.browser.Browser;
+import de.otto.jlineup.browser.ScreenshotContext;
+import de.otto.jlineup.config.Config;
+import de.otto.jlineup.config.Parameters;
+import de.otto.jlineup.config.UrlConfig;
+import de.otto.jlineup.file.FileService;
+import de.otto.jlineup.file.ScreenshotManifestEntry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class RunHistoryTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Mock
+    private FileService fileService;
+
+    private Parameters parameters;
+    private Config config;
+    private Path logFile;
+    private RunHistory testee;
+
+    @Before
+    public void setup() throws IOException {
+        initMocks(this);
+        logFile = tempDir.getRoot().toPath().resolve("history/runs.log");
+        parameters = new Parameters();
+        new JCommander(parameters, "--run-history", logFile.toString());
+        config = new Config(
+                ImmutableMap.of(
+                        "http://url",
+                        new UrlConfig(ImmutableList.of("/"), 0.05f, null, null, null, null, ImmutableList.of(1001), 10000, 2, 0, 0, 0, null, 5)),
+                Browser.Type.CHROME,
+                null, 0f,
+                800,
+                1,
+                Config.DEFAULT_REPORT_FORMAT,
+                false);
+        testee = new RunHistory(parameters);
+    }
+
+    @Test
+    public void shouldRecordContextsOfRun() throws IOException {
+        //given
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(
+                new ScreenshotManifestEntry("a.png", "http://url", "/", 1001, 0, "after", 1001, 800, null, null, null, null,
+                        ImmutableMap.of("navigation", 300L, "waitAfterPageLoad", 100L, "capture", 20L)),
+                new ScreenshotManifestEntry("b.png", "http://url", "/", 1001, 800, "after", 1001, 400, null, null, null, null,
+                        ImmutableMap.of("waitAfterScroll", 50L, "capture", 30L))));
+        final ImmutableMap<String, List<ScreenshotComparisonResult>> comparisonResults = ImmutableMap.of("http://url", ImmutableList.of(
+                new ScreenshotComparisonResult("http://url/", 1001, 0, 0.25d, "before", "after", "difference"),
+                new ScreenshotComparisonResult("http://url/", 1001, 800, 0d, "before", "after", null)));
+
+        //when
+        testee.record(parameters, config, fileService, "after", comparisonResults);
+
+        //then
+        final List<RunHistoryEntry> entries = new RunHistory(parameters).read();
+        assertThat(entries.size(), is(1));
+        final RunHistoryEntry entry = entries.get(0);
+        assertThat(entry.step, is("after"));
+        assertThat(entry.url, is("http://url"));
+        assertThat(entry.windowWidth, is(1001));
+        assertThat(entry.screenshots, is(2));
+        assertThat(entry.pageHeight, is(1200));
+        assertThat(entry.durationMillis, is(500L));
+        assertThat(entry.stabilizeMillis, is(150L));
+        assertThat(entry.differenceMax, is(0.25d));
+    }
+
+    @Test
+    public void shouldReportContextThatBecameSlowerToStabilize() throws IOException {
+        //given
+        final List<RunHistoryEntry> earlierRuns = new ArrayList<>();
+        for (int run = 0; run < 5; run++) {
+            earlierRuns.add(new RunHistoryEntry(run, "before", "http://url", "/", 1001, 2, 1200, 3000L, 1000L, null));
+        }
+        testee.append(earlierRuns);
+
+        //when
+        final List<String> trends = testee.trendsOf(ImmutableList.of(
+                new RunHistoryEntry(10, "after", "http://url", "/", 1001, 2, 1200, 3500L, 2500L, 0d),
+                new RunHistoryEntry(10, "after", "http://other", "/", 1001, 2, 1200, 9000L, 9000L, 0d)));
+
+        //then
+        assertThat(trends, is(ImmutableList.of("http://url/ at 1001px became 2.5x slower to stabilize (2500 ms, usually 1000 ms)")));
+    }
+
+    @Test
+    public void shouldReportChangedPageHeight() throws IOException {
+        //given
+        testee.append(ImmutableList.of(new RunHistoryEntry(0, "before", "http://url", "/", 1001, 2, 1200, 3000L, 1000L, null)));
+
+        //when
+        final List<String> trends = testee.trendsOf(ImmutableList.of(new RunHistoryEntry(1, "after", "http://url", "/", 1001, 4, 3000, 3000L, 1000L, 0d)));
+
+        //then
+        assertThat(trends, is(ImmutableList.of("http://url/ at 1001px has a page height of 3000 px (usually 1200 px)")));
+    }
+
+    @Test
+    public void shouldSkipLinesThatCannotBeRead() throws IOException {
+        //given
+        testee.append(ImmutableList.of(new RunHistoryEntry(0, "before", "http://url", "/", 1001, 2, 1200, 3000L, 1000L, null)));
+        Files.write(logFile, "{\"runAt\":1,\"step\":\"af".getBytes(Charsets.UTF_8), APPEND);
+
+        //when
+        final List<RunHistoryEntry> entries = new RunHistory(parameters).read();
+
+        //then
+        assertThat(entries, is(ImmutableList.of(new RunHistoryEntry(0, "before", "http://url", "/", 1001, 2, 1200, 3000L, 1000L, null))));
+    }
+
+    @Test
+    public void shouldStartLongestContextsFirst() throws IOException {
+        //given
+        testee.append(ImmutableList.of(
+                new RunHistoryEntry(0, "before", "http://url", "/", 800, 2, 1200, 1000L, 0L, null),
+                new RunHistoryEntry(0, "before", "http://url", "/", 1200, 2, 1200, 5000L, 0L, null)));
+        final UrlConfig urlConfig = config.urls.get("http://url");
+        final List<ScreenshotContext> contexts = new ArrayList<>(ImmutableList.of(
+                ScreenshotContext.of("http://url", "/", 800, true, urlConfig),
+                ScreenshotContext.of("http://url", "/", 1200, true, urlConfig),
+                ScreenshotContext.of("http://url", "/", 1600, true, urlConfig)));
+
+        //when
+        contexts.sort(testee.longestContextsFirst());
+
+        //then
+        assertThat(contexts, is(ImmutableList.of(
+                ScreenshotContext.of("http://url", "/", 1600, true, urlConfig),
+                ScreenshotContext.of("http://url", "/", 1200, true, urlConfig),
+                ScreenshotContext.of("http://url", "/", 800, true, urlConfig))));
+    }
+}
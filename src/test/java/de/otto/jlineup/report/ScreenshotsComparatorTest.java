@@ -3,25 +3,45 @@ package de.otto.jlineup.report;
 import com.beust.jcommander.JCommander;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import de.otto.jlineup.browser.Browser;
+import de.otto.jlineup.browser.ScreenshotContext;
 import de.otto.jlineup.config.Config;
 import de.otto.jlineup.config.Parameters;
 import de.otto.jlineup.config.UrlConfig;
 import de.otto.jlineup.file.FileService;
+import de.otto.jlineup.file.ScreenshotManifestEntry;
 import de.otto.jlineup.image.ImageService;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 
 import javax.imageio.ImageIO;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -31,6 +51,9 @@ public class ScreenshotsComparatorTest {
 
     private ScreenshotsComparator testee;
 
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
     private Parameters parameters;
     private Config config;
 
@@ -61,24 +84,26 @@ public class ScreenshotsComparatorTest {
     }
 
     @Test
-    public void shouldFindVerticalScrollPositionInImageFileName() throws Exception {
-        String fileName = "url_root_1001_2002_after.png";
-        int yPos = ScreenshotsComparator.extractVerticalScrollPositionFromFileName(fileName);
-        assertThat(yPos, is(2002));
-    }
+    public void shouldPairScreenshotsByPosition() throws Exception {
+        //given
+        when(fileService.getRelativePathFromReportDirToScreenshotsDir()).thenReturn("screenshots/");
+        when(fileService.getScreenshotsForStep("/", "http://url", "before")).thenReturn(ImmutableList.of(
+                screenshot("http_url_root_ff3c40c_1001_00000_before.png", 0, "before", "hash1"),
+                screenshot("http_url_root_ff3c40c_1001_01000_before.png", 1000, "before", "hash2")));
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(
+                screenshot("http_url_root_ff3c40c_1001_00000_after.png", 0, "after", "hash1"),
+                screenshot("http_url_root_ff3c40c_1001_02000_after.png", 2000, "after", "hash3")));
 
-    @Test
-    public void shouldFindWindowWidthInImageFileName() throws Exception {
-        String fileName = "url_root_1001_2002_after.png";
-        int yPos = ScreenshotsComparator.extractWindowWidthFromFileName(fileName);
-        assertThat(yPos, is(1001));
-    }
+        //when
+        Map<String, List<ScreenshotComparisonResult>> comparisonResults = testee.compare();
 
-    @Test
-    public void shouldReplaceAfterWithBeforeInFilename() throws Exception {
-        String filename = "url_root_1001_02002_after.png";
-        String switchedFileName = ScreenshotsComparator.switchAfterWithBeforeInFileName(filename);
-        assertThat(switchedFileName, is("url_root_1001_02002_before.png"));
+        //then
+        assertThat(comparisonResults, is(ImmutableMap.of("http://url", ImmutableList.of(
+                new ScreenshotComparisonResult("http://url/", 1001, 0, 0d,
+                        "screenshots/http_url_root_ff3c40c_1001_00000_before.png", "screenshots/http_url_root_ff3c40c_1001_00000_after.png", null),
+                ScreenshotComparisonResult.noAfterImageComparisonResult("http://url/", 1001, 1000, "screenshots/http_url_root_ff3c40c_1001_01000_before.png"),
+                ScreenshotComparisonResult.noBeforeImageComparisonResult("http://url/", 1001, 2000, "screenshots/http_url_root_ff3c40c_1001_02000_after.png")))));
+        verifyZeroInteractions(imageService);
     }
 
     @Test
@@ -101,8 +126,10 @@ public class ScreenshotsComparatorTest {
         ));
 
         when(fileService.getRelativePathFromReportDirToScreenshotsDir()).thenReturn("screenshots/");
-        when(fileService.getFilenamesForStep("/", "http://url", "before")).thenReturn(ImmutableList.of("http_url_root_ff3c40c_1001_02002_before.png"));
-        when(fileService.getFilenamesForStep("/", "http://url", "after")).thenReturn(ImmutableList.of("http_url_root_ff3c40c_1001_02002_after.png", "http_url_root_ff3c40c_1001_03003_after.png"));
+        when(fileService.getScreenshotsForStep("/", "http://url", "before")).thenReturn(ImmutableList.of(screenshot("http_url_root_ff3c40c_1001_02002_before.png", 2002, "before", null)));
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(
+                screenshot("http_url_root_ff3c40c_1001_02002_after.png", 2002, "after", null),
+                screenshot("http_url_root_ff3c40c_1001_03003_after.png", 3003, "after", null)));
         BufferedImage beforeBuffer = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_before.png"));
         when(fileService.readScreenshot("http_url_root_ff3c40c_1001_02002_before.png")).thenReturn(
                 beforeBuffer);
@@ -112,9 +139,10 @@ public class ScreenshotsComparatorTest {
 
 
         BufferedImage differenceBuffer = ImageIO.read(new File("src/test/resources/screenshots/http_url_root_ff3c40c_1001_02002_DIFFERENCE_reference.png"));
-        when(imageService.compareImages(beforeBuffer, afterBuffer, WINDOW_HEIGHT)).thenReturn(new ImageService.ImageComparisonResult(differenceBuffer, 0.1337d));
+        when(imageService.compareImages(beforeBuffer, afterBuffer, WINDOW_HEIGHT, null, null)).thenReturn(new ImageService.ImageComparisonResult(differenceBuffer, 0.1337d));
 
         when(fileService.writeScreenshot(differenceBuffer, "http://url", "/", 1001, 2002, "DIFFERENCE")).thenReturn("http_url_root_ff3c40c_1001_02002_DIFFERENCE.png");
+        when(fileService.generateScreenshotFileName("http://url", "/", 1001, 2002, "DIFFERENCE")).thenReturn("http_url_root_ff3c40c_1001_02002_DIFFERENCE.png");
 
         //when
         Map<String, List<ScreenshotComparisonResult>> comparisonResults = testee.compare();
@@ -130,4 +158,239 @@ public class ScreenshotsComparatorTest {
                         2002,
                         "DIFFERENCE");
     }
+
+    @Test
+    public void shouldNotReadScreenshotsWithEqualPixelHashes() throws Exception {
+        //given
+        final ImmutableMap<String, ImmutableList<ScreenshotComparisonResult>> expectedResults = ImmutableMap.of("http://url", ImmutableList.of(
+                new ScreenshotComparisonResult(
+                        "http://url/",
+                        1001,
+                        2002,
+                        0d,
+                        "screenshots/http_url_root_ff3c40c_1001_02002_before.png",
+                        "screenshots/http_url_root_ff3c40c_1001_02002_after.png",
+                        null)
+        ));
+
+        when(fileService.getRelativePathFromReportDirToScreenshotsDir()).thenReturn("screenshots/");
+        when(fileService.getScreenshotsForStep("/", "http://url", "before")).thenReturn(ImmutableList.of(screenshot("http_url_root_ff3c40c_1001_02002_before.png", 2002, "before", "somehash")));
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(screenshot("http_url_root_ff3c40c_1001_02002_after.png", 2002, "after", "somehash")));
+
+        //when
+        Map<String, List<ScreenshotComparisonResult>> comparisonResults = testee.compare();
+
+        //then
+        assertThat(comparisonResults, is(expectedResults));
+        verify(fileService, never()).readScreenshot(anyString());
+        verifyZeroInteractions(imageService);
+    }
+
+    @Test
+    public void shouldUseComparisonThatWasStartedWhileTakingScreenshots() throws Exception {
+        //given
+        final ImmutableMap<String, ImmutableList<ScreenshotComparisonResult>> expectedResults = ImmutableMap.of("http://url", ImmutableList.of(
+                new ScreenshotComparisonResult(
+                        "http://url/",
+                        1001,
+                        2002,
+                        0.1337,
+                        "screenshots/http_url_root_ff3c40c_1001_02002_before.png",
+                        "screenshots/http_url_root_ff3c40c_1001_02002_after.png",
+                        null)
+        ));
+
+        when(fileService.getRelativePathFromReportDirToScreenshotsDir()).thenReturn("screenshots/");
+        final ScreenshotManifestEntry beforeScreenshot = screenshot("http_url_root_ff3c40c_1001_02002_before.png", 2002, "before", null);
+        final ScreenshotManifestEntry afterScreenshot = screenshot("http_url_root_ff3c40c_1001_02002_after.png", 2002, "after", null);
+        when(fileService.getScreenshotsForStep("/", "http://url", "before")).thenReturn(ImmutableList.of(beforeScreenshot));
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(afterScreenshot));
+        when(fileService.getScreenshot("http://url", "/", 1001, 2002, "before")).thenReturn(beforeScreenshot);
+        when(fileService.getScreenshot("http://url", "/", 1001, 2002, "after")).thenReturn(afterScreenshot);
+        BufferedImage beforeBuffer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage afterBuffer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        when(fileService.readScreenshot("http_url_root_ff3c40c_1001_02002_before.png")).thenReturn(beforeBuffer);
+        when(fileService.readScreenshot("http_url_root_ff3c40c_1001_02002_after.png")).thenReturn(afterBuffer);
+        when(imageService.compareImages(beforeBuffer, afterBuffer, WINDOW_HEIGHT, null, null)).thenReturn(new ImageService.ImageComparisonResult(null, 0.1337d));
+
+        //when
+        testee.screenshotWritten(ScreenshotContext.of("http://url", "/", 1001, false, config.urls.get("http://url")), 2002, "http_url_root_ff3c40c_1001_02002_after.png");
+        Map<String, List<ScreenshotComparisonResult>> comparisonResults = testee.compare();
+
+        //then
+        assertThat(comparisonResults, is(expectedResults));
+        verify(fileService, times(1)).readScreenshot("http_url_root_ff3c40c_1001_02002_after.png");
+    }
+
+    @Test
+    public void shouldUseCachedComparisonResultOfSamePair() throws Exception {
+        //given
+        new JCommander(parameters, "--comparison-cache-dir", tempDir.newFolder("comparisons").getPath());
+        final ScreenshotComparisonResult expectedResult = new ScreenshotComparisonResult("http://url/", 1001, 2002, 0.1337,
+                "screenshots/http_url_root_ff3c40c_1001_02002_before.png",
+                "screenshots/http_url_root_ff3c40c_1001_02002_after.png",
+                "screenshots/http_url_root_ff3c40c_1001_02002_DIFFERENCE.png");
+
+        when(fileService.getRelativePathFromReportDirToScreenshotsDir()).thenReturn("screenshots/");
+        when(fileService.getScreenshotsForStep("/", "http://url", "before")).thenReturn(ImmutableList.of(screenshot("http_url_root_ff3c40c_1001_02002_before.png", 2002, "before", "beforehash")));
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(screenshot("http_url_root_ff3c40c_1001_02002_after.png", 2002, "after", "afterhash")));
+        BufferedImage beforeBuffer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage afterBuffer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage differenceBuffer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        when(fileService.readScreenshot("http_url_root_ff3c40c_1001_02002_before.png")).thenReturn(beforeBuffer);
+        when(fileService.readScreenshot("http_url_root_ff3c40c_1001_02002_after.png")).thenReturn(afterBuffer);
+        when(imageService.compareImages(beforeBuffer, afterBuffer, WINDOW_HEIGHT, null, null)).thenReturn(new ImageService.ImageComparisonResult(differenceBuffer, 0.1337d));
+        when(fileService.generateScreenshotFileName("http://url", "/", 1001, 2002, "DIFFERENCE")).thenReturn("http_url_root_ff3c40c_1001_02002_DIFFERENCE.png");
+        doAnswer(invocation -> Files.write(invocation.getArgument(1), new byte[]{1, 2, 3}))
+                .when(fileService).copyScreenshotTo(eq("http_url_root_ff3c40c_1001_02002_DIFFERENCE.png"), any(Path.class));
+
+        //when
+        Map<String, List<ScreenshotComparisonResult>> firstComparisonResults = new ScreenshotsComparator(parameters, config, fileService, imageService).compare();
+        Map<String, List<ScreenshotComparisonResult>> secondComparisonResults = new ScreenshotsComparator(parameters, config, fileService, imageService).compare();
+
+        //then
+        assertThat(firstComparisonResults, is(ImmutableMap.of("http://url", ImmutableList.of(expectedResult))));
+        assertThat(secondComparisonResults, is(ImmutableMap.of("http://url", ImmutableList.of(expectedResult))));
+        verify(imageService, times(1)).compareImages(beforeBuffer, afterBuffer, WINDOW_HEIGHT, null, null);
+        verify(fileService, times(1)).writeScreenshot(differenceBuffer, "http://url", "/", 1001, 2002, "DIFFERENCE");
+        verify(fileService).copyScreenshot(any(Path.class), eq("http_url_root_ff3c40c_1001_02002_DIFFERENCE.png"));
+    }
+
+    @Test
+    public void shouldAddTimingsOfScreenshotsAndComparisonInReportFormat3() throws Exception {
+        //given
+        Config configWithTimings = new Config(config.urls, Browser.Type.CHROME, null, 0f, WINDOW_HEIGHT, 1, 3, false);
+        testee = new ScreenshotsComparator(parameters, configWithTimings, fileService, imageService);
+        when(fileService.getRelativePathFromReportDirToScreenshotsDir()).thenReturn("screenshots/");
+        when(fileService.getScreenshotsForStep("/", "http://url", "before")).thenReturn(ImmutableList.of(
+                screenshot("http_url_root_ff3c40c_1001_02002_before.png", 2002, "before", null, ImmutableMap.of("capture", 100L))));
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(
+                screenshot("http_url_root_ff3c40c_1001_02002_after.png", 2002, "after", null, ImmutableMap.of("capture", 200L))));
+        BufferedImage beforeBuffer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage afterBuffer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        when(fileService.readScreenshot("http_url_root_ff3c40c_1001_02002_before.png")).thenReturn(beforeBuffer);
+        when(fileService.readScreenshot("http_url_root_ff3c40c_1001_02002_after.png")).thenReturn(afterBuffer);
+        when(imageService.compareImages(beforeBuffer, afterBuffer, WINDOW_HEIGHT, null, null)).thenReturn(new ImageService.ImageComparisonResult(null, 0d));
+
+        //when
+        Map<String, List<ScreenshotComparisonResult>> comparisonResults = testee.compare();
+
+        //then
+        final Timings<Long> timings = comparisonResults.get("http://url").get(0).timings;
+        assertThat(timings.before, is(ImmutableMap.of("capture", 100L)));
+        assertThat(timings.after, is(ImmutableMap.of("capture", 200L)));
+        assertThat(timings.comparison.keySet(), is(ImmutableSet.of("decode", "compare")));
+    }
+
+    @Test
+    public void shouldNotAddTimingsInReportFormat2() throws Exception {
+        //given
+        when(fileService.getRelativePathFromReportDirToScreenshotsDir()).thenReturn("screenshots/");
+        when(fileService.getScreenshotsForStep("/", "http://url", "before")).thenReturn(ImmutableList.of(
+                screenshot("http_url_root_ff3c40c_1001_02002_before.png", 2002, "before", "somehash", ImmutableMap.of("capture", 100L))));
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(
+                screenshot("http_url_root_ff3c40c_1001_02002_after.png", 2002, "after", "somehash", ImmutableMap.of("capture", 200L))));
+
+        //when
+        Map<String, List<ScreenshotComparisonResult>> comparisonResults = testee.compare();
+
+        //then
+        assertThat(comparisonResults.get("http://url").get(0).timings, is(nullValue()));
+    }
+
+    @Test
+    public void shouldStopAtFirstDifferenceAboveMaxDiffInGateMode() throws Exception {
+        //given
+        new JCommander(parameters, "--gate");
+        when(fileService.getRelativePathFromReportDirToScreenshotsDir()).thenReturn("screenshots/");
+        when(fileService.getScreenshotsForStep("/", "http://url", "before")).thenReturn(ImmutableList.of(
+                screenshot("http_url_root_ff3c40c_1001_00000_before.png", 0, "before", null),
+                screenshot("http_url_root_ff3c40c_1001_01000_before.png", 1000, "before", null)));
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(
+                screenshot("http_url_root_ff3c40c_1001_01000_after.png", 1000, "after", null)));
+
+        //when
+        Map<String, List<ScreenshotComparisonResult>> comparisonResults = testee.compare();
+
+        //then
+        assertThat(comparisonResults, is(ImmutableMap.of("http://url", ImmutableList.of(
+                ScreenshotComparisonResult.noAfterImageComparisonResult("http://url/", 1001, 0, "screenshots/http_url_root_ff3c40c_1001_00000_before.png")))));
+        verify(fileService, never()).readScreenshot(anyString());
+        verifyZeroInteractions(imageService);
+    }
+
+    @Test
+    public void shouldNotWriteDifferenceImagesInGateMode() throws Exception {
+        //given
+        new JCommander(parameters, "--gate");
+        when(fileService.getRelativePathFromReportDirToScreenshotsDir()).thenReturn("screenshots/");
+        when(fileService.getScreenshotsForStep("/", "http://url", "before")).thenReturn(ImmutableList.of(screenshot("http_url_root_ff3c40c_1001_02002_before.png", 2002, "before", null)));
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(screenshot("http_url_root_ff3c40c_1001_02002_after.png", 2002, "after", null)));
+        BufferedImage beforeBuffer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage afterBuffer = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        when(fileService.readScreenshot("http_url_root_ff3c40c_1001_02002_before.png")).thenReturn(beforeBuffer);
+        when(fileService.readScreenshot("http_url_root_ff3c40c_1001_02002_after.png")).thenReturn(afterBuffer);
+        when(imageService.countDifference(eq(beforeBuffer), eq(afterBuffer), eq(WINDOW_HEIGHT), isNull(), isNull(), anyDouble())).thenReturn(new ImageService.ImageComparisonResult(null, 0.1337d));
+
+        //when
+        Map<String, List<ScreenshotComparisonResult>> comparisonResults = testee.compare();
+
+        //then
+        assertThat(comparisonResults, is(ImmutableMap.of("http://url", ImmutableList.of(new ScreenshotComparisonResult("http://url/", 1001, 2002, 0.1337,
+                "screenshots/http_url_root_ff3c40c_1001_02002_before.png",
+                "screenshots/http_url_root_ff3c40c_1001_02002_after.png",
+                null)))));
+        verify(imageService, never()).compareImages(any(), any(), anyInt(), any(), any());
+        verify(fileService, never()).writeScreenshot(any(), anyString(), anyString(), anyInt(), anyInt(), anyString());
+    }
+
+    @Test
+    public void shouldTakeResultsWithoutDifferenceFromGateRunInReportStep() throws Exception {
+        //given
+        new JCommander(parameters, "--step", "report");
+        when(fileService.getRelativePathFromReportDirToScreenshotsDir()).thenReturn("screenshots/");
+        when(fileService.getScreenshotsForStep("/", "http://url", "before")).thenReturn(ImmutableList.of(screenshot("http_url_root_ff3c40c_1001_02002_before.png", 2002, "before", "beforehash")));
+        when(fileService.getScreenshotsForStep("/", "http://url", "after")).thenReturn(ImmutableList.of(screenshot("http_url_root_ff3c40c_1001_02002_after.png", 2002, "after", "afterhash")));
+        when(fileService.openGateResultsReader()).thenReturn(new StringReader(
+                "[{\"url\":\"http://url/\",\"width\":1001,\"verticalScrollPosition\":2002,\"difference\":0.0}]"));
+
+        //when
+        Map<String, List<ScreenshotComparisonResult>> comparisonResults = testee.compare();
+
+        //then
+        assertThat(comparisonResults, is(ImmutableMap.of("http://url", ImmutableList.of(new ScreenshotComparisonResult("http://url/", 1001, 2002, 0d,
+                "screenshots/http_url_root_ff3c40c_1001_02002_before.png",
+                "screenshots/http_url_root_ff3c40c_1001_02002_after.png",
+                null)))));
+        verify(fileService, never()).readScreenshot(anyString());
+        verifyZeroInteractions(imageService);
+    }
+
+    @Test
+    public void shouldEstimateMemoryOfComparisonFromScreenshotSizes() throws Exception {
+        //given
+        final ScreenshotManifestEntry before = screenshot("before.png", 0, "before", null);
+        final ScreenshotManifestEntry after = screenshot("after.png", 0, "after", null);
+        final ScreenshotManifestEntry hugeAfter = new ScreenshotManifestEntry("hugeAfter.png", "http://url", "/", 100, 0, "after", 100, 100000, null, null, null, null, null);
+        final ScreenshotManifestEntry missing = screenshot("missing.png", 0, "after", null);
+        when(fileService.readScreenshotSize("before.png")).thenReturn(new Dimension(100, 200));
+        when(fileService.readScreenshotSize("after.png")).thenReturn(new Dimension(100, 300));
+
+        //when
+        final long memory = testee.estimateComparisonMemory(before, after);
+
+        //then
+        //decoded images, getRGB copies, difference array and difference image of 20000 + 30000 + 30000 pixels with 4 bytes each
+        assertThat(memory, is(640_000L));
+        assertThat(testee.estimateComparisonMemory(before, hugeAfter), is(ImageService.BAND_COMPARISON_MEMORY));
+        assertThat(testee.estimateComparisonMemory(before, missing), is(0L));
+    }
+
+    private static ScreenshotManifestEntry screenshot(String fileName, int yPosition, String step, String hash) {
+        return screenshot(fileName, yPosition, step, hash, null);
+    }
+
+    private static ScreenshotManifestEntry screenshot(String fileName, int yPosition, String step, String hash, Map<String, Long> timings) {
+        return new ScreenshotManifestEntry(fileName, "http://url", "/", 1001, yPosition, step, null, null, hash, null, null, null, timings);
+    }
 }